@@ -0,0 +1,145 @@
+package benchmark;
+
+import adduct.Adduct;
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import lipid.AdductDetector;
+import lipid.IoniationMode;
+import lipid.Peak;
+import lipid.PeakList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Adduct detection of one reference peak against its grouped peaks: the original full scan with per-call regex
+ * parsing, the full scan over adduct descriptors and the sorted binary-search {@link AdductDetector}, over a
+ * {@code TreeSet<Peak>} (sorted on every call) and over a {@link PeakList} (sorted once).
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdductDetectionBenchmark {
+
+    private static final int SAMPLES = 256;
+
+    @Param({"1", "10", "50", "100", "500"})
+    public int groupedPeaks;
+
+    private final double[] referenceMzs = new double[SAMPLES];
+    private final List<Set<Peak>> groups = new ArrayList<>(SAMPLES);
+    private final PeakList[] peakLists = new PeakList[SAMPLES];
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(11);
+        AdductDescriptor protonated = AdductList.getDescriptor("[M+H]+");
+        for (int i = 0; i < SAMPLES; i++) {
+            double neutralMass = 400 + random.nextDouble() * 600;
+            referenceMzs[i] = protonated.toMz(neutralMass);
+            groups.add(new TreeSet<>(SyntheticData.groupedSignals(neutralMass, groupedPeaks, random)));
+            peakLists[i] = PeakList.of(groups.get(i));
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (SAMPLES - 1);
+        return next;
+    }
+
+    @Benchmark
+    public String regexFullScan() {
+        int i = nextIndex();
+        return RegexFullScan.detect(referenceMzs[i], groups.get(i));
+    }
+
+    @Benchmark
+    public String descriptorFullScan() {
+        int i = nextIndex();
+        double referenceMz = referenceMzs[i];
+        AdductDescriptor[] adducts = AdductList.getDescriptors(IoniationMode.POSITIVE);
+        for (AdductDescriptor candidateAdduct : adducts) {
+            double referenceMonoisotopicMass = candidateAdduct.toMonoisotopicMass(referenceMz);
+            for (AdductDescriptor otherAdduct : adducts) {
+                if (otherAdduct == candidateAdduct) continue;
+                for (Peak peak : groups.get(i)) {
+                    double otherMass = otherAdduct.toMonoisotopicMass(peak.getMz());
+                    if (Adduct.calculatePPMIncrement(referenceMonoisotopicMass, otherMass) < AdductDetector.DEFAULT_PPM_TOLERANCE) {
+                        return candidateAdduct.getName();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public AdductDescriptor sortedBinarySearch() {
+        int i = nextIndex();
+        return AdductDetector.forMode(IoniationMode.POSITIVE).detect(referenceMzs[i], groups.get(i));
+    }
+
+    @Benchmark
+    public AdductDescriptor peakListBinarySearch() {
+        int i = nextIndex();
+        return AdductDetector.forMode(IoniationMode.POSITIVE).detect(referenceMzs[i], peakLists[i]);
+    }
+
+    /**
+     * Detection as originally written, compiling the adduct patterns for every conversion. Kept as the baseline.
+     */
+    static final class RegexFullScan {
+
+        static String detect(double referenceMz, Set<Peak> groupedSignals) {
+            for (String candidateAdduct : AdductList.MAPMZPOSITIVEADDUCTS.keySet()) {
+                Double referenceMonoisotopicMass = monoisotopicMass(referenceMz, candidateAdduct);
+                for (String otherAdduct : AdductList.MAPMZPOSITIVEADDUCTS.keySet()) {
+                    if (otherAdduct.equals(candidateAdduct)) continue;
+                    for (Peak peak : groupedSignals) {
+                        Double otherMass = monoisotopicMass(peak.getMz(), otherAdduct);
+                        if (Adduct.calculatePPMIncrement(referenceMonoisotopicMass, otherMass) < AdductDetector.DEFAULT_PPM_TOLERANCE) {
+                            return candidateAdduct;
+                        }
+                    }
+                }
+            }
+            return null;
+        }
+
+        static Double monoisotopicMass(Double observedMZ, String adductName) {
+            Double adductMass = AdductList.MAPMZPOSITIVEADDUCTS.get(adductName);
+            int charge = 1;
+            Matcher chargeMatcher = Pattern.compile("([2-9])([+-])").matcher(adductName);
+            if (chargeMatcher.find()) {
+                charge = Integer.parseInt(chargeMatcher.group(1));
+            }
+            int multimer = 1;
+            Matcher multimerMatcher = Pattern.compile("\\[([2-9])M").matcher(adductName);
+            if (multimerMatcher.find()) {
+                multimer = Integer.parseInt(multimerMatcher.group(1));
+            }
+            return ((observedMZ * charge) + adductMass) / multimer;
+        }
+    }
+}
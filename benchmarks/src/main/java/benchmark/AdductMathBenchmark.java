@@ -0,0 +1,110 @@
+package benchmark;
+
+import adduct.Adduct;
+import adduct.AdductDescriptor;
+import adduct.AdductLibrary;
+import adduct.AdductList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * m/z to neutral mass conversions (and back) through the adduct name, the adduct descriptor and the adduct id, and
+ * through the ids of a run-specific {@link AdductLibrary} of {@value #LARGE_LIBRARY_SIZE} adducts.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AdductMathBenchmark {
+
+    private static final int SIZE = 1024;
+    private static final int LARGE_LIBRARY_SIZE = 64;
+
+    private final double[] mzs = new double[SIZE];
+    private final String[] names = new String[SIZE];
+    private final AdductDescriptor[] descriptors = new AdductDescriptor[SIZE];
+    private final int[] ids = new int[SIZE];
+    private final int[] largeLibraryIds = new int[SIZE];
+    private AdductLibrary largeLibrary;
+    private int next;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder file = new StringBuilder();
+        for (int a = 0; a < LARGE_LIBRARY_SIZE; a++) {
+            file.append("[").append(1 + a % 3).append("M+X").append(a).append("]").append(1 + a % 2).append("+\t")
+                    .append(a % 2 == 0 ? "POSITIVE" : "NEGATIVE").append('\t').append(-1 - a * 3.5).append('\n');
+        }
+        largeLibrary = AdductLibrary.load(new StringReader(file.toString()));
+        Random random = new Random(7);
+        for (int i = 0; i < SIZE; i++) {
+            mzs[i] = 150 + random.nextDouble() * 1350;
+            ids[i] = random.nextInt(AdductList.size());
+            descriptors[i] = AdductList.getDescriptor(ids[i]);
+            names[i] = descriptors[i].getName();
+            largeLibraryIds[i] = random.nextInt(LARGE_LIBRARY_SIZE);
+        }
+    }
+
+    private int nextIndex() {
+        next = (next + 1) & (SIZE - 1);
+        return next;
+    }
+
+    @Benchmark
+    public Double monoisotopicMassByName() {
+        int i = nextIndex();
+        return Adduct.getMonoisotopicMassFromMZ(mzs[i], names[i]);
+    }
+
+    @Benchmark
+    public double monoisotopicMassByDescriptor() {
+        int i = nextIndex();
+        return Adduct.getMonoisotopicMassFromMZ(mzs[i], descriptors[i]);
+    }
+
+    @Benchmark
+    public double monoisotopicMassById() {
+        int i = nextIndex();
+        return Adduct.getMonoisotopicMassFromMZ(mzs[i], ids[i]);
+    }
+
+    @Benchmark
+    public Double mzByName() {
+        int i = nextIndex();
+        return Adduct.getMzFromMonoisotopicMass(mzs[i], names[i]);
+    }
+
+    @Benchmark
+    public double mzByDescriptor() {
+        int i = nextIndex();
+        return Adduct.getMzFromMonoisotopicMass(mzs[i], descriptors[i]);
+    }
+
+    @Benchmark
+    public double mzById() {
+        int i = nextIndex();
+        return Adduct.getMzFromMonoisotopicMass(mzs[i], ids[i]);
+    }
+
+    @Benchmark
+    public double monoisotopicMassByIdInLargeLibrary() {
+        int i = nextIndex();
+        return largeLibrary.toMonoisotopicMass(mzs[i], largeLibraryIds[i]);
+    }
+}
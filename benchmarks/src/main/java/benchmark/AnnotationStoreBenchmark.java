@@ -0,0 +1,79 @@
+package benchmark;
+
+import feature.OffHeapAnnotationStore;
+import lipid.Annotation;
+import lipid.ElutionOrderScorer;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.PeakList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Filling and elution order scoring of a run of candidate annotations kept as {@link Annotation} objects or in an
+ * {@link OffHeapAnnotationStore}. Run with {@code -prof gc} to compare the allocation and the collections.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "-XX:MaxDirectMemorySize=4g"})
+public class AnnotationStoreBenchmark {
+
+    @Param({"1000000", "5000000"})
+    public int annotations;
+
+    private List<Lipid> lipids;
+    private int[] lipidOf;
+    private double[] mz;
+    private double[] rt;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(23);
+        lipids = SyntheticData.lipids(5000, random);
+        lipidOf = new int[annotations];
+        mz = new double[annotations];
+        rt = new double[annotations];
+        for (int i = 0; i < annotations; i++) {
+            lipidOf[i] = random.nextInt(lipids.size());
+            mz[i] = 300 + random.nextDouble() * 900;
+            rt[i] = random.nextDouble() * 30;
+        }
+    }
+
+    @Benchmark
+    public int heapObjects() {
+        List<Annotation> run = new ArrayList<>(annotations);
+        for (int i = 0; i < annotations; i++) {
+            run.add(new Annotation(lipids.get(lipidOf[i]), mz[i], 1e5, rt[i], PeakList.EMPTY,
+                    IoniationMode.POSITIVE, "[M+H]+"));
+        }
+        return new ElutionOrderScorer().score(run);
+    }
+
+    @Benchmark
+    public int offHeapStore() {
+        try (OffHeapAnnotationStore store = new OffHeapAnnotationStore()) {
+            for (int i = 0; i < annotations; i++) {
+                store.add(mz[i], rt[i], 1e5, lipidOf[i], 0);
+            }
+            return store.scoreElutionOrder(lipids::get);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package benchmark;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import feature.BatchAnnotator;
+import feature.FeatureColumns;
+import lipid.Annotation;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.Peak;
+import lipid.PeakList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Adduct detection of a whole run, reported in features per second: one {@link Annotation} per feature against one
+ * {@link BatchAnnotator} pass over the feature columns.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BatchAnnotationBenchmark {
+
+    private static final int FEATURES = 100000;
+
+    @Param({"10"})
+    public int groupedPeaks;
+
+    private final Lipid[] lipids = new Lipid[FEATURES];
+    private final PeakList[] peaks = new PeakList[FEATURES];
+    private FeatureColumns columns;
+    private final BatchAnnotator annotator = new BatchAnnotator(IoniationMode.POSITIVE);
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(23);
+        AdductDescriptor protonated = AdductList.getDescriptor("[M+H]+");
+        columns = new FeatureColumns(FEATURES, FEATURES * groupedPeaks);
+        List<Lipid> source = SyntheticData.lipids(FEATURES, random);
+        for (int i = 0; i < FEATURES; i++) {
+            lipids[i] = source.get(i);
+            double neutralMass = SyntheticData.neutralMass(lipids[i]);
+            Set<Peak> signals = SyntheticData.groupedSignals(neutralMass, groupedPeaks, random);
+            peaks[i] = PeakList.of(signals);
+            columns.add(protonated.toMz(neutralMass), random.nextDouble() * 20, 1e6, lipids[i].getCompoundId(),
+                    peaks[i].toMzArray(), peaks[i].toIntensityArray());
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FEATURES)
+    public int annotationPerFeature() {
+        int detected = 0;
+        double[] mz = columns.mz();
+        double[] rt = columns.rt();
+        for (int i = 0; i < FEATURES; i++) {
+            Annotation annotation = new Annotation(lipids[i], mz[i], 1e6, rt[i], peaks[i], IoniationMode.POSITIVE);
+            if (annotation.getAdduct() != null) {
+                detected++;
+            }
+        }
+        return detected;
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(FEATURES)
+    public int[] batchColumns() {
+        return annotator.detectAdducts(columns.mz(), columns.peakOffsets(), columns.peakMz(), columns.size());
+    }
+}
@@ -0,0 +1,89 @@
+package benchmark;
+
+import feature.ColumnarFeatureFile;
+import feature.FeatureColumns;
+import feature.MappedFeatureFile;
+import lipid.AdductDetector;
+import lipid.IoniationMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Reload of a columnar feature file (10 grouped peaks per feature) and a full pass of adduct detection over the
+ * mapped columns.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class ColumnarFileBenchmark {
+
+    private static final int PEAKS_PER_FEATURE = 10;
+
+    @Param({"1000000"})
+    public int features;
+
+    private Path file;
+
+    @Setup
+    public void setUp() throws IOException {
+        Random random = new Random(17);
+        FeatureColumns columns = new FeatureColumns(features, features * PEAKS_PER_FEATURE);
+        double[] peakMz = new double[PEAKS_PER_FEATURE];
+        double[] peakIntensity = new double[PEAKS_PER_FEATURE];
+        for (int i = 0; i < features; i++) {
+            double mz = 150 + random.nextDouble() * 1350;
+            for (int p = 0; p < PEAKS_PER_FEATURE; p++) {
+                peakMz[p] = p == 0 ? mz : 150 + random.nextDouble() * 1350;
+                peakIntensity[p] = random.nextDouble() * 1e6;
+            }
+            columns.add(mz, random.nextDouble() * 30, 1e5, random.nextInt(5000), peakMz, peakIntensity);
+        }
+        file = Files.createTempFile("features", ".col");
+        ColumnarFeatureFile.write(file, columns);
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public double reload() throws IOException {
+        try (MappedFeatureFile mapped = MappedFeatureFile.open(file)) {
+            return mapped.view().moveTo(mapped.size() - 1).peakMz(0);
+        }
+    }
+
+    @Benchmark
+    public int detectAllAdducts() throws IOException {
+        int detected = 0;
+        AdductDetector detector = AdductDetector.forMode(IoniationMode.POSITIVE);
+        try (MappedFeatureFile mapped = MappedFeatureFile.open(file)) {
+            for (int i = 0; i < mapped.size(); i++) {
+                if (mapped.detectAdduct(i, detector) != null) {
+                    detected++;
+                }
+            }
+        }
+        return detected;
+    }
+}
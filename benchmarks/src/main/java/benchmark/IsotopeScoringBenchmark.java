@@ -0,0 +1,68 @@
+package benchmark;
+
+import formula.IsotopeEnvelope;
+import lipid.Annotation;
+import lipid.IsotopePatternScorer;
+import lipid.Peak;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Isotope pattern scoring of one annotation whose grouped peaks hold its M+1 and M+2 isotopes among unrelated
+ * signals. Envelopes are cached, so this measures the matching against the grouped peaks.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class IsotopeScoringBenchmark {
+
+    private static final int SAMPLES = 1024;
+
+    @Param({"10", "100"})
+    public int groupedPeaks;
+
+    private final Annotation[] annotations = new Annotation[SAMPLES];
+    private final IsotopePatternScorer scorer = new IsotopePatternScorer();
+    private int next;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(17);
+        List<Annotation> source = SyntheticData.annotations(SAMPLES, 0.1, 17);
+        for (int i = 0; i < SAMPLES; i++) {
+            Annotation annotation = source.get(i);
+            Set<Peak> peaks = SyntheticData.groupedSignals(SyntheticData.neutralMass(annotation.getLipid()), groupedPeaks, random);
+            IsotopeEnvelope envelope = IsotopeEnvelope.cached(annotation.getLipid().getFormula());
+            for (int k = 1; k <= 2; k++) {
+                peaks.add(new Peak(annotation.getMz() + k * IsotopeEnvelope.ISOTOPE_SPACING,
+                        annotation.getIntensity() * envelope.relativeAbundance(k) * (1 + random.nextGaussian() * 0.05)));
+            }
+            annotations[i] = new Annotation(annotation.getLipid(), annotation.getMz(), annotation.getIntensity(),
+                    annotation.getRtMin(), peaks, null);
+            annotations[i].setAdduct("[M+H]+");
+        }
+    }
+
+    @Benchmark
+    public int scoreAnnotation() {
+        next = (next + 1) & (SAMPLES - 1);
+        return scorer.score(annotations[next]);
+    }
+}
@@ -0,0 +1,72 @@
+package benchmark;
+
+import lipid.Annotation;
+import lipid.ElutionOrderScorer;
+import lipid.LipidScoreUnit;
+import lipid.ParallelLipidScorer;
+import org.drools.ruleunits.api.RuleUnitInstance;
+import org.drools.ruleunits.api.RuleUnitProvider;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scoring of a whole feature list with the Drools rule unit (insertion of the annotations and rule firing), with one
+ * rule unit per partition on all the cores and with the native {@link ElutionOrderScorer}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class LipidScoringBenchmark {
+
+    @Param({"100", "1000", "10000", "100000"})
+    public int annotations;
+
+    @Param({"0.3"})
+    public double rtNoise;
+
+    private List<Annotation> data;
+
+    @Setup
+    public void setUp() {
+        data = SyntheticData.annotations(annotations, rtNoise, 13);
+    }
+
+    @Benchmark
+    public int droolsRuleUnit() {
+        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit();
+        RuleUnitInstance<LipidScoreUnit> instance = RuleUnitProvider.get().createRuleUnitInstance(lipidScoreUnit);
+        try {
+            for (Annotation annotation : data) {
+                lipidScoreUnit.getAnnotations().add(annotation);
+            }
+            return instance.fire();
+        } finally {
+            instance.close();
+        }
+    }
+
+    @Benchmark
+    public int parallelDroolsRuleUnits() {
+        return new ParallelLipidScorer().score(data);
+    }
+
+    @Benchmark
+    public int nativeScorer() {
+        return new ElutionOrderScorer().score(data);
+    }
+}
@@ -0,0 +1,127 @@
+package benchmark;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import adduct.NeutralMassCache;
+import lipid.AdductDetector;
+import lipid.IoniationMode;
+import lipid.PeakList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Neutral masses of a stream of (mz, adduct) pairs drawn from a working set of the given size, computed every time or
+ * read from a {@link NeutralMassCache} of {@value #CAPACITY} entries, and the adduct detection of peaks that recur in
+ * several groups with and without the cache. A working set larger than the capacity shows the cost of the misses.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NeutralMassCacheBenchmark {
+
+    private static final int CAPACITY = 1 << 16;
+    private static final int STREAM = 1 << 14;
+    private static final int GROUPS = 1024;
+
+    @Param({"1024", "1048576"})
+    public int workingSet;
+
+    private final double[] mz = new double[STREAM];
+    private final AdductDescriptor[] adducts = new AdductDescriptor[STREAM];
+    private final double[] referenceMzs = new double[GROUPS];
+    private final PeakList[] groups = new PeakList[GROUPS];
+    private NeutralMassCache lru;
+    private NeutralMassCache fifo;
+    private AdductDetector uncachedDetector;
+    private AdductDetector cachedDetector;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(17);
+        AdductDescriptor[] positive = AdductList.getDescriptors(IoniationMode.POSITIVE);
+        for (int i = 0; i < STREAM; i++) {
+            int key = random.nextInt(workingSet);
+            mz[i] = 300 + (key / positive.length) * 0.001;
+            adducts[i] = positive[key % positive.length];
+        }
+        lru = new NeutralMassCache(CAPACITY, NeutralMassCache.Eviction.LRU);
+        fifo = new NeutralMassCache(CAPACITY, NeutralMassCache.Eviction.FIFO);
+
+        // Groups drawn from a pool of peaks, so that every peak is grouped with several references
+        double[] pool = new double[Math.min(workingSet, 1 << 16)];
+        for (int p = 0; p < pool.length; p++) {
+            pool[p] = 300 + random.nextDouble() * 900;
+        }
+        for (int g = 0; g < GROUPS; g++) {
+            double[] peakMz = new double[20];
+            for (int p = 0; p < peakMz.length; p++) {
+                peakMz[p] = pool[random.nextInt(pool.length)];
+            }
+            referenceMzs[g] = peakMz[0];
+            groups[g] = PeakList.of(peakMz, new double[peakMz.length]);
+        }
+        uncachedDetector = new AdductDetector(IoniationMode.POSITIVE, AdductDetector.DEFAULT_PPM_TOLERANCE);
+        cachedDetector = new AdductDetector(IoniationMode.POSITIVE, AdductDetector.DEFAULT_PPM_TOLERANCE,
+                new NeutralMassCache(CAPACITY, NeutralMassCache.Eviction.LRU));
+    }
+
+    @Benchmark
+    public double recompute() {
+        double sum = 0;
+        for (int i = 0; i < STREAM; i++) {
+            sum += adducts[i].toMonoisotopicMass(mz[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double cachedLru() {
+        double sum = 0;
+        for (int i = 0; i < STREAM; i++) {
+            sum += lru.toMonoisotopicMass(mz[i], adducts[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public double cachedFifo() {
+        double sum = 0;
+        for (int i = 0; i < STREAM; i++) {
+            sum += fifo.toMonoisotopicMass(mz[i], adducts[i]);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int detectUncached() {
+        int detected = 0;
+        for (int g = 0; g < GROUPS; g++) {
+            detected += uncachedDetector.detect(referenceMzs[g], groups[g]) == null ? 0 : 1;
+        }
+        return detected;
+    }
+
+    @Benchmark
+    public int detectCached() {
+        int detected = 0;
+        for (int g = 0; g < GROUPS; g++) {
+            detected += cachedDetector.detect(referenceMzs[g], groups[g]) == null ? 0 : 1;
+        }
+        return detected;
+    }
+}
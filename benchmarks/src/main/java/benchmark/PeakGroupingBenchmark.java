@@ -0,0 +1,78 @@
+package benchmark;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import feature.FeatureColumns;
+import feature.PeakGrouper;
+import formula.IsotopeEnvelope;
+import lipid.AdductDetector;
+import lipid.IoniationMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Grouping of the features of a whole run (about five features per compound: adducts, isotopes and an unrelated
+ * feature) on one thread and on all the cores.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class PeakGroupingBenchmark {
+
+    @Param({"20000"})
+    public int compounds;
+
+    private FeatureColumns run;
+    private PeakGrouper serial;
+    private PeakGrouper parallel;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(23);
+        AdductDescriptor[] adducts = AdductList.getDescriptors(IoniationMode.POSITIVE);
+        double[] noPeaks = new double[0];
+        run = new FeatureColumns(compounds * 5, 1);
+        for (int c = 0; c < compounds; c++) {
+            double mass = 400 + random.nextDouble() * 600;
+            double rt = random.nextDouble() * 30;
+            int detected = 1 + random.nextInt(3);
+            for (int a = 0; a < detected; a++) {
+                AdductDescriptor adduct = adducts[random.nextInt(adducts.length)];
+                double mz = adduct.toMz(mass) * (1 + (random.nextDouble() - 0.5) * 4e-6);
+                for (int isotope = 0; isotope <= random.nextInt(3); isotope++) {
+                    run.add(mz + isotope * IsotopeEnvelope.ISOTOPE_SPACING / adduct.getCharge(),
+                            rt + random.nextDouble() * 0.02, 1e5, c, noPeaks, noPeaks);
+                }
+            }
+            run.add(200 + random.nextDouble() * 1500, random.nextDouble() * 30, 1e4, -1, noPeaks, noPeaks);
+        }
+        serial = new PeakGrouper(IoniationMode.POSITIVE);
+        parallel = new PeakGrouper(IoniationMode.POSITIVE, AdductDetector.DEFAULT_PPM_TOLERANCE,
+                PeakGrouper.DEFAULT_RT_TOLERANCE, Runtime.getRuntime().availableProcessors());
+    }
+
+    @Benchmark
+    public int serialSweep() {
+        return serial.group(run).groupCount();
+    }
+
+    @Benchmark
+    public int parallelSweep() {
+        return parallel.group(run).groupCount();
+    }
+}
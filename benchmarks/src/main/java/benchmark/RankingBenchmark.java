@@ -0,0 +1,91 @@
+package benchmark;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import lipid.Annotation;
+import lipid.AnnotationRanker;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.PeakList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ranking of the candidates of 10k features, each matched by several lipids and adducts. The bounded heaps of
+ * {@link AnnotationRanker} are compared with grouping every candidate and sorting the candidates of each feature.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class RankingBenchmark {
+
+    private static final int FEATURES = 10000;
+    private static final int TOP_K = 3;
+
+    @Param({"5", "50"})
+    public int candidatesPerFeature;
+
+    private List<Annotation> data;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(31);
+        List<Lipid> lipids = SyntheticData.lipids(2000, random);
+        AdductDescriptor[] adducts = AdductList.getDescriptors(IoniationMode.POSITIVE);
+        data = new ArrayList<>(FEATURES * candidatesPerFeature);
+        for (int feature = 0; feature < FEATURES; feature++) {
+            Lipid observed = lipids.get(random.nextInt(lipids.size()));
+            double mz = adducts[0].toMz(SyntheticData.neutralMass(observed)) * (1 + random.nextGaussian() * 3e-6);
+            double rt = random.nextDouble() * 30;
+            for (int c = 0; c < candidatesPerFeature; c++) {
+                Lipid candidate = c == 0 ? observed : lipids.get(random.nextInt(lipids.size()));
+                Annotation annotation = new Annotation(candidate, mz, 1e5, rt, PeakList.EMPTY, IoniationMode.POSITIVE,
+                        adducts[random.nextInt(adducts.length)].getName());
+                int applied = random.nextInt(4);
+                annotation.addScores(applied == 0 ? 0 : random.nextInt(2 * applied + 1) - applied, applied);
+                data.add(annotation);
+            }
+        }
+    }
+
+    @Benchmark
+    public int boundedHeaps() {
+        return AnnotationRanker.rank(data, TOP_K).size();
+    }
+
+    @Benchmark
+    public int fullSort() {
+        AnnotationRanker ranker = new AnnotationRanker(TOP_K);
+        Map<List<Double>, List<Annotation>> features = new HashMap<>();
+        for (Annotation annotation : data) {
+            features.computeIfAbsent(List.of(annotation.getMz(), annotation.getRtMin()), key -> new ArrayList<>())
+                    .add(annotation);
+        }
+        int kept = 0;
+        for (List<Annotation> candidates : features.values()) {
+            candidates.sort(Comparator.comparingDouble(ranker::rankScore).reversed());
+            kept += Math.min(TOP_K, candidates.size());
+        }
+        return kept;
+    }
+}
@@ -0,0 +1,69 @@
+package benchmark;
+
+import lipid.Annotation;
+import lipid.ElutionOrderScorer;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.LipidType;
+import lipid.RuleUnitScorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Joins of the rules of lipids.drl on a sample with many distinct (type, carbons, double bonds), where most pairs of
+ * annotations share no key and only the indexed equality constraints keep the rule unit from evaluating them. The
+ * native {@link ElutionOrderScorer}, which groups the annotations by key, is the reference of the minimal join work.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx8g"})
+public class RuleJoinBenchmark {
+
+    private static final LipidType[] TYPES = LipidType.values();
+
+    @Param({"1000", "5000"})
+    public int annotations;
+
+    private List<Annotation> data;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(29);
+        data = new ArrayList<>(annotations);
+        for (int id = 0; id < annotations; id++) {
+            LipidType type = TYPES[random.nextInt(TYPES.length)];
+            int carbons = 20 + random.nextInt(61);
+            int doubleBonds = random.nextInt(13);
+            Lipid lipid = new Lipid(id, type + " " + carbons + ":" + doubleBonds,
+                    SyntheticData.formula(type, carbons, doubleBonds), type, carbons, doubleBonds);
+            data.add(new Annotation(lipid, 500 + id, 1e5, random.nextDouble() * 30, IoniationMode.POSITIVE));
+        }
+    }
+
+    @Benchmark
+    public int droolsRuleUnit() {
+        return new RuleUnitScorer().score(data);
+    }
+
+    @Benchmark
+    public int nativeScorer() {
+        return new ElutionOrderScorer().score(data);
+    }
+}
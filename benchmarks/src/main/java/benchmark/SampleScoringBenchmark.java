@@ -0,0 +1,63 @@
+package benchmark;
+
+import lipid.Annotation;
+import lipid.LipidScoringService;
+import lipid.RuleUnitScorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-sample latency of small samples scored with a new rule unit instance each time and with the pooled instances of
+ * {@link LipidScoringService}. The service also reports its own p50/p99 at tear down.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 3)
+@Fork(1)
+public class SampleScoringBenchmark {
+
+    @Param({"20", "200"})
+    public int annotations;
+
+    private List<Annotation> data;
+    private LipidScoringService service;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        data = SyntheticData.annotations(annotations, 0.3, 17);
+        service = new LipidScoringService();
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        System.out.printf("%nService latency: p50 %.1f us, p99 %.1f us over %d samples%n",
+                service.getLatencyP50Micros(), service.getLatencyP99Micros(), service.getLatency().getCount());
+        service.close();
+    }
+
+    @Benchmark
+    public int newInstancePerSample() {
+        return new RuleUnitScorer().score(data);
+    }
+
+    @Benchmark
+    public int pooledInstance() {
+        return service.score(data);
+    }
+}
@@ -0,0 +1,70 @@
+package benchmark;
+
+import lipid.Annotation;
+import lipid.RuleUnitScorer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cold start: time from a new JVM to the first scored sample. Every fork measures one call, with the executable model
+ * generated at build time or, hiding its service registration, with lipids.drl compiled by the rule unit provider at
+ * runtime as when the project is built without the kie-maven-plugin.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 0)
+@Measurement(iterations = 1)
+@Fork(5)
+public class StartupBenchmark {
+
+    private static final String RULE_UNIT_SERVICES = "META-INF/services/org.drools.ruleunits.api.RuleUnit";
+
+    @Param({"executable", "drl"})
+    public String model;
+
+    @Benchmark
+    public int timeToFirstScore() {
+        List<Annotation> sample = SyntheticData.annotations(100, 0.3, 19);
+        Thread thread = Thread.currentThread();
+        ClassLoader classLoader = thread.getContextClassLoader();
+        if (model.equals("drl")) {
+            thread.setContextClassLoader(new WithoutGeneratedRuleUnits(classLoader));
+        }
+        try {
+            return new RuleUnitScorer().score(sample);
+        } finally {
+            thread.setContextClassLoader(classLoader);
+        }
+    }
+
+    /**
+     * Hides the rule units registered by the kie-maven-plugin, so the provider falls back to compiling the DRL
+     */
+    private static final class WithoutGeneratedRuleUnits extends ClassLoader {
+
+        WithoutGeneratedRuleUnits(ClassLoader parent) {
+            super(parent);
+        }
+
+        @Override
+        public Enumeration<URL> getResources(String name) throws IOException {
+            return name.equals(RULE_UNIT_SERVICES) ? Collections.emptyEnumeration() : super.getResources(name);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package benchmark;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import lipid.Annotation;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.LipidType;
+import lipid.Peak;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * Generators of synthetic but realistic lipids, annotations and grouped peaks. All generators are seeded so that
+ * every benchmark run works on the same data.
+ */
+public final class SyntheticData {
+
+    private static final double CH2 = 14.01565d;
+    private static final double H2 = 2.01565d;
+
+    private static final LipidType[] TYPES = LipidType.values();
+
+    private SyntheticData() {
+    }
+
+    /**
+     * Neutral mass of a lipid of the type with 0 carbons and 0 double bonds in its acyl chains, so that
+     * mass = base + carbons * CH2 - doubleBonds * H2 (e.g. PC 34:1 = 759.5778).
+     */
+    static double baseMass(LipidType type) {
+        switch (type) {
+            case PG: return 274.0089d;
+            case PE: return 243.0144d;
+            case PI: return 362.0250d;
+            case PA: return 199.9722d;
+            case PS: return 287.0042d;
+            case PC: return 285.0613d;
+            case TG: return 133.9850d;
+            case FA: return 31.9898d;
+            default: throw new IllegalArgumentException("Unknown lipid type " + type);
+        }
+    }
+
+    /**
+     * @return the formula of the lipid following the composition of each class (e.g. PC 34:1 = C42H82NO8P)
+     */
+    static String formula(LipidType type, int carbons, int doubleBonds) {
+        int h = 2 * carbons - 2 * doubleBonds;
+        switch (type) {
+            case PG: return "C" + (carbons + 6) + "H" + (h + 11) + "O10P";
+            case PE: return "C" + (carbons + 5) + "H" + (h + 10) + "NO8P";
+            case PI: return "C" + (carbons + 9) + "H" + (h + 15) + "O13P";
+            case PA: return "C" + (carbons + 3) + "H" + (h + 5) + "O8P";
+            case PS: return "C" + (carbons + 6) + "H" + (h + 10) + "NO10P";
+            case PC: return "C" + (carbons + 8) + "H" + (h + 16) + "NO8P";
+            case TG: return "C" + (carbons + 3) + "H" + (h + 2) + "O6";
+            case FA: return "C" + carbons + "H" + h + "O2";
+            default: throw new IllegalArgumentException("Unknown lipid type " + type);
+        }
+    }
+
+    public static double neutralMass(Lipid lipid) {
+        return baseMass(lipid.getLipidType()) + lipid.getCarbonCount() * CH2 - lipid.getDoubleBondsCount() * H2;
+    }
+
+    /**
+     * Retention time following the elution order rules: longer chains elute later, more double bonds elute earlier
+     * and PG < PE < PI < PA < PS < PC for the same chains. The noise makes some pairs contradict the rules.
+     */
+    static double retentionTime(Lipid lipid, Random random, double noise) {
+        return 1d + Lipid.lipidTypeRank(lipid.getLipidType()) * 0.05d
+                + lipid.getCarbonCount() * 0.25d
+                - lipid.getDoubleBondsCount() * 0.6d
+                + random.nextGaussian() * noise;
+    }
+
+    /**
+     * @param count  number of lipids
+     * @param random source of randomness
+     * @return lipids with distinct ids and a realistic distribution of classes and chains
+     */
+    public static List<Lipid> lipids(int count, Random random) {
+        List<Lipid> lipids = new ArrayList<>(count);
+        for (int id = 0; id < count; id++) {
+            LipidType type = TYPES[random.nextInt(TYPES.length)];
+            int carbons;
+            if (type == LipidType.TG) {
+                carbons = 44 + 2 * random.nextInt(10);
+            } else if (type == LipidType.FA) {
+                carbons = 12 + 2 * random.nextInt(6);
+            } else {
+                carbons = 28 + 2 * random.nextInt(8);
+            }
+            int doubleBonds = random.nextInt(7);
+            String name = type + " " + carbons + ":" + doubleBonds;
+            lipids.add(new Lipid(id, name, formula(type, carbons, doubleBonds), type, carbons, doubleBonds));
+        }
+        return lipids;
+    }
+
+    /**
+     * Annotations of the lipids observed as [M+H]+, without grouped signals.
+     *
+     * @param count   number of annotations
+     * @param rtNoise standard deviation (min) of the retention time noise
+     * @param seed    seed of the generator
+     */
+    public static List<Annotation> annotations(int count, double rtNoise, long seed) {
+        Random random = new Random(seed);
+        AdductDescriptor protonated = AdductList.getDescriptor("[M+H]+");
+        List<Annotation> annotations = new ArrayList<>(count);
+        for (Lipid lipid : lipids(count, random)) {
+            double mz = protonated.toMz(neutralMass(lipid));
+            double intensity = 1e4 + random.nextDouble() * 1e7;
+            annotations.add(new Annotation(lipid, mz, intensity, retentionTime(lipid, random, rtNoise), IoniationMode.POSITIVE));
+        }
+        return annotations;
+    }
+
+    /**
+     * Peaks grouped with a reference [M+H]+ peak: the reference itself, one other adduct of the same neutral mass and
+     * unrelated co-eluting signals up to the requested size.
+     *
+     * @param neutralMass neutral mass of the reference compound
+     * @param peaks       number of grouped peaks
+     * @param random      source of randomness
+     */
+    public static Set<Peak> groupedSignals(double neutralMass, int peaks, Random random) {
+        AdductDescriptor[] adducts = AdductList.getDescriptors(IoniationMode.POSITIVE);
+        Set<Peak> groupedSignals = new HashSet<>(peaks * 2);
+        groupedSignals.add(new Peak(AdductList.getDescriptor("[M+H]+").toMz(neutralMass), 1e6));
+        if (peaks > 1) {
+            AdductDescriptor other = adducts[1 + random.nextInt(adducts.length - 1)];
+            groupedSignals.add(new Peak(other.toMz(neutralMass) * (1 + random.nextGaussian() * 2e-6), 5e5));
+        }
+        while (groupedSignals.size() < peaks) {
+            groupedSignals.add(new Peak(150 + random.nextDouble() * 1350, random.nextDouble() * 1e6));
+        }
+        return groupedSignals;
+    }
+}
@@ -1,8 +1,5 @@
 package adduct;
 
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
-
 /**
  * Class that represents an Adduct
  */
@@ -13,30 +10,53 @@ public class Adduct {
      *
      * @param observedMZ mz
      * @param adductName adduct name ([M+H]+, [2M+H]+, [M+2H]2+, etc..)
-     * @return the monoisotopic mass of the experimental mass mz with the adduct @param adduct
+     * @return the monoisotopic mass of the experimental mass mz with the adduct @param adduct, or null if the
+     * adduct is unknown
      */
     public static Double getMonoisotopicMassFromMZ(Double observedMZ, String adductName) {
-        Double adductMass = null;
-
-        if (AdductList.MAPMZPOSITIVEADDUCTS.containsKey(adductName)) {
-            adductMass = AdductList.MAPMZPOSITIVEADDUCTS.get(adductName);
-        } else if (AdductList.MAPMZNEGATIVEADDUCTS.containsKey(adductName)) {
-            adductMass = AdductList.MAPMZNEGATIVEADDUCTS.get(adductName);
+        if (observedMZ == null || adductName == null) {
+            return null;
         }
-
-        int charge = 1;
-        Matcher chargeMatcher = Pattern.compile("([2-9])([+-])").matcher(adductName);
-        if (chargeMatcher.find()) {
-            charge = Integer.parseInt(chargeMatcher.group(1));
+        AdductDescriptor adduct = AdductList.getDescriptor(adductName);
+        if (adduct == null) {
+            return null;
         }
+        return adduct.toMonoisotopicMass(observedMZ);
+    }
 
-        int multimer = 1;
-        Matcher multimerMatcher = Pattern.compile("\\[([2-9])M").matcher(adductName);
-        if (multimerMatcher.find()) {
-            multimer = Integer.parseInt(multimerMatcher.group(1));
-        }
+    /**
+     * Calculate the mass to search depending on the adduct hypothesis
+     *
+     * @param observedMZ mz
+     * @param adduct     descriptor of the adduct
+     * @return the monoisotopic mass of the experimental mass mz with the adduct @param adduct
+     */
+    public static double getMonoisotopicMassFromMZ(double observedMZ, AdductDescriptor adduct) {
+        return adduct.toMonoisotopicMass(observedMZ);
+    }
+
+    /**
+     * Calculate the mass to search depending on the adduct hypothesis
+     *
+     * @param observedMZ mz
+     * @param adductId   id of the adduct in {@link AdductList}
+     * @return the monoisotopic mass of the experimental mass mz with the adduct @param adductId
+     */
+    public static double getMonoisotopicMassFromMZ(double observedMZ, int adductId) {
+        return AdductList.getLibrary().toMonoisotopicMass(observedMZ, adductId);
+    }
 
-        return ((observedMZ * charge) + adductMass) / multimer;
+    /**
+     * Calculate the mass to search depending on the adduct hypothesis, reusing the masses already computed for the
+     * same mz and adduct.
+     *
+     * @param observedMZ mz
+     * @param adduct     descriptor of the adduct
+     * @param cache      cache of neutral masses, or null to always compute the mass
+     * @return the monoisotopic mass of the experimental mass mz with the adduct @param adduct
+     */
+    public static double getMonoisotopicMassFromMZ(double observedMZ, AdductDescriptor adduct, NeutralMassCache cache) {
+        return cache == null ? adduct.toMonoisotopicMass(observedMZ) : cache.toMonoisotopicMass(observedMZ, adduct);
     }
 
 
@@ -45,35 +65,39 @@ public class Adduct {
      *
      * @param monoisotopicMass M
      * @param adductName adduct
-     * @return mz
+     * @return mz, or null if the adduct is unknown
      */
     public static Double getMzFromMonoisotopicMass(Double monoisotopicMass, String adductName) {
         if (monoisotopicMass == null || adductName == null) {
             return null;
         }
-
-        Double adductMass = AdductList.MAPMZPOSITIVEADDUCTS.get(adductName);
-
-        if (adductMass == null) {
-            adductMass = AdductList.MAPMZNEGATIVEADDUCTS.get(adductName);
-        }
-        if (adductMass == null) {
+        AdductDescriptor adduct = AdductList.getDescriptor(adductName);
+        if (adduct == null) {
             return null;
         }
+        return adduct.toMz(monoisotopicMass);
+    }
 
-        int charge = 1;
-        Matcher chargeMatcher = Pattern.compile("([2-9])([+-])").matcher(adductName);
-        if (chargeMatcher.find()) {
-            charge = Integer.parseInt(chargeMatcher.group(1));
-        }
-
-        int multimer = 1;
-        Matcher multimerMatcher = Pattern.compile("\\[([2-9])M").matcher(adductName);
-        if (multimerMatcher.find()) {
-            multimer = Integer.parseInt(multimerMatcher.group(1));
-        }
+    /**
+     * Calculate the mz to search depending on the adduct hypothesis
+     *
+     * @param monoisotopicMass M
+     * @param adduct           descriptor of the adduct
+     * @return mz
+     */
+    public static double getMzFromMonoisotopicMass(double monoisotopicMass, AdductDescriptor adduct) {
+        return adduct.toMz(monoisotopicMass);
+    }
 
-        return ((monoisotopicMass * multimer) - adductMass) / charge;
+    /**
+     * Calculate the mz to search depending on the adduct hypothesis
+     *
+     * @param monoisotopicMass M
+     * @param adductId         id of the adduct in {@link AdductList}
+     * @return mz
+     */
+    public static double getMzFromMonoisotopicMass(double monoisotopicMass, int adductId) {
+        return AdductList.getLibrary().toMz(monoisotopicMass, adductId);
     }
 
     /**
@@ -82,7 +106,7 @@ public class Adduct {
      * @param experimentalMass Mass measured by MS
      * @param theoreticalMass  Theoretical mass of the compound
      */
-    public static int calculatePPMIncrement(Double experimentalMass, Double theoreticalMass) {
+    public static int calculatePPMIncrement(double experimentalMass, double theoreticalMass) {
         int ppmIncrement;
         ppmIncrement = (int) Math.round(Math.abs((experimentalMass - theoreticalMass) * 1000000
                 / theoreticalMass));
@@ -95,7 +119,7 @@ public class Adduct {
      * @param experimentalMass Mass measured by MS
      * @param ppm              ppm of tolerance
      */
-    public static double calculateDeltaPPM(Double experimentalMass, int ppm) {
+    public static double calculateDeltaPPM(double experimentalMass, int ppm) {
         double deltaPPM;
         deltaPPM = Math.round(Math.abs((experimentalMass * ppm) / 1000000));
         return deltaPPM;
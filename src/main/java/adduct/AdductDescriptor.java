@@ -0,0 +1,116 @@
+package adduct;
+
+import lipid.IoniationMode;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Immutable description of an adduct (charge, multimer, mass delta and polarity), parsed once from its name
+ * so that mass conversions do not need to inspect the adduct name again.
+ */
+public final class AdductDescriptor {
+
+    private static final Pattern CHARGE_PATTERN = Pattern.compile("([2-9])([+-])");
+    private static final Pattern MULTIMER_PATTERN = Pattern.compile("\\[([2-9])M");
+
+    private final int id;
+    private final String name;
+    private final int charge;
+    private final int multimer;
+    private final double massDelta;
+    private final IoniationMode polarity;
+
+    /**
+     * @param id        dense id of the adduct, used to index precomputed tables
+     * @param name      adduct name ([M+H]+, [2M+H]+, [M+2H]2+, etc..)
+     * @param charge    absolute charge of the ion
+     * @param multimer  number of molecules in the ion
+     * @param massDelta mass added to the charged m/z to obtain the neutral mass (as stored in {@link AdductList})
+     * @param polarity  ionisation mode in which the adduct is observed
+     */
+    public AdductDescriptor(int id, String name, int charge, int multimer, double massDelta, IoniationMode polarity) {
+        this.id = id;
+        this.name = name;
+        this.charge = charge;
+        this.multimer = multimer;
+        this.massDelta = massDelta;
+        this.polarity = polarity;
+    }
+
+    /**
+     * Parse the charge and multimer of an adduct from its name.
+     *
+     * @param id        dense id of the adduct
+     * @param name      adduct name ([M+H]+, [2M+H]+, [M+2H]2+, etc..)
+     * @param massDelta mass delta of the adduct
+     * @param polarity  ionisation mode of the adduct
+     * @return the descriptor of the adduct
+     */
+    public static AdductDescriptor parse(int id, String name, double massDelta, IoniationMode polarity) {
+        int charge = 1;
+        Matcher chargeMatcher = CHARGE_PATTERN.matcher(name);
+        if (chargeMatcher.find()) {
+            charge = Integer.parseInt(chargeMatcher.group(1));
+        }
+
+        int multimer = 1;
+        Matcher multimerMatcher = MULTIMER_PATTERN.matcher(name);
+        if (multimerMatcher.find()) {
+            multimer = Integer.parseInt(multimerMatcher.group(1));
+        }
+        return new AdductDescriptor(id, name, charge, multimer, massDelta, polarity);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getCharge() {
+        return charge;
+    }
+
+    public int getMultimer() {
+        return multimer;
+    }
+
+    public double getMassDelta() {
+        return massDelta;
+    }
+
+    public IoniationMode getPolarity() {
+        return polarity;
+    }
+
+    /**
+     * @param observedMZ mz
+     * @return the monoisotopic mass of the experimental mass mz with this adduct
+     */
+    public double toMonoisotopicMass(double observedMZ) {
+        return ((observedMZ * charge) + massDelta) / multimer;
+    }
+
+    /**
+     * @param monoisotopicMass M
+     * @return the mz of the mass M ionised with this adduct
+     */
+    public double toMz(double monoisotopicMass) {
+        return ((monoisotopicMass * multimer) - massDelta) / charge;
+    }
+
+    @Override
+    public String toString() {
+        return "AdductDescriptor{" +
+                "id=" + id +
+                ", name='" + name + '\'' +
+                ", charge=" + charge +
+                ", multimer=" + multimer +
+                ", massDelta=" + massDelta +
+                ", polarity=" + polarity +
+                '}';
+    }
+}
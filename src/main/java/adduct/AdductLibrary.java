@@ -0,0 +1,223 @@
+package adduct;
+
+import lipid.IoniationMode;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable set of adducts loaded from a tab separated file, one adduct per line:
+ * <pre>
+ * name    POSITIVE|NEGATIVE    massDelta    [charge    [multimer]]
+ * </pre>
+ * Blank lines and lines starting with # are ignored. The mass delta is the mass added to the charged m/z to obtain
+ * the neutral mass, and the charge and multimer are read from the name when they are omitted.
+ * <p>
+ * Adducts get dense ids in file order, so the charge, multimer and mass delta of an adduct are read from arrays
+ * indexed by id, and the adducts of every ionisation mode are kept in their own array. Names are returned as written
+ * in the file, but are looked up ignoring the difference between the Unicode minus (U+2212), the en dash and '-'.
+ */
+public final class AdductLibrary {
+
+    private final AdductDescriptor[] descriptors;
+    private final AdductDescriptor[] positiveDescriptors;
+    private final AdductDescriptor[] negativeDescriptors;
+    private final int[] charges;
+    private final int[] multimers;
+    private final double[] massDeltas;
+    private final Map<String, AdductDescriptor> descriptorsByName;
+
+    private AdductLibrary(List<AdductDescriptor> adducts) {
+        int size = adducts.size();
+        this.descriptors = adducts.toArray(new AdductDescriptor[0]);
+        this.charges = new int[size];
+        this.multimers = new int[size];
+        this.massDeltas = new double[size];
+        List<AdductDescriptor> positive = new ArrayList<>();
+        List<AdductDescriptor> negative = new ArrayList<>();
+        Map<String, AdductDescriptor> byName = new HashMap<>();
+        for (AdductDescriptor adduct : descriptors) {
+            int id = adduct.getId();
+            charges[id] = adduct.getCharge();
+            multimers[id] = adduct.getMultimer();
+            massDeltas[id] = adduct.getMassDelta();
+            (adduct.getPolarity() == IoniationMode.POSITIVE ? positive : negative).add(adduct);
+            byName.put(normalizeName(adduct.getName()), adduct);
+        }
+        this.positiveDescriptors = positive.toArray(new AdductDescriptor[0]);
+        this.negativeDescriptors = negative.toArray(new AdductDescriptor[0]);
+        this.descriptorsByName = Collections.unmodifiableMap(byName);
+    }
+
+    /**
+     * @param path adduct file
+     * @return the adducts of the file
+     * @throws IOException if the file cannot be read or a line is malformed
+     */
+    public static AdductLibrary load(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * @param resource name of a classpath resource, such as "adduct/adducts.tsv"
+     * @return the adducts of the resource
+     * @throws IOException if the resource does not exist, cannot be read or a line is malformed
+     */
+    public static AdductLibrary loadResource(String resource) throws IOException {
+        ClassLoader classLoader = AdductLibrary.class.getClassLoader();
+        InputStream in = classLoader == null
+                ? ClassLoader.getSystemResourceAsStream(resource)
+                : classLoader.getResourceAsStream(resource);
+        if (in == null) {
+            throw new IOException("Adduct resource not found: " + resource);
+        }
+        try (Reader reader = new InputStreamReader(in, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * @param reader adducts, one per line
+     * @return the adducts read
+     * @throws IOException if the adducts cannot be read or a line is malformed
+     */
+    public static AdductLibrary load(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        List<AdductDescriptor> adducts = new ArrayList<>();
+        Map<String, String> names = new HashMap<>();
+        String line;
+        int lineNumber = 0;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            AdductDescriptor adduct = parse(trimmed.split("\t"), adducts.size(), lineNumber);
+            String previous = names.put(normalizeName(adduct.getName()), adduct.getName());
+            if (previous != null) {
+                throw new IOException("Line " + lineNumber + ": adduct " + adduct.getName() + " is already defined as "
+                        + previous);
+            }
+            adducts.add(adduct);
+        }
+        return new AdductLibrary(adducts);
+    }
+
+    private static AdductDescriptor parse(String[] fields, int id, int lineNumber) throws IOException {
+        if (fields.length < 3 || fields.length > 5) {
+            throw new IOException("Line " + lineNumber + ": expected name, mode, mass delta and optional charge and"
+                    + " multimer, found " + fields.length + " fields");
+        }
+        String name = fields[0].trim();
+        try {
+            IoniationMode mode = IoniationMode.valueOf(fields[1].trim().toUpperCase(Locale.ROOT));
+            double massDelta = Double.parseDouble(fields[2].trim());
+            AdductDescriptor parsed = AdductDescriptor.parse(id, name, massDelta, mode);
+            int charge = fields.length > 3 ? Integer.parseInt(fields[3].trim()) : parsed.getCharge();
+            int multimer = fields.length > 4 ? Integer.parseInt(fields[4].trim()) : parsed.getMultimer();
+            if (charge < 1 || multimer < 1) {
+                throw new IOException("Line " + lineNumber + ": charge and multimer must be positive");
+            }
+            return new AdductDescriptor(id, name, charge, multimer, massDelta, mode);
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Line " + lineNumber + ": malformed adduct " + name + ": " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * @param adductName adduct name
+     * @return the name with every Unicode minus and en dash replaced by '-'
+     */
+    public static String normalizeName(String adductName) {
+        return adductName.replace('−', '-').replace('–', '-');
+    }
+
+    /**
+     * @return number of adducts, ids range from 0 (inclusive) to this value (exclusive)
+     */
+    public int size() {
+        return descriptors.length;
+    }
+
+    /**
+     * @param adductId dense id of the adduct
+     * @return the descriptor of the adduct
+     */
+    public AdductDescriptor getDescriptor(int adductId) {
+        return descriptors[adductId];
+    }
+
+    /**
+     * @param adductName adduct name, with '-' or the Unicode minus; may be null
+     * @return the descriptor of the adduct, or null if the name is null or the adduct is unknown
+     */
+    public AdductDescriptor getDescriptor(String adductName) {
+        if (adductName == null) {
+            return null;
+        }
+        AdductDescriptor adduct = descriptorsByName.get(adductName);
+        return adduct != null ? adduct : descriptorsByName.get(normalizeName(adductName));
+    }
+
+    /**
+     * @param ionMode ionisation mode
+     * @return the descriptors of the adducts of the given mode, in id order
+     */
+    public AdductDescriptor[] getDescriptors(IoniationMode ionMode) {
+        return (ionMode == IoniationMode.POSITIVE ? positiveDescriptors : negativeDescriptors).clone();
+    }
+
+    /**
+     * @param ionMode ionisation mode
+     * @return number of adducts of the given mode
+     */
+    public int size(IoniationMode ionMode) {
+        return (ionMode == IoniationMode.POSITIVE ? positiveDescriptors : negativeDescriptors).length;
+    }
+
+    /**
+     * @param observedMZ mz
+     * @param adductId   dense id of the adduct
+     * @return the monoisotopic mass of the mz with the adduct
+     */
+    public double toMonoisotopicMass(double observedMZ, int adductId) {
+        return ((observedMZ * charges[adductId]) + massDeltas[adductId]) / multimers[adductId];
+    }
+
+    /**
+     * @param monoisotopicMass M
+     * @param adductId         dense id of the adduct
+     * @return the mz of the mass M ionised with the adduct
+     */
+    public double toMz(double monoisotopicMass, int adductId) {
+        return ((monoisotopicMass * multimers[adductId]) - massDeltas[adductId]) / charges[adductId];
+    }
+
+    /**
+     * @param ionMode ionisation mode
+     * @return name to mass delta of the adducts of the given mode, in id order
+     */
+    public Map<String, Double> massDeltas(IoniationMode ionMode) {
+        Map<String, Double> deltas = new LinkedHashMap<>();
+        for (AdductDescriptor adduct : ionMode == IoniationMode.POSITIVE ? positiveDescriptors : negativeDescriptors) {
+            deltas.put(adduct.getName(), adduct.getMassDelta());
+        }
+        return Collections.unmodifiableMap(deltas);
+    }
+}
@@ -1,34 +1,76 @@
 package adduct;
 
-import java.util.Collections;
-import java.util.LinkedHashMap;
+import lipid.IoniationMode;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.Map;
 
+/**
+ * Adducts known to the annotation, loaded once from the {@link AdductLibrary} file given by the system property
+ * {@value #ADDUCTS_FILE_PROPERTY}, or from the {@value #DEFAULT_RESOURCE} resource when it is not set. An instrument
+ * can therefore use its own adducts without rebuilding.
+ */
 public class AdductList {
 
+    /**
+     * System property with the path of the adduct file to load instead of the default resource
+     */
+    public static final String ADDUCTS_FILE_PROPERTY = "lcms.adducts";
+    public static final String DEFAULT_RESOURCE = "adduct/adducts.tsv";
+
     public static final Map<String, Double> MAPMZPOSITIVEADDUCTS;
     public static final Map<String, Double> MAPMZNEGATIVEADDUCTS;
 
+    private static final AdductLibrary LIBRARY;
+
     static {
-        Map<String, Double> mapMZPositiveAdductsTMP = new LinkedHashMap<>();
-        mapMZPositiveAdductsTMP.put("[M+H]+", -1.007276d);
-        mapMZPositiveAdductsTMP.put("[M+2H]2+", -2.014552d);
-        mapMZPositiveAdductsTMP.put("[M+Na]+", -22.989218d);
-        mapMZPositiveAdductsTMP.put("[M+K]+", -38.963158d);
-        mapMZPositiveAdductsTMP.put("[M+NH4]+", -18.033823d);
-        mapMZPositiveAdductsTMP.put("[M+H-H2O]+", 17.0032d);
-        mapMZPositiveAdductsTMP.put("[M+H+NH4]2+", -19.04165);
-        mapMZPositiveAdductsTMP.put("[2M+H]+", -1.007276d);
-        mapMZPositiveAdductsTMP.put("[2M+Na]+", -22.989218d);
-        MAPMZPOSITIVEADDUCTS = Collections.unmodifiableMap(mapMZPositiveAdductsTMP);
-
-        Map<String, Double> mapMZNegativeAdductsTMP = new LinkedHashMap<>();
-        mapMZNegativeAdductsTMP.put("[M-H]-", 1.007276d);
-        mapMZNegativeAdductsTMP.put("[M+Cl]−", -34.969402d);
-        mapMZNegativeAdductsTMP.put("[M+HCOOH-H]−", -44.998201d);
-        mapMZNegativeAdductsTMP.put("[M-H-H2O]−", 19.01839d);
-        mapMZNegativeAdductsTMP.put("[2M-H]−", 1.007276d);
-        mapMZNegativeAdductsTMP.put("[M-2H]2−", 1.007276d*2);
-        MAPMZNEGATIVEADDUCTS = Collections.unmodifiableMap(mapMZNegativeAdductsTMP);
+        String file = System.getProperty(ADDUCTS_FILE_PROPERTY);
+        try {
+            LIBRARY = file == null ? AdductLibrary.loadResource(DEFAULT_RESOURCE) : AdductLibrary.load(Path.of(file));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot load the adducts from " + (file == null ? DEFAULT_RESOURCE : file), e);
+        }
+        MAPMZPOSITIVEADDUCTS = LIBRARY.massDeltas(IoniationMode.POSITIVE);
+        MAPMZNEGATIVEADDUCTS = LIBRARY.massDeltas(IoniationMode.NEGATIVE);
+    }
+
+    /**
+     * @return the library of the adducts, whose ids are the ids used by the annotation
+     */
+    public static AdductLibrary getLibrary() {
+        return LIBRARY;
+    }
+
+    /**
+     * @param adductName adduct name ([M+H]+, [2M+H]+, [M+2H]2+, etc..), with '-' or the Unicode minus; may be null
+     * @return the descriptor of the adduct, or null if the name is null or the adduct is unknown
+     */
+    public static AdductDescriptor getDescriptor(String adductName) {
+        return LIBRARY.getDescriptor(adductName);
+    }
+
+    /**
+     * @param adductId dense id of the adduct
+     * @return the descriptor of the adduct
+     */
+    public static AdductDescriptor getDescriptor(int adductId) {
+        return LIBRARY.getDescriptor(adductId);
+    }
+
+    /**
+     * @return number of known adducts, ids range from 0 (inclusive) to this value (exclusive)
+     */
+    public static int size() {
+        return LIBRARY.size();
+    }
+
+    /**
+     * @param ionMode ionisation mode
+     * @return the descriptors of the adducts of the given mode, in the same order as the adduct maps
+     */
+    public static AdductDescriptor[] getDescriptors(IoniationMode ionMode) {
+        return LIBRARY.getDescriptors(ionMode);
     }
 }
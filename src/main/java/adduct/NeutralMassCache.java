@@ -0,0 +1,311 @@
+package adduct;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of the neutral masses of (mz, adduct) pairs, shared by the threads of a run. Entries are keyed by the
+ * bits of the mz and the id of the adduct, so a lookup does not box or allocate.
+ * <p>
+ * The cache is split in segments chosen by the hash of the key, each with its own lock, its own share of the
+ * capacity and its own eviction order. A segment is a chained hash over fixed arrays of entries, whose recency list
+ * evicts the least recently used entry ({@link Eviction#LRU}) or the oldest inserted one ({@link Eviction#FIFO}) when
+ * the segment is full.
+ * <p>
+ * The conversion itself is a multiplication, an addition and a division, so the cache only pays off when its lookups
+ * stay cheaper than that; see the NeutralMassCacheBenchmark.
+ */
+public class NeutralMassCache {
+
+    public enum Eviction {
+        /**
+         * Evict the entry that was read or inserted the longest time ago
+         */
+        LRU,
+        /**
+         * Evict the entry that was inserted the longest time ago, reads do not reorder the entries
+         */
+        FIFO
+    }
+
+    public static final int DEFAULT_CAPACITY = 1 << 16;
+
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final int capacity;
+    private final Eviction eviction;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    /**
+     * LRU cache of {@value #DEFAULT_CAPACITY} entries
+     */
+    public NeutralMassCache() {
+        this(DEFAULT_CAPACITY, Eviction.LRU);
+    }
+
+    /**
+     * @param capacity maximum number of entries
+     * @param eviction entry evicted when a segment is full
+     */
+    public NeutralMassCache(int capacity, Eviction eviction) {
+        this(capacity, eviction, Integer.highestOneBit(Runtime.getRuntime().availableProcessors() * 4 - 1) << 1);
+    }
+
+    /**
+     * @param capacity maximum number of entries
+     * @param eviction entry evicted when a segment is full
+     * @param segments number of independently locked segments, rounded up to a power of two and lowered so that
+     *                 every segment holds at least one entry
+     */
+    public NeutralMassCache(int capacity, Eviction eviction, int segments) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        }
+        if (segments < 1) {
+            throw new IllegalArgumentException("segments must be positive: " + segments);
+        }
+        int count = Integer.highestOneBit(Math.min(segments, capacity) * 2 - 1);
+        if (count > capacity) {
+            count >>= 1;
+        }
+        this.segments = new Segment[count];
+        this.segmentMask = count - 1;
+        int total = 0;
+        for (int s = 0; s < count; s++) {
+            int segmentCapacity = capacity / count + (s < capacity % count ? 1 : 0);
+            this.segments[s] = new Segment(segmentCapacity);
+            total += segmentCapacity;
+        }
+        this.capacity = total;
+        this.eviction = eviction;
+    }
+
+    /**
+     * @param observedMZ mz
+     * @param adduct     descriptor of the adduct
+     * @return the monoisotopic mass of the mz with the adduct, computed on a miss
+     */
+    public double toMonoisotopicMass(double observedMZ, AdductDescriptor adduct) {
+        long mzBits = Double.doubleToLongBits(observedMZ);
+        int adductId = adduct.getId();
+        int hash = hash(mzBits, adductId);
+        Segment segment = segments[hash & segmentMask];
+        synchronized (segment) {
+            int entry = segment.find(mzBits, adductId, hash);
+            if (entry >= 0) {
+                if (eviction == Eviction.LRU) {
+                    segment.moveToHead(entry);
+                }
+                hits.increment();
+                return segment.masses[entry];
+            }
+        }
+        misses.increment();
+        double mass = adduct.toMonoisotopicMass(observedMZ);
+        synchronized (segment) {
+            // Another thread may have inserted the key meanwhile
+            if (segment.find(mzBits, adductId, hash) < 0 && segment.insert(mzBits, adductId, hash, mass)) {
+                evictions.increment();
+            }
+        }
+        return mass;
+    }
+
+    /**
+     * @param observedMZ mz
+     * @param adductId   id of the adduct in {@link AdductList}
+     * @return the monoisotopic mass of the mz with the adduct, computed on a miss
+     */
+    public double toMonoisotopicMass(double observedMZ, int adductId) {
+        return toMonoisotopicMass(observedMZ, AdductList.getDescriptor(adductId));
+    }
+
+    private static int hash(long mzBits, int adductId) {
+        long h = (mzBits ^ (mzBits >>> 29) ^ ((long) adductId << 17)) * 0x9E3779B97F4A7C15L;
+        return (int) (h >>> 32);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public Eviction getEviction() {
+        return eviction;
+    }
+
+    /**
+     * @return number of entries currently cached
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                size += segment.size;
+            }
+        }
+        return size;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * @return hits / lookups, 0 if nothing was looked up
+     */
+    public double getHitRate() {
+        long hitCount = hits.sum();
+        long lookups = hitCount + misses.sum();
+        return lookups == 0 ? 0 : (double) hitCount / lookups;
+    }
+
+    /**
+     * Remove every entry and reset the statistics.
+     */
+    public void clear() {
+        for (Segment segment : segments) {
+            synchronized (segment) {
+                segment.clear();
+            }
+        }
+        hits.reset();
+        misses.reset();
+        evictions.reset();
+    }
+
+    /**
+     * Chained hash over fixed arrays of entries, with a doubly linked list of the entries from the most recent (head)
+     * to the one evicted next (tail). Guarded by its own monitor.
+     */
+    private static final class Segment {
+        private final int[] buckets;
+        private final int bucketMask;
+        private final long[] mzBits;
+        private final int[] adductIds;
+        private final int[] hashes;
+        private final double[] masses;
+        private final int[] chain;
+        private final int[] previous;
+        private final int[] next;
+        private int size;
+        private int head = -1;
+        private int tail = -1;
+
+        Segment(int capacity) {
+            int bucketCount = Integer.highestOneBit(Math.max(2, capacity * 2 - 1));
+            this.buckets = new int[bucketCount];
+            this.bucketMask = bucketCount - 1;
+            Arrays.fill(buckets, -1);
+            this.mzBits = new long[capacity];
+            this.adductIds = new int[capacity];
+            this.hashes = new int[capacity];
+            this.masses = new double[capacity];
+            this.chain = new int[capacity];
+            this.previous = new int[capacity];
+            this.next = new int[capacity];
+        }
+
+        private int bucket(int hash) {
+            // The low bits choose the segment
+            return (hash >>> 16 ^ hash >>> 8) & bucketMask;
+        }
+
+        int find(long key, int adductId, int hash) {
+            for (int e = buckets[bucket(hash)]; e >= 0; e = chain[e]) {
+                if (mzBits[e] == key && adductIds[e] == adductId) {
+                    return e;
+                }
+            }
+            return -1;
+        }
+
+        /**
+         * @return true if an entry was evicted to make room
+         */
+        boolean insert(long key, int adductId, int hash, double mass) {
+            int entry;
+            boolean evicted = size == mzBits.length;
+            if (evicted) {
+                entry = tail;
+                unlinkFromBucket(entry);
+                unlinkFromList(entry);
+            } else {
+                entry = size++;
+            }
+            mzBits[entry] = key;
+            adductIds[entry] = adductId;
+            hashes[entry] = hash;
+            masses[entry] = mass;
+            int bucket = bucket(hash);
+            chain[entry] = buckets[bucket];
+            buckets[bucket] = entry;
+            linkAtHead(entry);
+            return evicted;
+        }
+
+        void moveToHead(int entry) {
+            if (entry != head) {
+                unlinkFromList(entry);
+                linkAtHead(entry);
+            }
+        }
+
+        private void linkAtHead(int entry) {
+            previous[entry] = -1;
+            next[entry] = head;
+            if (head >= 0) {
+                previous[head] = entry;
+            }
+            head = entry;
+            if (tail < 0) {
+                tail = entry;
+            }
+        }
+
+        private void unlinkFromList(int entry) {
+            int before = previous[entry];
+            int after = next[entry];
+            if (before >= 0) {
+                next[before] = after;
+            } else {
+                head = after;
+            }
+            if (after >= 0) {
+                previous[after] = before;
+            } else {
+                tail = before;
+            }
+        }
+
+        private void unlinkFromBucket(int entry) {
+            int bucket = bucket(hashes[entry]);
+            if (buckets[bucket] == entry) {
+                buckets[bucket] = chain[entry];
+                return;
+            }
+            for (int e = buckets[bucket]; e >= 0; e = chain[e]) {
+                if (chain[e] == entry) {
+                    chain[e] = chain[entry];
+                    return;
+                }
+            }
+        }
+
+        void clear() {
+            Arrays.fill(buckets, -1);
+            size = 0;
+            head = -1;
+            tail = -1;
+        }
+    }
+}
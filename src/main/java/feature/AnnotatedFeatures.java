@@ -0,0 +1,90 @@
+package feature;
+
+import adduct.AdductDescriptor;
+import adduct.AdductLibrary;
+import lipid.Annotation;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.PeakList;
+
+import java.util.Arrays;
+
+/**
+ * Adducts detected by a {@link BatchAnnotator} for the features of a {@link FeatureColumns}, kept as an array of
+ * adduct ids of the library of its detector. Annotations are only created when requested.
+ */
+public class AnnotatedFeatures {
+
+    private final FeatureColumns columns;
+    private final IoniationMode ionMode;
+    private final AdductLibrary library;
+    private final int[] adductIds;
+
+    AnnotatedFeatures(FeatureColumns columns, IoniationMode ionMode, AdductLibrary library, int[] adductIds) {
+        this.columns = columns;
+        this.ionMode = ionMode;
+        this.library = library;
+        this.adductIds = adductIds;
+    }
+
+    public int size() {
+        return adductIds.length;
+    }
+
+    /**
+     * @return the library of the adduct ids
+     */
+    public AdductLibrary getLibrary() {
+        return library;
+    }
+
+    /**
+     * @return id of the adduct of the feature in {@link #getLibrary()}, -1 if none was detected
+     */
+    public int adductId(int feature) {
+        return adductIds[feature];
+    }
+
+    /**
+     * @return the adduct of the feature, or null if none was detected
+     */
+    public AdductDescriptor adduct(int feature) {
+        int id = adductIds[feature];
+        return id < 0 ? null : library.getDescriptor(id);
+    }
+
+    /**
+     * @return number of features with a detected adduct
+     */
+    public int detectedCount() {
+        int count = 0;
+        for (int id : adductIds) {
+            if (id >= 0) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return copy of the adduct ids of the features
+     */
+    public int[] toAdductIdArray() {
+        return adductIds.clone();
+    }
+
+    /**
+     * @param feature position of the feature
+     * @param lipid   candidate lipid of the feature
+     * @return a new annotation of the feature with its grouped peaks and the detected adduct
+     */
+    public Annotation toAnnotation(int feature, Lipid lipid) {
+        int from = columns.peakOffsets()[feature];
+        int to = columns.peakOffsets()[feature + 1];
+        PeakList peaks = PeakList.of(Arrays.copyOfRange(columns.peakMz(), from, to),
+                Arrays.copyOfRange(columns.peakIntensity(), from, to));
+        AdductDescriptor adduct = adduct(feature);
+        return new Annotation(lipid, columns.mz()[feature], columns.intensity()[feature], columns.rt()[feature],
+                peaks, ionMode, adduct == null ? null : adduct.getName());
+    }
+}
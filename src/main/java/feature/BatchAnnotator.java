@@ -0,0 +1,52 @@
+package feature;
+
+import lipid.AdductDetector;
+import lipid.IoniationMode;
+
+/**
+ * Detects the adducts of all the features of a run in one pass over their columns, without creating an
+ * {@link lipid.Annotation} per feature. Annotations are created on demand from the result.
+ */
+public class BatchAnnotator {
+
+    private final IoniationMode ionMode;
+    private final AdductDetector detector;
+
+    /**
+     * @param ionMode ionisation mode of the run, searched with the default tolerance
+     */
+    public BatchAnnotator(IoniationMode ionMode) {
+        this(ionMode, AdductDetector.forMode(ionMode));
+    }
+
+    /**
+     * @param ionMode  ionisation mode of the run
+     * @param detector detector of the adducts of that mode
+     */
+    public BatchAnnotator(IoniationMode ionMode, AdductDetector detector) {
+        this.ionMode = ionMode;
+        this.detector = detector;
+    }
+
+    /**
+     * @param columns features of the run
+     * @return the adduct detected for every feature
+     */
+    public AnnotatedFeatures annotate(FeatureColumns columns) {
+        return new AnnotatedFeatures(columns, ionMode, detector.getLibrary(),
+                detectAdducts(columns.mz(), columns.peakOffsets(), columns.peakMz(), columns.size()));
+    }
+
+    /**
+     * @param mz          mz of the features
+     * @param peakOffsets the grouped peaks of feature i are at [peakOffsets[i], peakOffsets[i + 1])
+     * @param peakMz      mz of the grouped peaks, sorted within each feature
+     * @param size        number of features
+     * @return the id of the adduct detected for every feature in the library of the detector, -1 if none
+     */
+    public int[] detectAdducts(double[] mz, int[] peakOffsets, double[] peakMz, int size) {
+        int[] adductIds = new int[size];
+        detector.detectAll(mz, peakOffsets, peakMz, 0, size, adductIds);
+        return adductIds;
+    }
+}
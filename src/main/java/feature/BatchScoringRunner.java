@@ -0,0 +1,248 @@
+package feature;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Scores many feature tables in parallel, one table per worker. Every table is streamed through its own
+ * {@link StreamingScoringPipeline} and its scored annotations are written to a TSV file as they are finalized. With a
+ * finite RT horizon the memory used by a worker is bounded by the batch size and the horizon, not by the size of the
+ * table, but annotations further apart than the horizon are not paired and the table must be sorted by retention
+ * time: a table with a row more than the horizon before a previous row fails with an {@link IOException} in its
+ * {@link FileReport}. With an infinite horizon every pair is scored in any row order and the whole table stays in the
+ * working memory. Tables are independent: annotations of different tables are never
+ * paired.
+ * <p>
+ * The scored table of NAME.EXT is NAME.EXT{@value #OUTPUT_SUFFIX}, so tables differing only by their extension do not
+ * share an output, and a batch whose tables would still share one is rejected before any table is scored.
+ */
+public class BatchScoringRunner {
+
+    public static final String OUTPUT_SUFFIX = ".scored.tsv";
+
+    private final int workers;
+    private final int batchSize;
+    private final double rtHorizon;
+    private final Path outputDirectory;
+
+    /**
+     * @param workers         number of tables scored at the same time
+     * @param batchSize       number of annotations inserted before each firing
+     * @param rtHorizon       retention time (min) after which an annotation is final, positive infinity to keep the
+     *                        whole table in the working memory and score every pair
+     * @param outputDirectory directory of the scored tables, or null to write them next to their input
+     */
+    public BatchScoringRunner(int workers, int batchSize, double rtHorizon, Path outputDirectory) {
+        if (workers < 1) {
+            throw new IllegalArgumentException("workers must be positive: " + workers);
+        }
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        if (!(rtHorizon >= 0)) {
+            throw new IllegalArgumentException("rtHorizon must not be negative: " + rtHorizon);
+        }
+        this.workers = workers;
+        this.batchSize = batchSize;
+        this.rtHorizon = rtHorizon;
+        this.outputDirectory = outputDirectory;
+    }
+
+    /**
+     * Expand the directories to the feature tables (.csv and .tsv files) they contain, ignoring scored tables.
+     *
+     * @param paths files and directories
+     * @return the files, those of each directory sorted by name
+     * @throws IOException if a directory cannot be listed
+     */
+    public static List<Path> inputFiles(List<Path> paths) throws IOException {
+        List<Path> files = new ArrayList<>();
+        for (Path path : paths) {
+            if (!Files.isDirectory(path)) {
+                files.add(path);
+                continue;
+            }
+            try (Stream<Path> children = Files.list(path)) {
+                children.filter(Files::isRegularFile)
+                        .filter(BatchScoringRunner::isFeatureTable)
+                        .sorted()
+                        .forEach(files::add);
+            }
+        }
+        return files;
+    }
+
+    private static boolean isFeatureTable(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return (name.endsWith(".csv") || name.endsWith(".tsv")) && !name.endsWith(OUTPUT_SUFFIX);
+    }
+
+    /**
+     * @param input feature table
+     * @return the file where its scored annotations are written, the name of the table followed by
+     * {@value #OUTPUT_SUFFIX}
+     */
+    public Path outputFile(Path input) {
+        Path directory = outputDirectory != null ? outputDirectory : input.toAbsolutePath().getParent();
+        return directory.resolve(input.getFileName().toString() + OUTPUT_SUFFIX);
+    }
+
+    /**
+     * Check that no two tables are written to the same file, e.g. tables of the same name from different directories
+     * written to one output directory, which would be written by two workers at the same time.
+     *
+     * @param inputs feature tables
+     * @throws IllegalArgumentException if two tables share an output file
+     */
+    public void checkOutputs(List<Path> inputs) {
+        Map<Path, Path> inputsByOutput = new HashMap<>();
+        for (Path input : inputs) {
+            Path output = outputFile(input).toAbsolutePath().normalize();
+            Path previous = inputsByOutput.put(output, input);
+            if (previous != null) {
+                throw new IllegalArgumentException("Tables " + previous + " and " + input + " would both be written to "
+                        + output);
+            }
+        }
+    }
+
+    /**
+     * Score the tables on the workers.
+     *
+     * @param inputs     feature tables
+     * @param onFileDone called from the calling thread with the report of every table as soon as it is done
+     * @return the reports of the tables, in the order of the inputs
+     * @throws IllegalArgumentException if two tables share an output file, see {@link #checkOutputs(List)}
+     * @throws InterruptedException     if interrupted while waiting for the workers
+     */
+    public List<FileReport> run(List<Path> inputs, Consumer<FileReport> onFileDone) throws InterruptedException {
+        checkOutputs(inputs);
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(workers, Math.max(1, inputs.size())));
+        try {
+            ExecutorCompletionService<FileReport> completion = new ExecutorCompletionService<>(executor);
+            List<Future<FileReport>> futures = new ArrayList<>(inputs.size());
+            for (Path input : inputs) {
+                futures.add(completion.submit(() -> process(input)));
+            }
+            for (int i = 0; i < inputs.size(); i++) {
+                onFileDone.accept(report(completion.take()));
+            }
+            List<FileReport> reports = new ArrayList<>(inputs.size());
+            for (Future<FileReport> future : futures) {
+                reports.add(report(future));
+            }
+            return reports;
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static FileReport report(Future<FileReport> future) throws InterruptedException {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // process() reports its failures, anything else is a bug
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Score one table on the calling thread.
+     *
+     * @param input feature table
+     * @return the report of the table, with the error if it could not be scored
+     */
+    public FileReport process(Path input) {
+        Path output = outputFile(input);
+        long start = System.nanoTime();
+        long features = 0;
+        long rulesFired = 0;
+        Exception error = null;
+        try (FeatureTableReader reader = FeatureTableReader.open(input);
+             ScoredAnnotationWriter writer = ScoredAnnotationWriter.create(output)) {
+            try (StreamingScoringPipeline pipeline =
+                         new StreamingScoringPipeline(batchSize, rtHorizon, writer::writeUnchecked)) {
+                features = pipeline.run(reader, batch -> { });
+                rulesFired = pipeline.getRulesFired();
+            }
+        } catch (IOException | RuntimeException e) {
+            error = e;
+        }
+        return new FileReport(input, output, features, rulesFired, System.nanoTime() - start, error);
+    }
+
+    /**
+     * Outcome of the scoring of one feature table
+     */
+    public static final class FileReport {
+        private final Path input;
+        private final Path output;
+        private final long features;
+        private final long rulesFired;
+        private final long wallNanos;
+        private final Exception error;
+
+        FileReport(Path input, Path output, long features, long rulesFired, long wallNanos, Exception error) {
+            this.input = input;
+            this.output = output;
+            this.features = features;
+            this.rulesFired = rulesFired;
+            this.wallNanos = wallNanos;
+            this.error = error;
+        }
+
+        public Path getInput() {
+            return input;
+        }
+
+        public Path getOutput() {
+            return output;
+        }
+
+        /**
+         * @return number of features scored, 0 if the table could not be scored
+         */
+        public long getFeatures() {
+            return features;
+        }
+
+        public long getRulesFired() {
+            return rulesFired;
+        }
+
+        /**
+         * @return time from opening the table to closing the scored table
+         */
+        public long getWallNanos() {
+            return wallNanos;
+        }
+
+        public double getFeaturesPerSecond() {
+            return wallNanos > 0 ? features * 1e9 / wallNanos : 0;
+        }
+
+        public boolean isSuccessful() {
+            return error == null;
+        }
+
+        /**
+         * @return the error that stopped the scoring, null if successful
+         */
+        public Exception getError() {
+            return error;
+        }
+    }
+}
@@ -0,0 +1,107 @@
+package feature;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Binary columnar file of features and their grouped peaks, read back with {@link MappedFeatureFile}.
+ * <p>
+ * Layout (little endian): a 64 byte header (magic, version, number of features, number of peaks) followed by the
+ * columns mz, rt and intensity (double per feature), lipid id (int per feature), peak offsets (int per feature plus
+ * one), peak mz and peak intensity (double per peak). Every column starts at a multiple of 8 bytes.
+ */
+public final class ColumnarFeatureFile {
+
+    static final long MAGIC = 0x314C4F43534D434CL; // "LCMSCOL1" read as a little endian long
+    static final int VERSION = 1;
+    static final int HEADER_SIZE = 64;
+    static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private ColumnarFeatureFile() {
+    }
+
+    /**
+     * Offsets of the columns in a file of the given size
+     */
+    static long[] columnOffsets(int features, int peaks) {
+        long[] offsets = new long[8];
+        offsets[0] = HEADER_SIZE;
+        offsets[1] = offsets[0] + 8L * features;
+        offsets[2] = offsets[1] + 8L * features;
+        offsets[3] = offsets[2] + 8L * features;
+        offsets[4] = offsets[3] + align(4L * features);
+        offsets[5] = offsets[4] + align(4L * (features + 1));
+        offsets[6] = offsets[5] + 8L * peaks;
+        // End of the file
+        offsets[7] = offsets[6] + 8L * peaks;
+        return offsets;
+    }
+
+    private static long align(long bytes) {
+        return (bytes + 7) & ~7L;
+    }
+
+    /**
+     * @param path    file to write, replaced if it exists
+     * @param columns features to write
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path path, FeatureColumns columns) throws IOException {
+        int features = columns.size();
+        int peaks = columns.peakCount();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(BYTE_ORDER);
+            buffer.putLong(MAGIC).putInt(VERSION).putInt(features).putInt(peaks);
+            while (buffer.position() < HEADER_SIZE) {
+                buffer.put((byte) 0);
+            }
+            writeDoubles(channel, buffer, columns.mz(), features);
+            writeDoubles(channel, buffer, columns.rt(), features);
+            writeDoubles(channel, buffer, columns.intensity(), features);
+            writeInts(channel, buffer, columns.lipidIds(), features);
+            writeInts(channel, buffer, columns.peakOffsets(), features + 1);
+            writeDoubles(channel, buffer, columns.peakMz(), peaks);
+            writeDoubles(channel, buffer, columns.peakIntensity(), peaks);
+            flush(channel, buffer);
+        }
+    }
+
+    private static void writeDoubles(FileChannel channel, ByteBuffer buffer, double[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < Double.BYTES) {
+                flush(channel, buffer);
+            }
+            buffer.putDouble(values[i]);
+        }
+    }
+
+    private static void writeInts(FileChannel channel, ByteBuffer buffer, int[] values, int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(values[i]);
+        }
+        if (count % 2 != 0) {
+            if (buffer.remaining() < Integer.BYTES) {
+                flush(channel, buffer);
+            }
+            buffer.putInt(0);
+        }
+    }
+
+    private static void flush(FileChannel channel, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,189 @@
+package feature;
+
+import lipid.Annotation;
+import lipid.PeakList;
+
+import java.util.Arrays;
+
+/**
+ * Features of a run stored as primitive columns: mz, retention time, intensity and lipid id per feature, and the
+ * grouped peaks of all the features concatenated in two columns (mz, intensity). The grouped peaks of feature i are
+ * at the positions [peakOffset(i), peakOffset(i + 1)) and are sorted by mz.
+ */
+public class FeatureColumns {
+
+    private double[] mz;
+    private double[] rt;
+    private double[] intensity;
+    private int[] lipidIds;
+    private int[] peakOffsets;
+    private double[] peakMz;
+    private double[] peakIntensity;
+    private int size;
+    private int peakCount;
+
+    public FeatureColumns() {
+        this(1024, 4096);
+    }
+
+    /**
+     * @param features expected number of features
+     * @param peaks    expected number of grouped peaks
+     */
+    public FeatureColumns(int features, int peaks) {
+        this.mz = new double[Math.max(features, 1)];
+        this.rt = new double[mz.length];
+        this.intensity = new double[mz.length];
+        this.lipidIds = new int[mz.length];
+        this.peakOffsets = new int[mz.length + 1];
+        this.peakMz = new double[Math.max(peaks, 1)];
+        this.peakIntensity = new double[peakMz.length];
+    }
+
+    /**
+     * Wrap existing columns without copying them.
+     *
+     * @param mz            mz of the features
+     * @param rt            retention time of the features
+     * @param intensity     intensity of the features
+     * @param lipidIds      lipid id of the features
+     * @param peakOffsets   start of the grouped peaks of every feature, plus the end of the last one
+     * @param peakMz        mz of the grouped peaks, sorted inside each feature
+     * @param peakIntensity intensity of the grouped peaks
+     */
+    public FeatureColumns(double[] mz, double[] rt, double[] intensity, int[] lipidIds,
+                          int[] peakOffsets, double[] peakMz, double[] peakIntensity) {
+        int size = mz.length;
+        if (rt.length != size || intensity.length != size || lipidIds.length != size || peakOffsets.length != size + 1) {
+            throw new IllegalArgumentException("Feature columns must have the same length");
+        }
+        if (peakMz.length != peakIntensity.length || peakOffsets[size] > peakMz.length) {
+            throw new IllegalArgumentException("Peak columns do not match the peak offsets");
+        }
+        this.mz = mz;
+        this.rt = rt;
+        this.intensity = intensity;
+        this.lipidIds = lipidIds;
+        this.peakOffsets = peakOffsets;
+        this.peakMz = peakMz;
+        this.peakIntensity = peakIntensity;
+        this.size = size;
+        this.peakCount = peakOffsets[size];
+    }
+
+    /**
+     * Append a feature.
+     *
+     * @param mz            mz of the feature
+     * @param rt            retention time of the feature
+     * @param intensity     intensity of the feature
+     * @param lipidId       id of the candidate lipid
+     * @param peakMz        mz of the grouped peaks, in any order
+     * @param peakIntensity intensity of the grouped peaks
+     */
+    public void add(double mz, double rt, double intensity, int lipidId, double[] peakMz, double[] peakIntensity) {
+        if (peakMz.length != peakIntensity.length) {
+            throw new IllegalArgumentException("Grouped peaks need one intensity per mz");
+        }
+        ensureFeatureCapacity(size + 1);
+        ensurePeakCapacity(peakCount + peakMz.length);
+        this.mz[size] = mz;
+        this.rt[size] = rt;
+        this.intensity[size] = intensity;
+        this.lipidIds[size] = lipidId;
+        int start = peakCount;
+        for (int i = 0; i < peakMz.length; i++) {
+            // Insertion sort: grouped peaks are few per feature
+            int j = start + i;
+            while (j > start && this.peakMz[j - 1] > peakMz[i]) {
+                this.peakMz[j] = this.peakMz[j - 1];
+                this.peakIntensity[j] = this.peakIntensity[j - 1];
+                j--;
+            }
+            this.peakMz[j] = peakMz[i];
+            this.peakIntensity[j] = peakIntensity[i];
+        }
+        peakCount += peakMz.length;
+        size++;
+        peakOffsets[size] = peakCount;
+    }
+
+    /**
+     * Append the feature of an annotation, identified by the compound id of its lipid.
+     *
+     * @param annotation annotation of the feature
+     */
+    public void add(Annotation annotation) {
+        PeakList peaks = annotation.getPeaks();
+        add(annotation.getMz(), annotation.getRtMin(), annotation.getIntensity(),
+                annotation.getLipid().getCompoundId(), peaks.toMzArray(), peaks.toIntensityArray());
+    }
+
+    private void ensureFeatureCapacity(int capacity) {
+        if (capacity > mz.length) {
+            int newLength = Math.max(capacity, mz.length * 2);
+            mz = Arrays.copyOf(mz, newLength);
+            rt = Arrays.copyOf(rt, newLength);
+            intensity = Arrays.copyOf(intensity, newLength);
+            lipidIds = Arrays.copyOf(lipidIds, newLength);
+            peakOffsets = Arrays.copyOf(peakOffsets, newLength + 1);
+        }
+    }
+
+    private void ensurePeakCapacity(int capacity) {
+        if (capacity > peakMz.length) {
+            int newLength = Math.max(capacity, peakMz.length * 2);
+            peakMz = Arrays.copyOf(peakMz, newLength);
+            peakIntensity = Arrays.copyOf(peakIntensity, newLength);
+        }
+    }
+
+    /**
+     * @return number of features
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of grouped peaks of all the features
+     */
+    public int peakCount() {
+        return peakCount;
+    }
+
+    /**
+     * The column arrays below may be longer than the number of features (or peaks); only the first
+     * {@link #size()} (or {@link #peakCount()}) positions are valid.
+     */
+    public double[] mz() {
+        return mz;
+    }
+
+    public double[] rt() {
+        return rt;
+    }
+
+    public double[] intensity() {
+        return intensity;
+    }
+
+    public int[] lipidIds() {
+        return lipidIds;
+    }
+
+    /**
+     * @return start of the grouped peaks of every feature; position {@link #size()} holds the end of the last one
+     */
+    public int[] peakOffsets() {
+        return peakOffsets;
+    }
+
+    public double[] peakMz() {
+        return peakMz;
+    }
+
+    public double[] peakIntensity() {
+        return peakIntensity;
+    }
+}
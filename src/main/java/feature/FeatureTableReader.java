@@ -0,0 +1,184 @@
+package feature;
+
+import lipid.Annotation;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.LipidType;
+import lipid.PeakList;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Reads a feature table (CSV or TSV) line by line and builds one {@link Annotation} per row. The first line is a
+ * header; the delimiter is a tab if the header contains one and a comma otherwise. Columns are matched by name,
+ * ignoring case:
+ * <ul>
+ *     <li>mz, rt, intensity: the observed feature</li>
+ *     <li>lipid_id, lipid_name, formula, lipid_type, carbons, double_bonds: the candidate lipid</li>
+ *     <li>ion_mode (optional, POSITIVE by default)</li>
+ *     <li>grouped_peaks (optional): peaks grouped with the feature as mz:intensity pairs separated by ';'</li>
+ * </ul>
+ * Only the current batch is kept in memory. Lipids are shared between rows with the same lipid_id.
+ */
+public class FeatureTableReader implements Closeable {
+
+    public static final String MZ = "mz";
+    public static final String RT = "rt";
+    public static final String INTENSITY = "intensity";
+    public static final String LIPID_ID = "lipid_id";
+    public static final String LIPID_NAME = "lipid_name";
+    public static final String FORMULA = "formula";
+    public static final String LIPID_TYPE = "lipid_type";
+    public static final String CARBONS = "carbons";
+    public static final String DOUBLE_BONDS = "double_bonds";
+    public static final String ION_MODE = "ion_mode";
+    public static final String GROUPED_PEAKS = "grouped_peaks";
+
+    private final BufferedReader reader;
+    private final String delimiter;
+    private final int mz;
+    private final int rt;
+    private final int intensity;
+    private final int lipidId;
+    private final int lipidName;
+    private final int formula;
+    private final int lipidType;
+    private final int carbons;
+    private final int doubleBonds;
+    private final int ionMode;
+    private final int groupedPeaks;
+    private final Map<Integer, Lipid> lipids = new HashMap<>();
+    private long lineNumber;
+
+    /**
+     * @param reader source of the table, closed with this reader
+     * @throws IOException if the header cannot be read or lacks a required column
+     */
+    public FeatureTableReader(Reader reader) throws IOException {
+        this.reader = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String header = this.reader.readLine();
+        if (header == null) {
+            throw new IOException("Empty feature table: missing header");
+        }
+        lineNumber = 1;
+        this.delimiter = header.indexOf('\t') >= 0 ? "\t" : ",";
+        String[] columns = header.split(delimiter, -1);
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            indexes.put(columns[i].trim().toLowerCase(Locale.ROOT), i);
+        }
+        this.mz = required(indexes, MZ);
+        this.rt = required(indexes, RT);
+        this.intensity = required(indexes, INTENSITY);
+        this.lipidId = required(indexes, LIPID_ID);
+        this.lipidName = required(indexes, LIPID_NAME);
+        this.formula = required(indexes, FORMULA);
+        this.lipidType = required(indexes, LIPID_TYPE);
+        this.carbons = required(indexes, CARBONS);
+        this.doubleBonds = required(indexes, DOUBLE_BONDS);
+        this.ionMode = indexes.getOrDefault(ION_MODE, -1);
+        this.groupedPeaks = indexes.getOrDefault(GROUPED_PEAKS, -1);
+    }
+
+    /**
+     * @param path feature table file
+     * @return a reader of the file
+     */
+    public static FeatureTableReader open(Path path) throws IOException {
+        return new FeatureTableReader(Files.newBufferedReader(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return a reader of the feature table written to the standard input
+     */
+    public static FeatureTableReader fromStdin() throws IOException {
+        return new FeatureTableReader(new InputStreamReader(System.in, StandardCharsets.UTF_8));
+    }
+
+    private static int required(Map<String, Integer> indexes, String column) throws IOException {
+        Integer index = indexes.get(column);
+        if (index == null) {
+            throw new IOException("Feature table lacks the column " + column);
+        }
+        return index;
+    }
+
+    /**
+     * @param maxSize maximum number of annotations to read
+     * @return the next annotations of the table, empty when the table has been fully read
+     * @throws IOException if the table cannot be read or a row is malformed
+     */
+    public List<Annotation> readBatch(int maxSize) throws IOException {
+        List<Annotation> batch = new ArrayList<>(Math.min(maxSize, 4096));
+        String line;
+        while (batch.size() < maxSize && (line = reader.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            batch.add(parse(line));
+        }
+        return batch;
+    }
+
+    /**
+     * @return number of lines read so far, including the header
+     */
+    public long getLineNumber() {
+        return lineNumber;
+    }
+
+    private Annotation parse(String line) throws IOException {
+        String[] values = line.split(delimiter, -1);
+        try {
+            int id = Integer.parseInt(values[lipidId].trim());
+            Lipid lipid = lipids.get(id);
+            if (lipid == null) {
+                lipid = new Lipid(id, values[lipidName].trim(), values[formula].trim(),
+                        LipidType.valueOf(values[lipidType].trim().toUpperCase(Locale.ROOT)),
+                        Integer.parseInt(values[carbons].trim()), Integer.parseInt(values[doubleBonds].trim()));
+                lipids.put(id, lipid);
+            }
+            IoniationMode mode = ionMode < 0 || values[ionMode].isBlank()
+                    ? IoniationMode.POSITIVE
+                    : IoniationMode.valueOf(values[ionMode].trim().toUpperCase(Locale.ROOT));
+            PeakList peaks = groupedPeaks < 0 ? PeakList.EMPTY : parsePeaks(values[groupedPeaks]);
+            return new Annotation(lipid, Double.parseDouble(values[mz].trim()), Double.parseDouble(values[intensity].trim()),
+                    Double.parseDouble(values[rt].trim()), peaks, mode);
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed feature at line " + lineNumber + ": " + e.getMessage(), e);
+        }
+    }
+
+    private static PeakList parsePeaks(String value) {
+        if (value.isBlank()) {
+            return PeakList.EMPTY;
+        }
+        String[] pairs = value.split(";");
+        double[] mzs = new double[pairs.length];
+        double[] intensities = new double[pairs.length];
+        for (int i = 0; i < pairs.length; i++) {
+            int separator = pairs[i].indexOf(':');
+            mzs[i] = Double.parseDouble(pairs[i].substring(0, separator).trim());
+            intensities[i] = Double.parseDouble(pairs[i].substring(separator + 1).trim());
+        }
+        return PeakList.of(mzs, intensities);
+    }
+
+    @Override
+    public void close() throws IOException {
+        reader.close();
+    }
+}
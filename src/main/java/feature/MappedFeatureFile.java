@@ -0,0 +1,294 @@
+package feature;
+
+import adduct.AdductDescriptor;
+import lipid.AdductDetector;
+import lipid.ElutionOrderScorer;
+import lipid.IoniationMode;
+import lipid.Lipid;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.function.IntFunction;
+
+/**
+ * Read-only view of a {@link ColumnarFeatureFile} mapped in memory. Opening the file maps its columns and checks its
+ * header and peak offsets, so that a corrupt file fails with an {@link IOException} instead of out-of-range reads
+ * later; values are read from the page cache when accessed and no object is created per feature or peak.
+ */
+public class MappedFeatureFile implements AutoCloseable {
+
+    private final FileChannel channel;
+    private final int size;
+    private final int peakCount;
+    private final DoubleBuffer mz;
+    private final DoubleBuffer rt;
+    private final DoubleBuffer intensity;
+    private final IntBuffer lipidIds;
+    private final IntBuffer peakOffsets;
+    private final DoubleBuffer peakMz;
+    private final DoubleBuffer peakIntensity;
+
+    private MappedFeatureFile(FileChannel channel) throws IOException {
+        this.channel = channel;
+        ByteBuffer header = ByteBuffer.allocate(ColumnarFeatureFile.HEADER_SIZE).order(ColumnarFeatureFile.BYTE_ORDER);
+        long position = 0;
+        while (header.hasRemaining()) {
+            int read = channel.read(header, position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        header.flip();
+        if (header.remaining() < ColumnarFeatureFile.HEADER_SIZE || header.getLong() != ColumnarFeatureFile.MAGIC) {
+            throw new IOException("Not a columnar feature file");
+        }
+        int version = header.getInt();
+        if (version != ColumnarFeatureFile.VERSION) {
+            throw new IOException("Unsupported columnar feature file version " + version);
+        }
+        this.size = header.getInt();
+        this.peakCount = header.getInt();
+        if (size < 0 || peakCount < 0) {
+            throw new IOException("Corrupt columnar feature file: " + size + " features and " + peakCount + " peaks");
+        }
+        long[] offsets = ColumnarFeatureFile.columnOffsets(size, peakCount);
+        if (channel.size() < offsets[7]) {
+            throw new IOException("Truncated columnar feature file");
+        }
+        this.mz = map(offsets[0], offsets[1]).asDoubleBuffer();
+        this.rt = map(offsets[1], offsets[2]).asDoubleBuffer();
+        this.intensity = map(offsets[2], offsets[3]).asDoubleBuffer();
+        this.lipidIds = map(offsets[3], offsets[3] + 4L * size).asIntBuffer();
+        this.peakOffsets = map(offsets[4], offsets[4] + 4L * (size + 1)).asIntBuffer();
+        this.peakMz = map(offsets[5], offsets[6]).asDoubleBuffer();
+        this.peakIntensity = map(offsets[6], offsets[7]).asDoubleBuffer();
+        checkPeakOffsets();
+    }
+
+    /**
+     * The peaks of feature i are at [peakOffsets[i], peakOffsets[i + 1]), so the offsets must go from 0 to the number
+     * of peaks without decreasing.
+     */
+    private void checkPeakOffsets() throws IOException {
+        int previous = 0;
+        for (int i = 0; i <= size; i++) {
+            int offset = peakOffsets.get(i);
+            if (offset < previous || offset > peakCount || (i == 0 && offset != 0)) {
+                throw new IOException("Corrupt columnar feature file: peak offset " + offset + " of feature " + i);
+            }
+            previous = offset;
+        }
+        if (previous != peakCount) {
+            throw new IOException("Corrupt columnar feature file: " + previous + " peaks of " + peakCount
+                    + " referenced");
+        }
+    }
+
+    /**
+     * @param path file written by {@link ColumnarFeatureFile#write(Path, FeatureColumns)}
+     * @return the mapped file
+     * @throws IOException if the file cannot be read or is not a columnar feature file
+     */
+    public static MappedFeatureFile open(Path path) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            return new MappedFeatureFile(channel);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    private ByteBuffer map(long from, long to) throws IOException {
+        if (to - from > Integer.MAX_VALUE) {
+            throw new IOException("Column too large to be mapped: " + (to - from) + " bytes");
+        }
+        return channel.map(FileChannel.MapMode.READ_ONLY, from, to - from).order(ColumnarFeatureFile.BYTE_ORDER);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int peakCount() {
+        return peakCount;
+    }
+
+    public double mz(int feature) {
+        return mz.get(feature);
+    }
+
+    public double rt(int feature) {
+        return rt.get(feature);
+    }
+
+    public double intensity(int feature) {
+        return intensity.get(feature);
+    }
+
+    public int lipidId(int feature) {
+        return lipidIds.get(feature);
+    }
+
+    /**
+     * @return position of the first grouped peak of the feature in the peak columns
+     */
+    public int peakStart(int feature) {
+        return peakOffsets.get(feature);
+    }
+
+    /**
+     * @return position after the last grouped peak of the feature in the peak columns
+     */
+    public int peakEnd(int feature) {
+        return peakOffsets.get(feature + 1);
+    }
+
+    public double peakMz(int peak) {
+        return peakMz.get(peak);
+    }
+
+    public double peakIntensity(int peak) {
+        return peakIntensity.get(peak);
+    }
+
+    /**
+     * @return a new flyweight positioned on the first feature
+     */
+    public FeatureView view() {
+        return new FeatureView(this);
+    }
+
+    /**
+     * Detect the adduct of a feature directly over the mapped peak column.
+     *
+     * @param feature  index of the feature
+     * @param detector adduct detector of the ionisation mode of the run
+     * @return the detected adduct, or null if no adduct explains the grouped peaks
+     */
+    public AdductDescriptor detectAdduct(int feature, AdductDetector detector) {
+        return detector.detect(mz(feature), peakMz, peakStart(feature), peakEnd(feature));
+    }
+
+    /**
+     * @see #detectAdduct(int, AdductDetector)
+     */
+    public AdductDescriptor detectAdduct(int feature, IoniationMode ionMode) {
+        return detectAdduct(feature, AdductDetector.forMode(ionMode));
+    }
+
+    /**
+     * Score the elution order of all the features with {@link ElutionOrderScorer}, taking the lipid of every feature
+     * from a catalogue by its id.
+     *
+     * @param lipids        catalogue of lipids by compound id
+     * @param scores        output, sum of the scores of every feature
+     * @param scoresApplied output, number of scores of every feature
+     * @return number of pairs of features that were scored
+     */
+    public int scoreElutionOrder(IntFunction<Lipid> lipids, int[] scores, int[] scoresApplied) {
+        int[] lipidTypes = new int[size];
+        int[] carbons = new int[size];
+        int[] doubleBonds = new int[size];
+        double[] retentionTimes = new double[size];
+        rt.get(0, retentionTimes);
+        for (int i = 0; i < size; i++) {
+            Lipid lipid = lipids.apply(lipidIds.get(i));
+            if (lipid == null) {
+                throw new IllegalArgumentException("Unknown lipid id " + lipidIds.get(i) + " of feature " + i);
+            }
+            lipidTypes[i] = lipid.getLipidType().ordinal();
+            carbons[i] = lipid.getCarbonCount();
+            doubleBonds[i] = lipid.getDoubleBondsCount();
+        }
+        return ElutionOrderScorer.score(lipidTypes, carbons, doubleBonds, retentionTimes, scores, scoresApplied);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * Flyweight over one feature of the file. Moving it to another feature does not allocate.
+     */
+    public static final class FeatureView {
+
+        private final MappedFeatureFile file;
+        private int feature;
+
+        private FeatureView(MappedFeatureFile file) {
+            this.file = file;
+        }
+
+        /**
+         * @param feature index of the feature to view
+         * @return this view
+         */
+        public FeatureView moveTo(int feature) {
+            if (feature < 0 || feature >= file.size) {
+                throw new IndexOutOfBoundsException("Feature " + feature + " out of " + file.size);
+            }
+            this.feature = feature;
+            return this;
+        }
+
+        public int index() {
+            return feature;
+        }
+
+        public double mz() {
+            return file.mz(feature);
+        }
+
+        public double rt() {
+            return file.rt(feature);
+        }
+
+        public double intensity() {
+            return file.intensity(feature);
+        }
+
+        public int lipidId() {
+            return file.lipidId(feature);
+        }
+
+        public int peakCount() {
+            return file.peakEnd(feature) - file.peakStart(feature);
+        }
+
+        /**
+         * @param k index of the grouped peak within the feature, peaks are sorted by mz
+         * @throws IndexOutOfBoundsException if k is not between 0 and {@link #peakCount()} (exclusive)
+         */
+        public double peakMz(int k) {
+            return file.peakMz(peak(k));
+        }
+
+        /**
+         * @param k index of the grouped peak within the feature
+         * @throws IndexOutOfBoundsException if k is not between 0 and {@link #peakCount()} (exclusive)
+         */
+        public double peakIntensity(int k) {
+            return file.peakIntensity(peak(k));
+        }
+
+        /**
+         * @return position of the grouped peak k of the feature in the peak columns
+         */
+        private int peak(int k) {
+            int start = file.peakStart(feature);
+            int count = file.peakEnd(feature) - start;
+            if (k < 0 || k >= count) {
+                throw new IndexOutOfBoundsException("Peak " + k + " out of " + count + " of feature " + feature);
+            }
+            return start + k;
+        }
+    }
+}
@@ -0,0 +1,472 @@
+package feature;
+
+import adduct.AdductDescriptor;
+import adduct.AdductLibrary;
+import adduct.AdductList;
+import lipid.Annotation;
+import lipid.ElutionOrderScorer;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.PeakList;
+import lipid.ScoreSnapshot;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.function.Consumer;
+import java.util.function.IntFunction;
+
+/**
+ * Numeric state of the candidate annotations of a very large run kept outside the Java heap: mz, retention time,
+ * intensity, lipid id, adduct id, score and number of scores applied, in fixed records of {@value #RECORD_SIZE} bytes.
+ * The records are stored in direct buffers of a fixed number of records, so the store grows without copying and the
+ * garbage collector only sees the buffers, never one object per annotation. Only
+ * {@link #scoreElutionOrder(IntFunction)} uses heap in proportion to the run, about 73 bytes per annotation while it
+ * runs.
+ * <p>
+ * The annotations are read and scored by index or through an {@link AnnotationView} flyweight. Lipids are referenced
+ * by compound id and adducts by their id in the library of the store, and an {@link Annotation} is only built when
+ * requested. Instances are not thread-safe; once filled, the store can be read by several threads as long as no
+ * annotation is added or scored.
+ */
+public class OffHeapAnnotationStore implements AutoCloseable {
+
+    public static final int RECORD_SIZE = 40;
+    public static final int DEFAULT_RECORDS_PER_CHUNK = 1 << 20;
+
+    private static final int MZ = 0;
+    private static final int RT = 8;
+    private static final int INTENSITY = 16;
+    private static final int LIPID_ID = 24;
+    private static final int ADDUCT_ID = 28;
+    private static final int SCORE = 32;
+    private static final int SCORES_APPLIED = 36;
+
+    private final AdductLibrary library;
+    private final int chunkShift;
+    private final int chunkMask;
+    private ByteBuffer[] chunks = new ByteBuffer[4];
+    private int chunkCount;
+    private int size;
+    private boolean closed;
+
+    /**
+     * Store of the adducts of {@link AdductList} with the default chunk size
+     */
+    public OffHeapAnnotationStore() {
+        this(DEFAULT_RECORDS_PER_CHUNK);
+    }
+
+    /**
+     * @param recordsPerChunk annotations per direct buffer, rounded up to a power of two
+     */
+    public OffHeapAnnotationStore(int recordsPerChunk) {
+        this(AdductList.getLibrary(), recordsPerChunk);
+    }
+
+    /**
+     * @param library         adducts of the run, whose ids are stored
+     * @param recordsPerChunk annotations per direct buffer, rounded up to a power of two
+     */
+    public OffHeapAnnotationStore(AdductLibrary library, int recordsPerChunk) {
+        if (recordsPerChunk < 1 || recordsPerChunk > Integer.MAX_VALUE / RECORD_SIZE) {
+            throw new IllegalArgumentException("recordsPerChunk out of range: " + recordsPerChunk);
+        }
+        int records = recordsPerChunk == 1 ? 1 : Integer.highestOneBit(recordsPerChunk - 1) << 1;
+        if (records > Integer.MAX_VALUE / RECORD_SIZE) {
+            records >>= 1;
+        }
+        this.library = library;
+        this.chunkShift = Integer.numberOfTrailingZeros(records);
+        this.chunkMask = records - 1;
+    }
+
+    /**
+     * Add an annotation without score.
+     *
+     * @param mz        mz of the feature
+     * @param rt        retention time of the feature
+     * @param intensity intensity of the feature
+     * @param lipidId   compound id of the candidate lipid
+     * @param adductId  id of the adduct in {@link #getLibrary()}, -1 if unknown
+     * @return index of the annotation
+     */
+    public int add(double mz, double rt, double intensity, int lipidId, int adductId) {
+        if (closed) {
+            throw new IllegalStateException("The annotation store is closed");
+        }
+        if (size == Integer.MAX_VALUE) {
+            throw new IllegalStateException("The annotation store is full");
+        }
+        int index = size;
+        int chunk = index >>> chunkShift;
+        if (chunk == chunkCount) {
+            if (chunkCount == chunks.length) {
+                chunks = Arrays.copyOf(chunks, chunks.length * 2);
+            }
+            chunks[chunkCount++] = ByteBuffer.allocateDirect((chunkMask + 1) * RECORD_SIZE)
+                    .order(ByteOrder.nativeOrder());
+        }
+        ByteBuffer buffer = chunks[chunk];
+        int offset = (index & chunkMask) * RECORD_SIZE;
+        buffer.putDouble(offset + MZ, mz);
+        buffer.putDouble(offset + RT, rt);
+        buffer.putDouble(offset + INTENSITY, intensity);
+        buffer.putInt(offset + LIPID_ID, lipidId);
+        buffer.putInt(offset + ADDUCT_ID, adductId);
+        buffer.putInt(offset + SCORE, 0);
+        buffer.putInt(offset + SCORES_APPLIED, 0);
+        size++;
+        return index;
+    }
+
+    /**
+     * Add the numeric state of an annotation: its feature, the id of its lipid, its adduct and its score.
+     *
+     * @param annotation annotation to store
+     * @return index of the annotation
+     */
+    public int add(Annotation annotation) {
+        AdductDescriptor adduct = library.getDescriptor(annotation.getAdduct());
+        int index = add(annotation.getMz(), annotation.getRtMin(), annotation.getIntensity(),
+                annotation.getLipid().getCompoundId(), adduct == null ? -1 : adduct.getId());
+        ScoreSnapshot score = annotation.getScoreSnapshot();
+        addScores(index, score.getScore(), score.getTotalScoresApplied());
+        return index;
+    }
+
+    private ByteBuffer chunk(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException("Annotation " + index + " out of " + size);
+        }
+        return chunks[index >>> chunkShift];
+    }
+
+    private int offset(int index) {
+        return (index & chunkMask) * RECORD_SIZE;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return the library of the stored adduct ids
+     */
+    public AdductLibrary getLibrary() {
+        return library;
+    }
+
+    /**
+     * @return bytes allocated outside the heap
+     */
+    public long offHeapBytes() {
+        return (long) chunkCount * (chunkMask + 1) * RECORD_SIZE;
+    }
+
+    public double mz(int index) {
+        return chunk(index).getDouble(offset(index) + MZ);
+    }
+
+    public double rt(int index) {
+        return chunk(index).getDouble(offset(index) + RT);
+    }
+
+    public double intensity(int index) {
+        return chunk(index).getDouble(offset(index) + INTENSITY);
+    }
+
+    public int lipidId(int index) {
+        return chunk(index).getInt(offset(index) + LIPID_ID);
+    }
+
+    /**
+     * @return id of the adduct in {@link #getLibrary()}, -1 if unknown
+     */
+    public int adductId(int index) {
+        return chunk(index).getInt(offset(index) + ADDUCT_ID);
+    }
+
+    /**
+     * @return the adduct of the annotation, or null if unknown
+     */
+    public AdductDescriptor adduct(int index) {
+        int adductId = adductId(index);
+        return adductId < 0 ? null : library.getDescriptor(adductId);
+    }
+
+    public void setAdductId(int index, int adductId) {
+        chunk(index).putInt(offset(index) + ADDUCT_ID, adductId);
+    }
+
+    public int score(int index) {
+        return chunk(index).getInt(offset(index) + SCORE);
+    }
+
+    public int scoresApplied(int index) {
+        return chunk(index).getInt(offset(index) + SCORES_APPLIED);
+    }
+
+    /**
+     * @return score / scores applied, NaN if no score was applied
+     */
+    public double normalizedScore(int index) {
+        ByteBuffer buffer = chunk(index);
+        int offset = offset(index);
+        return (double) buffer.getInt(offset + SCORE) / buffer.getInt(offset + SCORES_APPLIED);
+    }
+
+    /**
+     * Apply several scores at once, as {@link Annotation#addScores(int, int)}.
+     *
+     * @param index         index of the annotation
+     * @param delta         sum of the scores
+     * @param scoresApplied number of scores
+     */
+    public void addScores(int index, int delta, int scoresApplied) {
+        ByteBuffer buffer = chunk(index);
+        int offset = offset(index);
+        buffer.putInt(offset + SCORE, buffer.getInt(offset + SCORE) + delta);
+        buffer.putInt(offset + SCORES_APPLIED, buffer.getInt(offset + SCORES_APPLIED) + scoresApplied);
+    }
+
+    /**
+     * Score the elution order of all the annotations with {@link ElutionOrderScorer} and add the scores to the store.
+     * The keys of the scorer are read into temporary heap columns, no object is created per annotation, and the
+     * catalogue is asked once per distinct lipid id.
+     * <p>
+     * Every pair of annotations sharing the keys of a rule is scored, so the whole run is scored at once: the columns
+     * of the keys, the retention times and the scores take 28 bytes per annotation, and the scorer adds its own
+     * working arrays of about 45 bytes per annotation. Scoring 10 million annotations therefore allocates about 730 MB
+     * of heap for the duration of the call, even though the annotations themselves stay outside the heap.
+     *
+     * @param lipids catalogue of lipids by compound id
+     * @return number of pairs of annotations that were scored
+     */
+    public int scoreElutionOrder(IntFunction<Lipid> lipids) {
+        int[] lipidTypes = new int[size];
+        int[] carbons = new int[size];
+        int[] doubleBonds = new int[size];
+        double[] retentionTimes = new double[size];
+        LipidKeys keys = new LipidKeys(lipids);
+        for (int i = 0; i < size; i++) {
+            ByteBuffer buffer = chunks[i >>> chunkShift];
+            int offset = offset(i);
+            int lipid = keys.indexOf(buffer.getInt(offset + LIPID_ID), i);
+            lipidTypes[i] = keys.lipidTypes[lipid];
+            carbons[i] = keys.carbons[lipid];
+            doubleBonds[i] = keys.doubleBonds[lipid];
+            retentionTimes[i] = buffer.getDouble(offset + RT);
+        }
+        int[] scores = new int[size];
+        int[] scoresApplied = new int[size];
+        int pairs = ElutionOrderScorer.score(lipidTypes, carbons, doubleBonds, retentionTimes, scores, scoresApplied);
+        for (int i = 0; i < size; i++) {
+            if (scoresApplied[i] != 0) {
+                addScores(i, scores[i], scoresApplied[i]);
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * @param index  index of the annotation
+     * @param lipids catalogue of lipids by compound id
+     * @return a new annotation with the state of the stored one, without grouped peaks
+     */
+    public Annotation toAnnotation(int index, IntFunction<Lipid> lipids, IoniationMode ionMode) {
+        AdductDescriptor adduct = adduct(index);
+        Annotation annotation = new Annotation(lipids.apply(lipidId(index)), mz(index), intensity(index), rt(index),
+                PeakList.EMPTY, ionMode, adduct == null ? null : adduct.getName());
+        annotation.addScores(score(index), scoresApplied(index));
+        return annotation;
+    }
+
+    /**
+     * @return a new flyweight positioned on the first annotation
+     */
+    public AnnotationView view() {
+        return new AnnotationView(this);
+    }
+
+    /**
+     * Call the action with one flyweight moved over every annotation in order. The action must not keep the view.
+     */
+    public void forEach(Consumer<? super AnnotationView> action) {
+        AnnotationView view = new AnnotationView(this);
+        for (int i = 0; i < size; i++) {
+            action.accept(view.moveTo(i));
+        }
+    }
+
+    /**
+     * Drop the buffers, whose memory is released once they are collected. The store cannot be used afterwards.
+     */
+    @Override
+    public void close() {
+        closed = true;
+        chunks = new ByteBuffer[0];
+        chunkCount = 0;
+        size = 0;
+    }
+
+    /**
+     * Elution order keys of the distinct lipids of the store, resolved from the catalogue on first use and found by
+     * lipid id in an open addressing table.
+     */
+    private static final class LipidKeys {
+        private final IntFunction<Lipid> catalogue;
+        private int[] ids = new int[64];
+        private int[] slots = new int[64];
+        private int[] lipidTypes = new int[32];
+        private int[] carbons = new int[32];
+        private int[] doubleBonds = new int[32];
+        private int count;
+
+        LipidKeys(IntFunction<Lipid> catalogue) {
+            this.catalogue = catalogue;
+            Arrays.fill(slots, -1);
+        }
+
+        /**
+         * @param lipidId    compound id of the lipid
+         * @param annotation index of the annotation, for the error message
+         * @return position of the keys of the lipid
+         */
+        int indexOf(int lipidId, int annotation) {
+            int mask = ids.length - 1;
+            int slot = slot(lipidId, mask);
+            while (slots[slot] >= 0) {
+                if (ids[slot] == lipidId) {
+                    return slots[slot];
+                }
+                slot = (slot + 1) & mask;
+            }
+            Lipid lipid = catalogue.apply(lipidId);
+            if (lipid == null) {
+                throw new IllegalArgumentException("Unknown lipid id " + lipidId + " of annotation " + annotation);
+            }
+            if (count == lipidTypes.length) {
+                lipidTypes = Arrays.copyOf(lipidTypes, count * 2);
+                carbons = Arrays.copyOf(carbons, count * 2);
+                doubleBonds = Arrays.copyOf(doubleBonds, count * 2);
+            }
+            lipidTypes[count] = lipid.getLipidType().ordinal();
+            carbons[count] = lipid.getCarbonCount();
+            doubleBonds[count] = lipid.getDoubleBondsCount();
+            ids[slot] = lipidId;
+            slots[slot] = count;
+            count++;
+            // At most half full
+            if (count * 2 > ids.length) {
+                rehash();
+            }
+            return count - 1;
+        }
+
+        private static int slot(int lipidId, int mask) {
+            int hash = lipidId * 0x9E3779B9;
+            return (hash ^ (hash >>> 16)) & mask;
+        }
+
+        private void rehash() {
+            int[] oldIds = ids;
+            int[] oldSlots = slots;
+            ids = new int[oldIds.length * 2];
+            slots = new int[oldIds.length * 2];
+            Arrays.fill(slots, -1);
+            int mask = ids.length - 1;
+            for (int s = 0; s < oldIds.length; s++) {
+                if (oldSlots[s] >= 0) {
+                    int slot = slot(oldIds[s], mask);
+                    while (slots[slot] >= 0) {
+                        slot = (slot + 1) & mask;
+                    }
+                    ids[slot] = oldIds[s];
+                    slots[slot] = oldSlots[s];
+                }
+            }
+        }
+    }
+
+    /**
+     * Flyweight over one annotation of the store. Moving it to another annotation does not allocate.
+     */
+    public static final class AnnotationView {
+
+        private final OffHeapAnnotationStore store;
+        private ByteBuffer buffer;
+        private int offset;
+        private int index;
+
+        private AnnotationView(OffHeapAnnotationStore store) {
+            this.store = store;
+        }
+
+        /**
+         * @param index index of the annotation to view
+         * @return this view
+         */
+        public AnnotationView moveTo(int index) {
+            this.buffer = store.chunk(index);
+            this.offset = store.offset(index);
+            this.index = index;
+            return this;
+        }
+
+        public int index() {
+            return index;
+        }
+
+        public double mz() {
+            return buffer.getDouble(offset + MZ);
+        }
+
+        public double rt() {
+            return buffer.getDouble(offset + RT);
+        }
+
+        public double intensity() {
+            return buffer.getDouble(offset + INTENSITY);
+        }
+
+        public int lipidId() {
+            return buffer.getInt(offset + LIPID_ID);
+        }
+
+        /**
+         * @return id of the adduct in the library of the store, -1 if unknown
+         */
+        public int adductId() {
+            return buffer.getInt(offset + ADDUCT_ID);
+        }
+
+        /**
+         * @return the adduct of the annotation in the library of the store, or null if unknown
+         */
+        public AdductDescriptor adduct() {
+            int adductId = adductId();
+            return adductId < 0 ? null : store.library.getDescriptor(adductId);
+        }
+
+        public int score() {
+            return buffer.getInt(offset + SCORE);
+        }
+
+        public int scoresApplied() {
+            return buffer.getInt(offset + SCORES_APPLIED);
+        }
+
+        /**
+         * @return score / scores applied, NaN if no score was applied
+         */
+        public double normalizedScore() {
+            return (double) score() / scoresApplied();
+        }
+
+        public void addScores(int delta, int scoresApplied) {
+            buffer.putInt(offset + SCORE, score() + delta);
+            buffer.putInt(offset + SCORES_APPLIED, scoresApplied() + scoresApplied);
+        }
+    }
+}
@@ -0,0 +1,329 @@
+package feature;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import formula.IsotopeEnvelope;
+import lipid.AdductDetector;
+import lipid.IndexSort;
+import lipid.IoniationMode;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Groups the features of a run that come from the same compound: co-eluting features (within the RT tolerance) whose
+ * mz differ by an isotope spacing, or that give the same neutral mass as the main ion of the run (the first adduct of
+ * the mode in {@link AdductList}, [M+H]+ or [M-H]-) and as another adduct. Groups are the connected components of
+ * these links, so a group can hold the isotopes of several adducts. Linking any two adducts would chain unrelated
+ * compounds whose masses happen to match under other adduct pairs into ever larger groups as the run grows, so a
+ * compound detected without its main ion is only grouped with its isotopes.
+ * <p>
+ * The features are swept in RT order. Every feature is inserted in three hashes of mass bins: one of its mz, one of its
+ * neutral mass as the main ion and one of its neutral masses under the other adducts, and only the features inserted
+ * within the RT tolerance are compared with it. A
+ * bucket chains its features from the most recent one, so the walk stops at the first feature out of the RT window and
+ * nothing is ever removed. With a parallelism above one, the RT-sorted features are split in ranges whose links are
+ * found on different threads, each range also inserting the features of the RT tolerance before it.
+ */
+public class PeakGrouper {
+
+    public static final double DEFAULT_RT_TOLERANCE = 0.05;
+    /**
+     * Isotopes M+1... linked to a feature
+     */
+    public static final int MAX_ISOTOPES = 3;
+    /**
+     * Charges considered for the isotope spacing
+     */
+    public static final int MAX_CHARGE = 2;
+
+    private static final int MIN_FEATURES_PER_RANGE = 4096;
+    /**
+     * Position of the main ion among the adducts of the mode
+     */
+    private static final int MAIN_ION = 0;
+
+    private final double[] adductCharges;
+    private final double[] adductDeltas;
+    private final double[] adductMultimers;
+    private final double ppmTolerance;
+    private final double rtTolerance;
+    private final int parallelism;
+
+    /**
+     * Single threaded grouper with the default tolerances
+     *
+     * @param ionMode ionisation mode of the run, whose adducts link the features
+     */
+    public PeakGrouper(IoniationMode ionMode) {
+        this(ionMode, AdductDetector.DEFAULT_PPM_TOLERANCE, DEFAULT_RT_TOLERANCE, 1);
+    }
+
+    /**
+     * @param ionMode      ionisation mode of the run, whose adducts link the features
+     * @param ppmTolerance tolerance between the mz, or the neutral masses, of two linked features
+     * @param rtTolerance  maximum difference of retention time (min) between two linked features
+     * @param parallelism  number of threads finding the links
+     */
+    public PeakGrouper(IoniationMode ionMode, double ppmTolerance, double rtTolerance, int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        AdductDescriptor[] adducts = AdductList.getDescriptors(ionMode);
+        this.adductCharges = new double[adducts.length];
+        this.adductDeltas = new double[adducts.length];
+        this.adductMultimers = new double[adducts.length];
+        for (int a = 0; a < adducts.length; a++) {
+            adductCharges[a] = adducts[a].getCharge();
+            adductDeltas[a] = adducts[a].getMassDelta();
+            adductMultimers[a] = adducts[a].getMultimer();
+        }
+        this.ppmTolerance = ppmTolerance;
+        this.rtTolerance = rtTolerance;
+        this.parallelism = parallelism;
+    }
+
+    /**
+     * @param columns features of the run
+     * @return the groups of the features
+     */
+    public PeakGroups group(FeatureColumns columns) {
+        return group(columns.mz(), columns.rt(), columns.intensity(), columns.size());
+    }
+
+    /**
+     * @param mz        mz of the features
+     * @param rt        retention time of the features
+     * @param intensity intensity of the features
+     * @param size      number of features
+     * @return the groups of the features
+     */
+    public PeakGroups group(double[] mz, double[] rt, double[] intensity, int size) {
+        int[] order = IndexSort.ascending(rt, size);
+        double[] sortedMz = new double[size];
+        double[] sortedRt = new double[size];
+        double maxMz = 0;
+        for (int k = 0; k < size; k++) {
+            sortedMz[k] = mz[order[k]];
+            sortedRt[k] = rt[order[k]];
+            maxMz = Math.max(maxMz, sortedMz[k]);
+        }
+        double maxMass = 0;
+        for (int a = 0; a < adductCharges.length; a++) {
+            maxMass = Math.max(maxMass, (maxMz * adductCharges[a] + adductDeltas[a]) / adductMultimers[a]);
+        }
+        Sweep sweep = new Sweep(sortedMz, sortedRt, maxMz, maxMass);
+
+        int ranges = Math.min(parallelism, Math.max(1, size / MIN_FEATURES_PER_RANGE));
+        List<Links> links = new ArrayList<>(ranges);
+        if (ranges == 1) {
+            links.add(sweep.links(0, size));
+        } else {
+            ExecutorService executor = Executors.newFixedThreadPool(ranges);
+            try {
+                List<CompletableFuture<Links>> futures = new ArrayList<>(ranges);
+                for (int r = 0; r < ranges; r++) {
+                    int from = (int) ((long) size * r / ranges);
+                    int to = (int) ((long) size * (r + 1) / ranges);
+                    futures.add(CompletableFuture.supplyAsync(() -> sweep.links(from, to), executor));
+                }
+                for (CompletableFuture<Links> future : futures) {
+                    links.add(future.join());
+                }
+            } finally {
+                executor.shutdown();
+            }
+        }
+
+        // Union-find over the RT-sorted positions
+        int[] parent = new int[size];
+        for (int k = 0; k < size; k++) {
+            parent[k] = k;
+        }
+        for (Links range : links) {
+            for (int p = 0; p < range.count; p += 2) {
+                union(parent, range.pairs[p], range.pairs[p + 1]);
+            }
+        }
+        int[] groupOfPosition = new int[size];
+        for (int k = 0; k < size; k++) {
+            groupOfPosition[k] = find(parent, k);
+        }
+        int[] groupOf = new int[size];
+        for (int k = 0; k < size; k++) {
+            groupOf[order[k]] = groupOfPosition[k];
+        }
+        return new PeakGroups(mz, intensity, size, groupOf);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    private static void union(int[] parent, int i, int j) {
+        int rootI = find(parent, i);
+        int rootJ = find(parent, j);
+        if (rootI != rootJ) {
+            // Smallest position as root, so the result does not depend on the order of the links
+            if (rootI < rootJ) {
+                parent[rootJ] = rootI;
+            } else {
+                parent[rootI] = rootJ;
+            }
+        }
+    }
+
+    /**
+     * Features sorted by RT, shared read-only by the threads that find the links of different ranges
+     */
+    private final class Sweep {
+        private final double[] mz;
+        private final double[] rt;
+        private final double mzBinWidth;
+        private final double massBinWidth;
+
+        Sweep(double[] mz, double[] rt, double maxMz, double maxMass) {
+            this.mz = mz;
+            this.rt = rt;
+            // A bin is at least as wide as the tolerance at the largest value, so matches are in adjacent bins
+            this.mzBinWidth = Math.max(maxMz * ppmTolerance / 1000000d, 1e-9);
+            this.massBinWidth = Math.max(maxMass * ppmTolerance / 1000000d, 1e-9);
+        }
+
+        /**
+         * @return pairs of linked positions of the range [from, to), each found once
+         */
+        Links links(int from, int to) {
+            int start = from;
+            while (start > 0 && rt[start - 1] >= rt[from] - rtTolerance) {
+                start--;
+            }
+            int adducts = adductCharges.length;
+            BinHash mzHash = new BinHash(to - start, mzBinWidth);
+            BinHash mainIonHash = new BinHash(to - start, massBinWidth);
+            BinHash otherAdductHash = new BinHash((to - start) * Math.max(0, adducts - 1), massBinWidth);
+            double[] masses = new double[adducts];
+            Links links = new Links(to - from);
+
+            for (int k = start; k < to; k++) {
+                double mzK = mz[k];
+                double minRt = rt[k] - rtTolerance;
+                for (int a = 0; a < adducts; a++) {
+                    masses[a] = (mzK * adductCharges[a] + adductDeltas[a]) / adductMultimers[a];
+                }
+                if (k >= from) {
+                    for (int charge = 1; charge <= MAX_CHARGE; charge++) {
+                        for (int isotope = 1; isotope <= MAX_ISOTOPES; isotope++) {
+                            double shift = isotope * IsotopeEnvelope.ISOTOPE_SPACING / charge;
+                            mzHash.collect(mzK - shift, minRt, k, links);
+                            mzHash.collect(mzK + shift, minRt, k, links);
+                        }
+                    }
+                    if (adducts > 0) {
+                        otherAdductHash.collect(masses[MAIN_ION], minRt, k, links);
+                    }
+                    for (int a = MAIN_ION + 1; a < adducts; a++) {
+                        mainIonHash.collect(masses[a], minRt, k, links);
+                    }
+                }
+                mzHash.insert(mzK, k);
+                if (adducts > 0) {
+                    mainIonHash.insert(masses[MAIN_ION], k);
+                }
+                for (int a = MAIN_ION + 1; a < adducts; a++) {
+                    otherAdductHash.insert(masses[a], k);
+                }
+            }
+            return links;
+        }
+
+        /**
+         * Chained hash of values by bin. New entries are put at the head of their bucket, so a chain goes from the
+         * latest position to the earliest one.
+         */
+        private final class BinHash {
+            private final double binWidth;
+            private final int mask;
+            private final int[] heads;
+            private final int[] next;
+            private final int[] positions;
+            private final double[] values;
+            private int size;
+
+            BinHash(int capacity, double binWidth) {
+                this.binWidth = binWidth;
+                int buckets = Integer.highestOneBit(Math.max(16, capacity * 2 - 1));
+                this.mask = buckets - 1;
+                this.heads = new int[buckets];
+                Arrays.fill(heads, -1);
+                this.next = new int[capacity];
+                this.positions = new int[capacity];
+                this.values = new double[capacity];
+            }
+
+            private int bucket(long bin) {
+                long h = bin * 0x9E3779B97F4A7C15L;
+                return (int) (h >>> 40) & mask;
+            }
+
+            void insert(double value, int position) {
+                int bucket = bucket((long) Math.floor(value / binWidth));
+                values[size] = value;
+                positions[size] = position;
+                next[size] = heads[bucket];
+                heads[bucket] = size;
+                size++;
+            }
+
+            /**
+             * Link the position to the entries within the tolerance of the target that were inserted at an RT of at
+             * least minRt.
+             */
+            void collect(double target, double minRt, int position, Links links) {
+                double tolerance = target * ppmTolerance / 1000000d;
+                long bin = (long) Math.floor(target / binWidth);
+                int previousBucket = -1;
+                for (long b = bin - 1; b <= bin + 1; b++) {
+                    int bucket = bucket(b);
+                    if (bucket == previousBucket) {
+                        continue;
+                    }
+                    previousBucket = bucket;
+                    for (int e = heads[bucket]; e >= 0 && rt[positions[e]] >= minRt; e = next[e]) {
+                        if (Math.abs(values[e] - target) <= tolerance) {
+                            links.add(positions[e], position);
+                        }
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Linked positions, as consecutive pairs
+     */
+    private static final class Links {
+        int[] pairs;
+        int count;
+
+        Links(int capacity) {
+            this.pairs = new int[2 * Math.max(16, capacity)];
+        }
+
+        void add(int i, int j) {
+            if (count + 2 > pairs.length) {
+                pairs = Arrays.copyOf(pairs, pairs.length * 2);
+            }
+            pairs[count++] = i;
+            pairs[count++] = j;
+        }
+    }
+}
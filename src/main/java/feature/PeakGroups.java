@@ -0,0 +1,152 @@
+package feature;
+
+import lipid.PeakList;
+
+import java.util.Arrays;
+
+/**
+ * Groups of the features of a run found by {@link PeakGrouper}. Groups are numbered from 0 in the order of their
+ * first feature, and the peaks of a group (mz and intensity of its features) are the grouped signals of each of its
+ * features.
+ */
+public class PeakGroups {
+
+    private final double[] mz;
+    private final double[] intensity;
+    private final int[] groupOf;
+    private final int[] groupOffsets;
+    private final int[] members;
+    private final PeakList[] peaks;
+
+    /**
+     * @param mz        mz of the features
+     * @param intensity intensity of the features
+     * @param size      number of features
+     * @param labels    label of every feature between 0 and size, equal for the features of a group
+     */
+    PeakGroups(double[] mz, double[] intensity, int size, int[] labels) {
+        this.mz = mz;
+        this.intensity = intensity;
+        this.groupOf = new int[size];
+        int[] groupOfLabel = new int[size];
+        Arrays.fill(groupOfLabel, -1);
+        int groups = 0;
+        int[] sizes = new int[size + 1];
+        for (int i = 0; i < size; i++) {
+            int label = labels[i];
+            if (groupOfLabel[label] < 0) {
+                groupOfLabel[label] = groups++;
+            }
+            groupOf[i] = groupOfLabel[label];
+            sizes[groupOf[i] + 1]++;
+        }
+        this.groupOffsets = Arrays.copyOf(sizes, groups + 1);
+        for (int g = 0; g < groups; g++) {
+            groupOffsets[g + 1] += groupOffsets[g];
+        }
+        this.members = new int[size];
+        int[] filled = Arrays.copyOf(groupOffsets, groups);
+        for (int i = 0; i < size; i++) {
+            members[filled[groupOf[i]]++] = i;
+        }
+        this.peaks = new PeakList[groups];
+    }
+
+    /**
+     * @return number of features
+     */
+    public int size() {
+        return groupOf.length;
+    }
+
+    public int groupCount() {
+        return peaks.length;
+    }
+
+    /**
+     * @param feature index of a feature
+     * @return the group of the feature
+     */
+    public int groupOf(int feature) {
+        return groupOf[feature];
+    }
+
+    /**
+     * @return number of features of the group
+     */
+    public int groupSize(int group) {
+        return groupOffsets[group + 1] - groupOffsets[group];
+    }
+
+    /**
+     * @return the features of the group, in ascending order
+     */
+    public int[] members(int group) {
+        return Arrays.copyOfRange(members, groupOffsets[group], groupOffsets[group + 1]);
+    }
+
+    /**
+     * @return the peaks of the features of the group, built on first request
+     */
+    public PeakList peaks(int group) {
+        PeakList list = peaks[group];
+        if (list == null) {
+            int from = groupOffsets[group];
+            int to = groupOffsets[group + 1];
+            double[] groupMz = new double[to - from];
+            double[] groupIntensity = new double[to - from];
+            for (int m = from; m < to; m++) {
+                groupMz[m - from] = mz[members[m]];
+                groupIntensity[m - from] = intensity[members[m]];
+            }
+            // Immutable, so a list built twice by racing threads is harmless
+            list = PeakList.of(groupMz, groupIntensity);
+            peaks[group] = list;
+        }
+        return list;
+    }
+
+    /**
+     * @param feature index of a feature
+     * @return the grouped signals of the feature: the peaks of its group, itself included
+     */
+    public PeakList peaksOf(int feature) {
+        return peaks(groupOf[feature]);
+    }
+
+    /**
+     * Copy the features with the peaks of their group as grouped peaks, ready for {@link BatchAnnotator}.
+     *
+     * @param columns features that were grouped
+     * @return new columns with the same features and their grouped peaks
+     */
+    public FeatureColumns withGroupedPeaks(FeatureColumns columns) {
+        int size = size();
+        if (columns.size() != size) {
+            throw new IllegalArgumentException("The columns do not have the grouped features");
+        }
+        // Every feature gets the peaks of its group, so the peaks grow as the sum of the squared group sizes
+        long capacity = 0;
+        for (int i = 0; i < size; i++) {
+            capacity += groupSize(groupOf[i]);
+        }
+        if (capacity > Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many grouped peaks for the columns: " + capacity);
+        }
+        int[] peakOffsets = new int[size + 1];
+        double[] peakMz = new double[(int) capacity];
+        double[] peakIntensity = new double[(int) capacity];
+        for (int i = 0; i < size; i++) {
+            PeakList group = peaksOf(i);
+            for (int p = 0; p < group.size(); p++) {
+                peakMz[peakOffsets[i] + p] = group.mzAt(p);
+                peakIntensity[peakOffsets[i] + p] = group.intensityAt(p);
+            }
+            // Features of equal mz are kept once in the peak list
+            peakOffsets[i + 1] = peakOffsets[i] + group.size();
+        }
+        return new FeatureColumns(Arrays.copyOf(columns.mz(), size), Arrays.copyOf(columns.rt(), size),
+                Arrays.copyOf(columns.intensity(), size), Arrays.copyOf(columns.lipidIds(), size),
+                peakOffsets, peakMz, peakIntensity);
+    }
+}
@@ -0,0 +1,125 @@
+package feature;
+
+import adduct.AdductDescriptor;
+import lipid.Annotation;
+import lipid.Lipid;
+import lipid.ScoreSnapshot;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes scored annotations as a TSV table, one row per annotation, with the columns of {@link FeatureTableReader}
+ * followed by the adduct, the score, the number of scores applied and the normalized score. The table can be read
+ * again by {@link FeatureTableReader}.
+ */
+public class ScoredAnnotationWriter implements Closeable {
+
+    public static final String ADDUCT = "adduct";
+    public static final String SCORE = "score";
+    public static final String SCORES_APPLIED = "scores_applied";
+    public static final String NORMALIZED_SCORE = "normalized_score";
+
+    private static final String HEADER = String.join("\t", FeatureTableReader.MZ, FeatureTableReader.RT,
+            FeatureTableReader.INTENSITY, FeatureTableReader.LIPID_ID, FeatureTableReader.LIPID_NAME,
+            FeatureTableReader.FORMULA, FeatureTableReader.LIPID_TYPE, FeatureTableReader.CARBONS,
+            FeatureTableReader.DOUBLE_BONDS, ADDUCT, SCORE, SCORES_APPLIED, NORMALIZED_SCORE);
+
+    private final BufferedWriter writer;
+    private final StringBuilder row = new StringBuilder(256);
+    private long written;
+
+    /**
+     * @param writer destination of the table, closed with this writer
+     * @throws IOException if the header cannot be written
+     */
+    public ScoredAnnotationWriter(Writer writer) throws IOException {
+        this.writer = writer instanceof BufferedWriter ? (BufferedWriter) writer : new BufferedWriter(writer);
+        this.writer.write(HEADER);
+        this.writer.newLine();
+    }
+
+    /**
+     * @param path file to create or overwrite
+     * @return a writer of the file
+     */
+    public static ScoredAnnotationWriter create(Path path) throws IOException {
+        return new ScoredAnnotationWriter(Files.newBufferedWriter(path, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @param annotation scored annotation
+     * @throws IOException if the row cannot be written
+     */
+    public void write(Annotation annotation) throws IOException {
+        ScoreSnapshot score = annotation.getScoreSnapshot();
+        writeRow(annotation.getMz(), annotation.getRtMin(), annotation.getIntensity(), annotation.getLipid(),
+                annotation.getAdduct(), score.getScore(), score.getTotalScoresApplied());
+    }
+
+    /**
+     * Write an annotation of an {@link OffHeapAnnotationStore} without building an {@link Annotation}.
+     *
+     * @param annotation view of the stored annotation
+     * @param lipid      lipid of the annotation, see {@link OffHeapAnnotationStore.AnnotationView#lipidId()}
+     * @throws IOException if the row cannot be written
+     */
+    public void write(OffHeapAnnotationStore.AnnotationView annotation, Lipid lipid) throws IOException {
+        AdductDescriptor adduct = annotation.adduct();
+        writeRow(annotation.mz(), annotation.rt(), annotation.intensity(), lipid,
+                adduct == null ? null : adduct.getName(), annotation.score(), annotation.scoresApplied());
+    }
+
+    private void writeRow(double mz, double rt, double intensity, Lipid lipid, String adduct, int score,
+                          int scoresApplied) throws IOException {
+        row.setLength(0);
+        row.append(mz).append('\t')
+                .append(rt).append('\t')
+                .append(intensity).append('\t')
+                .append(lipid.getCompoundId()).append('\t')
+                .append(lipid.getName()).append('\t')
+                .append(lipid.getFormula()).append('\t')
+                .append(lipid.getLipidType()).append('\t')
+                .append(lipid.getCarbonCount()).append('\t')
+                .append(lipid.getDoubleBondsCount()).append('\t')
+                .append(adduct == null ? "" : adduct).append('\t')
+                .append(score).append('\t')
+                .append(scoresApplied).append('\t');
+        if (scoresApplied > 0) {
+            row.append((double) score / scoresApplied);
+        }
+        writer.append(row).append('\n');
+        written++;
+    }
+
+    /**
+     * Same as {@link #write(Annotation)} for use as a listener of scored annotations
+     *
+     * @throws UncheckedIOException if the row cannot be written
+     */
+    public void writeUnchecked(Annotation annotation) {
+        try {
+            write(annotation);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * @return number of annotations written
+     */
+    public long getWritten() {
+        return written;
+    }
+
+    @Override
+    public void close() throws IOException {
+        writer.close();
+    }
+}
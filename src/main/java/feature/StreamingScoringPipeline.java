@@ -0,0 +1,117 @@
+package feature;
+
+import lipid.Annotation;
+import lipid.IncrementalLipidScorer;
+import lipid.LipidScoreUnit;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Feeds a {@link LipidScoreUnit} from a {@link FeatureTableReader} in bounded batches. Every batch is inserted in
+ * the data store and the rules are fired before the next batch is read, so only the pairs involving the new
+ * annotations are evaluated and scored annotations are available while the table is still being read.
+ * <p>
+ * The scores given to a batch are provisional: annotations read later can still be paired with it. By default
+ * annotations stay in the working memory until the pipeline is closed; with an RT horizon they are retracted once they
+ * are final, see {@link IncrementalLipidScorer}. A finite horizon needs a table sorted by retention time: a row more
+ * than the horizon before a row read earlier would miss its pairs with the annotations already finalized, so the
+ * table is rejected.
+ */
+public class StreamingScoringPipeline implements AutoCloseable {
+
+    public static final int DEFAULT_BATCH_SIZE = 10000;
+
+    private final IncrementalLipidScorer scorer;
+    private final int batchSize;
+    private final double rtHorizon;
+
+    public StreamingScoringPipeline() {
+        this(DEFAULT_BATCH_SIZE);
+    }
+
+    /**
+     * @param batchSize number of annotations inserted before each firing
+     */
+    public StreamingScoringPipeline(int batchSize) {
+        this(batchSize, Double.POSITIVE_INFINITY, annotation -> { });
+    }
+
+    /**
+     * @param batchSize   number of annotations inserted before each firing
+     * @param rtHorizon   retention time (min) after which an annotation is final and leaves the working memory
+     * @param onFinalized called with every annotation once its score is final
+     */
+    public StreamingScoringPipeline(int batchSize, double rtHorizon, Consumer<Annotation> onFinalized) {
+        if (batchSize < 1) {
+            throw new IllegalArgumentException("batchSize must be positive: " + batchSize);
+        }
+        this.batchSize = batchSize;
+        this.rtHorizon = rtHorizon;
+        this.scorer = new IncrementalLipidScorer(rtHorizon, onFinalized);
+    }
+
+    /**
+     * Read the whole table, scoring it batch by batch.
+     *
+     * @param reader        source of the annotations
+     * @param onBatchScored called with every batch right after its rules have been fired
+     * @return number of annotations read
+     * @throws IOException if the table cannot be read, or if it is not sorted by retention time with a finite horizon
+     */
+    public long run(FeatureTableReader reader, Consumer<List<Annotation>> onBatchScored) throws IOException {
+        long read = 0;
+        double highestRt = Double.NEGATIVE_INFINITY;
+        List<Annotation> batch;
+        while (!(batch = reader.readBatch(batchSize)).isEmpty()) {
+            for (int i = 0; i < batch.size(); i++) {
+                double rt = batch.get(i).getRtMin();
+                if (rt < highestRt - rtHorizon) {
+                    throw new IOException("Feature " + (read + i + 1) + " at RT " + rt + " min is more than the RT"
+                            + " horizon of " + rtHorizon + " min before RT " + highestRt + " min: a finite RT horizon"
+                            + " needs a table sorted by retention time");
+                }
+                if (rt > highestRt) {
+                    highestRt = rt;
+                }
+            }
+            insert(batch);
+            onBatchScored.accept(batch);
+            read += batch.size();
+        }
+        return read;
+    }
+
+    /**
+     * Insert annotations in the data store and fire the rules for the new pairs.
+     *
+     * @param batch annotations to insert
+     * @return number of rules fired
+     */
+    public int insert(List<Annotation> batch) {
+        return scorer.insert(batch);
+    }
+
+    /**
+     * @return number of annotations inserted so far
+     */
+    public long getAnnotations() {
+        return scorer.getInsertedCount();
+    }
+
+    /**
+     * @return number of rules fired so far
+     */
+    public long getRulesFired() {
+        return scorer.getRulesFired();
+    }
+
+    /**
+     * Finalize the annotations still in the working memory and release the rule unit.
+     */
+    @Override
+    public void close() {
+        scorer.close();
+    }
+}
@@ -0,0 +1,73 @@
+package formula;
+
+/**
+ * Chemical elements found in lipid formulas and adducts, with the mass of their most abundant isotope and the
+ * natural abundance of their heavier isotopes
+ */
+public enum Element {
+    C("C", 12.0d, 0.9893, 0.0107),
+    H("H", 1.00782503207d, 0.999885, 0.000115),
+    N("N", 14.0030740048d, 0.99636, 0.00364),
+    O("O", 15.99491461956d, 0.99757, 0.00038, 0.00205),
+    P("P", 30.97376163d, 1),
+    S("S", 31.97207100d, 0.9499, 0.0075, 0.0425, 0, 0.0001),
+    NA("Na", 22.9897692809d, 1),
+    K("K", 38.96370668d, 0.932581, 0.000117, 0.067302),
+    CL("Cl", 34.96885268d, 0.7576, 0, 0.2424),
+    F("F", 18.99840322d, 1),
+    BR("Br", 78.9183371d, 0.5069, 0, 0.4931),
+    I("I", 126.904473d, 1),
+    // 6Li is lighter than the monoisotopic 7Li and does not contribute to the M+n peaks
+    LI("Li", 7.01600455d, 1);
+
+    private static final Element[] VALUES = values();
+
+    private final String symbol;
+    private final double monoisotopicMass;
+    private final double[] isotopeAbundances;
+
+    Element(String symbol, double monoisotopicMass, double... isotopeAbundances) {
+        this.symbol = symbol;
+        this.monoisotopicMass = monoisotopicMass;
+        this.isotopeAbundances = isotopeAbundances;
+    }
+
+    public String getSymbol() {
+        return symbol;
+    }
+
+    public double getMonoisotopicMass() {
+        return monoisotopicMass;
+    }
+
+    /**
+     * @return natural abundance of the monoisotopic isotope (position 0) and of the isotopes 1, 2... nominal mass
+     * units heavier
+     */
+    public double[] getIsotopeAbundances() {
+        return isotopeAbundances.clone();
+    }
+
+    int isotopeCount() {
+        return isotopeAbundances.length;
+    }
+
+    double isotopeAbundance(int shift) {
+        return isotopeAbundances[shift];
+    }
+
+    /**
+     * @param first  upper case letter of the symbol
+     * @param second lower case letter of the symbol, or 0 for one-letter symbols
+     * @return the element, or null if the symbol is unknown
+     */
+    static Element of(char first, char second) {
+        for (Element element : VALUES) {
+            String s = element.symbol;
+            if (s.charAt(0) == first && (s.length() == 1 ? second == 0 : s.charAt(1) == second)) {
+                return element;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,157 @@
+package formula;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Molecular formula such as "C57H104O6", stored as the count of every {@link Element} in a compact int vector.
+ * Formulas are sequences of element symbols, each followed by an optional count; groups in parentheses and charges
+ * are not supported.
+ */
+public final class Formula {
+
+    private static final Element[] ELEMENTS = Element.values();
+
+    /**
+     * Maximum number of formulas whose mass is kept by {@link #cachedMonoisotopicMass(String)}
+     */
+    public static final int CACHE_CAPACITY = 4096;
+
+    private static final Map<String, Double> MASS_CACHE = new ConcurrentHashMap<>();
+
+    private final int[] counts;
+    private final double monoisotopicMass;
+
+    private Formula(int[] counts, double monoisotopicMass) {
+        this.counts = counts;
+        this.monoisotopicMass = monoisotopicMass;
+    }
+
+    /**
+     * @param formula formula such as "C42H82NO8P"
+     * @return the parsed formula
+     * @throws IllegalArgumentException if the formula is null, empty or contains an unknown symbol
+     */
+    public static Formula parse(CharSequence formula) {
+        int[] counts = new int[ELEMENTS.length];
+        double mass = parse(formula, counts);
+        return new Formula(counts, mass);
+    }
+
+    /**
+     * Monoisotopic mass of a formula, computed without building the element counts.
+     *
+     * @param formula formula such as "C42H82NO8P"
+     * @return the sum of the monoisotopic masses of the atoms
+     * @throws IllegalArgumentException if the formula is null, empty or contains an unknown symbol
+     */
+    public static double monoisotopicMass(CharSequence formula) {
+        return parse(formula, null);
+    }
+
+    /**
+     * Same as {@link #monoisotopicMass(CharSequence)} through a cache shared by the whole application. The cache holds
+     * up to {@link #CACHE_CAPACITY} formulas and is emptied when it is full.
+     *
+     * @param formula formula such as "C42H82NO8P"
+     * @return the sum of the monoisotopic masses of the atoms
+     * @throws IllegalArgumentException if the formula is null, empty or contains an unknown symbol
+     */
+    public static double cachedMonoisotopicMass(String formula) {
+        if (formula == null) {
+            throw new IllegalArgumentException("No formula");
+        }
+        Double mass = MASS_CACHE.get(formula);
+        if (mass == null) {
+            mass = monoisotopicMass(formula);
+            if (MASS_CACHE.size() >= CACHE_CAPACITY) {
+                MASS_CACHE.clear();
+            }
+            MASS_CACHE.put(formula, mass);
+        }
+        return mass;
+    }
+
+    /**
+     * @param counts output for the element counts, indexed by {@link Element#ordinal()}; may be null
+     * @return the monoisotopic mass
+     */
+    private static double parse(CharSequence formula, int[] counts) {
+        if (formula == null) {
+            throw new IllegalArgumentException("No formula");
+        }
+        int length = formula.length();
+        if (length == 0) {
+            throw new IllegalArgumentException("Empty formula");
+        }
+        double mass = 0;
+        int i = 0;
+        while (i < length) {
+            char first = formula.charAt(i++);
+            char second = 0;
+            if (i < length && Character.isLowerCase(formula.charAt(i))) {
+                second = formula.charAt(i++);
+            }
+            Element element = Element.of(first, second);
+            if (element == null) {
+                throw new IllegalArgumentException("Unknown element at position " + (i - 1) + " of " + formula);
+            }
+            int count = 0;
+            boolean hasCount = false;
+            while (i < length && formula.charAt(i) >= '0' && formula.charAt(i) <= '9') {
+                count = count * 10 + (formula.charAt(i++) - '0');
+                hasCount = true;
+            }
+            if (!hasCount) {
+                count = 1;
+            }
+            mass += count * element.getMonoisotopicMass();
+            if (counts != null) {
+                counts[element.ordinal()] += count;
+            }
+        }
+        return mass;
+    }
+
+    /**
+     * @return number of atoms of the element
+     */
+    public int getCount(Element element) {
+        return counts[element.ordinal()];
+    }
+
+    public double getMonoisotopicMass() {
+        return monoisotopicMass;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof Formula)) return false;
+        return Arrays.equals(counts, ((Formula) o).counts);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(counts);
+    }
+
+    /**
+     * @return the formula with the elements in the order of {@link Element}, e.g. C42H82NO8P
+     */
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        for (Element element : ELEMENTS) {
+            int count = counts[element.ordinal()];
+            if (count > 0) {
+                builder.append(element.getSymbol());
+                if (count > 1) {
+                    builder.append(count);
+                }
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,119 @@
+package formula;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Theoretical isotope envelope of a formula: the abundance of the M+1, M+2... peaks relative to the monoisotopic
+ * peak, from the natural abundances of the isotopes of every {@link Element}. Isotopes of the same nominal mass are
+ * merged, which is enough at the resolution used to group peaks.
+ */
+public final class IsotopeEnvelope {
+
+    /**
+     * Mass difference between 13C and 12C, the spacing of the isotope peaks of organic molecules
+     */
+    public static final double ISOTOPE_SPACING = 1.0033548d;
+
+    /**
+     * Number of peaks of the envelopes, M+0 to M+3
+     */
+    public static final int PEAKS = 4;
+
+    private static final Element[] ELEMENTS = Element.values();
+    private static final Map<String, IsotopeEnvelope> CACHE = new ConcurrentHashMap<>();
+
+    private final double[] relativeAbundances;
+
+    private IsotopeEnvelope(double[] relativeAbundances) {
+        this.relativeAbundances = relativeAbundances;
+    }
+
+    /**
+     * @param formula parsed formula
+     * @return the envelope with {@link #PEAKS} peaks
+     */
+    public static IsotopeEnvelope of(Formula formula) {
+        double[] distribution = new double[PEAKS];
+        distribution[0] = 1;
+        double[] power = new double[PEAKS];
+        double[] buffer = new double[PEAKS];
+        for (Element element : ELEMENTS) {
+            int count = formula.getCount(element);
+            if (count == 0 || element.isotopeCount() == 1) {
+                continue;
+            }
+            // Distribution of count atoms by exponentiation by squaring, truncated to the envelope
+            double[] base = new double[PEAKS];
+            for (int shift = 0; shift < Math.min(PEAKS, element.isotopeCount()); shift++) {
+                base[shift] = element.isotopeAbundance(shift);
+            }
+            Arrays.fill(power, 0);
+            power[0] = 1;
+            for (int n = count; n > 0; n >>= 1) {
+                if ((n & 1) != 0) {
+                    convolve(power, base, buffer);
+                }
+                if (n > 1) {
+                    convolve(base, base, buffer);
+                }
+            }
+            convolve(distribution, power, buffer);
+        }
+        double[] relative = new double[PEAKS];
+        for (int shift = 0; shift < PEAKS; shift++) {
+            relative[shift] = distribution[shift] / distribution[0];
+        }
+        return new IsotopeEnvelope(relative);
+    }
+
+    /**
+     * Envelope of a formula through a cache shared by the whole application. The cache holds up to
+     * {@link Formula#CACHE_CAPACITY} formulas and is emptied when it is full.
+     *
+     * @param formula formula such as "C42H82NO8P"
+     * @return the envelope with {@link #PEAKS} peaks
+     * @throws IllegalArgumentException if the formula cannot be parsed
+     */
+    public static IsotopeEnvelope cached(String formula) {
+        IsotopeEnvelope envelope = CACHE.get(formula);
+        if (envelope == null) {
+            envelope = of(Formula.parse(formula));
+            if (CACHE.size() >= Formula.CACHE_CAPACITY) {
+                CACHE.clear();
+            }
+            CACHE.put(formula, envelope);
+        }
+        return envelope;
+    }
+
+    /**
+     * target = target * other, truncated to the envelope
+     */
+    private static void convolve(double[] target, double[] other, double[] buffer) {
+        for (int k = 0; k < PEAKS; k++) {
+            double sum = 0;
+            for (int i = 0; i <= k; i++) {
+                sum += target[i] * other[k - i];
+            }
+            buffer[k] = sum;
+        }
+        System.arraycopy(buffer, 0, target, 0, PEAKS);
+    }
+
+    /**
+     * @param shift nominal mass shift from the monoisotopic peak, from 0 to {@link #PEAKS} (exclusive)
+     * @return abundance of the peak relative to the monoisotopic one
+     */
+    public double relativeAbundance(int shift) {
+        return relativeAbundances[shift];
+    }
+
+    /**
+     * @return abundances relative to the monoisotopic peak, which is 1
+     */
+    public double[] toArray() {
+        return relativeAbundances.clone();
+    }
+}
@@ -0,0 +1,266 @@
+package lipid;
+
+import adduct.Adduct;
+import adduct.AdductDescriptor;
+import adduct.AdductLibrary;
+import adduct.AdductList;
+import adduct.NeutralMassCache;
+import metrics.ScoringMetrics;
+
+import java.nio.DoubleBuffer;
+import java.util.Collection;
+
+/**
+ * Detects the adduct of a reference peak from the peaks grouped with it. A candidate adduct is accepted when the
+ * neutral mass of the reference peak under that adduct matches, within the ppm tolerance, the neutral mass of any
+ * grouped peak under any other adduct of the same ionisation mode.
+ * <p>
+ * Since the conversion between m/z and neutral mass is strictly increasing for every adduct, the peaks sorted by
+ * m/z are also sorted by their neutral mass under any adduct. The ppm window around each reference neutral mass is
+ * therefore mapped back to an m/z window of the other adduct and answered with a binary search over the sorted
+ * peaks, so the cost is O(P·log P + A²·log P) instead of O(A²·P) and no per-adduct arrays are built.
+ * <p>
+ * A detector may share a {@link NeutralMassCache} with other detectors of the run, so that the neutral masses of
+ * peaks grouped with several references are computed once. The batch neutral masses of {@link #detectAll} are always
+ * computed.
+ */
+public class AdductDetector {
+
+    public static final double DEFAULT_PPM_TOLERANCE = 10;
+
+    /**
+     * References whose neutral masses are computed together by {@link #detectAll}, small enough to stay in cache
+     */
+    private static final int BLOCK_SIZE = 1024;
+
+    /**
+     * Grouped peaks of a buffer copied by {@link #detect(double, DoubleBuffer, int, int)}, per thread since the
+     * detectors of {@link #forMode} are shared
+     */
+    private static final ThreadLocal<double[]> PEAK_MZ_COPY = ThreadLocal.withInitial(() -> new double[64]);
+
+    private static final AdductDetector POSITIVE = new AdductDetector(IoniationMode.POSITIVE, DEFAULT_PPM_TOLERANCE);
+    private static final AdductDetector NEGATIVE = new AdductDetector(IoniationMode.NEGATIVE, DEFAULT_PPM_TOLERANCE);
+
+    private final AdductLibrary library;
+    private final AdductDescriptor[] adducts;
+    private final double ppmTolerance;
+    private final double lowerWindowFactor;
+    private final double upperWindowFactor;
+    private final NeutralMassCache cache;
+
+    /**
+     * @param ionMode      ionisation mode whose adducts are considered
+     * @param ppmTolerance tolerance, the rounded ppm error must be strictly lower than it
+     */
+    public AdductDetector(IoniationMode ionMode, double ppmTolerance) {
+        this(ionMode, ppmTolerance, null);
+    }
+
+    /**
+     * @param ionMode      ionisation mode whose adducts are considered
+     * @param ppmTolerance tolerance, the rounded ppm error must be strictly lower than it
+     * @param cache        cache of the neutral masses of the reference and grouped peaks, or null to compute them
+     */
+    public AdductDetector(IoniationMode ionMode, double ppmTolerance, NeutralMassCache cache) {
+        this(AdductList.getLibrary(), ionMode, ppmTolerance, cache);
+    }
+
+    /**
+     * Detector of the adducts of a run-specific library. The ids returned by {@link #detectAll} are ids of that
+     * library.
+     *
+     * @param library      adducts of the run
+     * @param ionMode      ionisation mode whose adducts are considered
+     * @param ppmTolerance tolerance, the rounded ppm error must be strictly lower than it
+     * @param cache        cache of the neutral masses, keyed by adduct id, so not shared with detectors of other
+     *                     libraries; or null to compute them
+     */
+    public AdductDetector(AdductLibrary library, IoniationMode ionMode, double ppmTolerance, NeutralMassCache cache) {
+        this.library = library;
+        this.adducts = library.getDescriptors(ionMode);
+        this.ppmTolerance = ppmTolerance;
+        this.cache = cache;
+        // Search window slightly wider than the tolerance; every mass inside it is checked with the exact ppm rule
+        double window = (ppmTolerance + 1) / 1000000d;
+        this.lowerWindowFactor = 1d / (1d + window);
+        this.upperWindowFactor = window < 1d ? 1d / (1d - window) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * @param ionMode ionisation mode
+     * @return the shared detector of the mode with the default tolerance
+     */
+    public static AdductDetector forMode(IoniationMode ionMode) {
+        return ionMode == IoniationMode.POSITIVE ? POSITIVE : NEGATIVE;
+    }
+
+    /**
+     * @return the library whose ids are returned by {@link #detectAll}
+     */
+    public AdductLibrary getLibrary() {
+        return library;
+    }
+
+    /**
+     * @return the cache of neutral masses, or null if the masses are always computed
+     */
+    public NeutralMassCache getCache() {
+        return cache;
+    }
+
+    /**
+     * @param referenceMz    mz of the reference peak
+     * @param groupedSignals peaks grouped with the reference peak
+     * @return the detected adduct, or null if no adduct explains the grouped peaks
+     */
+    public AdductDescriptor detect(double referenceMz, Collection<Peak> groupedSignals) {
+        return detect(referenceMz, PeakList.of(groupedSignals));
+    }
+
+    /**
+     * @param referenceMz    mz of the reference peak
+     * @param groupedSignals peaks grouped with the reference peak
+     * @return the detected adduct, or null if no adduct explains the grouped peaks
+     */
+    public AdductDescriptor detect(double referenceMz, PeakList groupedSignals) {
+        double[] peakMz = groupedSignals.mzArray();
+        return detect(referenceMz, peakMz, 0, peakMz.length);
+    }
+
+    /**
+     * @param referenceMz mz of the reference peak
+     * @param sortedPeakMz mz of the grouped peaks, sorted in ascending order between from and to
+     * @param from        first index (inclusive) of the grouped peaks
+     * @param to          last index (exclusive) of the grouped peaks
+     * @return the detected adduct, or null if no adduct explains the grouped peaks
+     */
+    public AdductDescriptor detect(double referenceMz, double[] sortedPeakMz, int from, int to) {
+        if (to <= from || adducts.length < 2) {
+            return null;
+        }
+        int detected = detectIndex(referenceMz, null, 0, 0, sortedPeakMz, from, to);
+        return detected < 0 ? null : adducts[detected];
+    }
+
+    /**
+     * Detect the adducts of a batch of reference peaks, e.g. all the features of a run stored as columns. The neutral
+     * masses of the references are first computed for every adduct in blocks, in loops over primitive arrays that
+     * the JIT compiles to SIMD code, and the grouped peaks of every reference are then searched as in
+     * {@link #detect(double, double[], int, int)}. The result is the same as calling it for each reference.
+     *
+     * @param referenceMz   mz of the reference peaks
+     * @param peakOffsets   the grouped peaks of reference i are at [peakOffsets[i], peakOffsets[i + 1])
+     * @param sortedPeakMz  mz of the grouped peaks, sorted in ascending order within each reference
+     * @param from          first reference (inclusive)
+     * @param to            last reference (exclusive)
+     * @param adductIds     output, {@link AdductDescriptor#getId()} of the adduct detected for reference i at
+     *                      position i, or -1 if none
+     */
+    public void detectAll(double[] referenceMz, int[] peakOffsets, double[] sortedPeakMz, int from, int to,
+                          int[] adductIds) {
+        int a = adducts.length;
+        double[] referenceMasses = new double[a * Math.min(BLOCK_SIZE, Math.max(to - from, 0))];
+        for (int start = from; start < to; start += BLOCK_SIZE) {
+            int n = Math.min(BLOCK_SIZE, to - start);
+            // One column of neutral masses per adduct
+            for (int c = 0; c < a; c++) {
+                double charge = adducts[c].getCharge();
+                double massDelta = adducts[c].getMassDelta();
+                double multimer = adducts[c].getMultimer();
+                int column = c * n;
+                for (int i = 0; i < n; i++) {
+                    referenceMasses[column + i] = ((referenceMz[start + i] * charge) + massDelta) / multimer;
+                }
+            }
+            for (int i = 0; i < n; i++) {
+                int peaksFrom = peakOffsets[start + i];
+                int peaksTo = peakOffsets[start + i + 1];
+                int detected = peaksTo <= peaksFrom || a < 2
+                        ? -1
+                        : detectIndex(referenceMz[start + i], referenceMasses, i, n, sortedPeakMz, peaksFrom, peaksTo);
+                adductIds[start + i] = detected < 0 ? -1 : adducts[detected].getId();
+            }
+        }
+    }
+
+    /**
+     * @param referenceMz     mz of the reference peak
+     * @param referenceMasses neutral mass of the reference under candidate c at offset + c * stride, or null to
+     *                        compute them from the mz
+     * @return position of the detected adduct in {@link #adducts}, or -1
+     */
+    private int detectIndex(double referenceMz, double[] referenceMasses, int offset, int stride,
+                            double[] sortedPeakMz, int from, int to) {
+        int comparisons = 0;
+        for (int c = 0; c < adducts.length; c++) {
+            double referenceMonoisotopicMass = referenceMasses == null
+                    ? Adduct.getMonoisotopicMassFromMZ(referenceMz, adducts[c], cache)
+                    : referenceMasses[offset + c * stride];
+            double lower = referenceMonoisotopicMass * lowerWindowFactor;
+            double upper = referenceMonoisotopicMass * upperWindowFactor;
+
+            for (int o = 0; o < adducts.length; o++) {
+                if (o == c) continue;
+
+                AdductDescriptor otherAdduct = adducts[o];
+                double upperMz = otherAdduct.toMz(upper);
+                int i = lowerBound(sortedPeakMz, from, to, otherAdduct.toMz(lower));
+                for (; i < to && sortedPeakMz[i] <= upperMz; i++) {
+                    comparisons++;
+                    double otherPeakMonoisotopicMass =
+                            Adduct.getMonoisotopicMassFromMZ(sortedPeakMz[i], otherAdduct, cache);
+                    double ppm = Adduct.calculatePPMIncrement(referenceMonoisotopicMass, otherPeakMonoisotopicMass);
+                    if (ppm < ppmTolerance) {
+                        ScoringMetrics.recordAdductDetection(comparisons, true);
+                        return c;
+                    }
+                }
+            }
+        }
+        ScoringMetrics.recordAdductDetection(comparisons, false);
+        return -1;
+    }
+
+    /**
+     * Same as {@link #detect(double, double[], int, int)} over a buffer, e.g. a column of a memory-mapped file. The
+     * grouped peaks are copied with one bulk get into an array reused by the calling thread, so the position of the
+     * buffer is not changed and the peaks are searched by the same code as arrays.
+     *
+     * @param referenceMz  mz of the reference peak
+     * @param sortedPeakMz mz of the grouped peaks, sorted in ascending order between from and to
+     * @param from         first index (inclusive) of the grouped peaks
+     * @param to           last index (exclusive) of the grouped peaks
+     * @return the detected adduct, or null if no adduct explains the grouped peaks
+     */
+    public AdductDescriptor detect(double referenceMz, DoubleBuffer sortedPeakMz, int from, int to) {
+        if (to <= from || adducts.length < 2) {
+            return null;
+        }
+        int peaks = to - from;
+        double[] copy = PEAK_MZ_COPY.get();
+        if (copy.length < peaks) {
+            copy = new double[Math.max(peaks, copy.length * 2)];
+            PEAK_MZ_COPY.set(copy);
+        }
+        sortedPeakMz.get(from, copy, 0, peaks);
+        return detect(referenceMz, copy, 0, peaks);
+    }
+
+    /**
+     * @return index of the first value in [from, to) that is greater than or equal to key, or to if there is none
+     */
+    private static int lowerBound(double[] values, int from, int to, double key) {
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (values[mid] < key) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+}
@@ -1,9 +1,10 @@
 package lipid;
 
-import java.util.*;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
-import adduct.Adduct;
-import adduct.AdductList;
+import adduct.AdductDescriptor;
 
 /**
  * Class to represent the annotation over a lipid
@@ -14,11 +15,17 @@ public class Annotation {
     private final double mz;
     private final double intensity;
     private final double rtMin;
+    /**
+     * Detected or explicitly set adduct, valid once adductResolved is true
+     */
     private String adduct;
-    private final Set<Peak> groupedSignals;
-    private int score;
-    private int totalScoresApplied;
-    private static final double PPM_TOLERANCE = 10;
+    private volatile boolean adductResolved;
+    private final PeakList groupedSignals;
+    /**
+     * Score in the high 32 bits and number of scores applied in the low 32 bits, so that both are updated by a single
+     * atomic operation and can be read consistently from any thread
+     */
+    private final AtomicLong scoreState = new AtomicLong();
     private final IoniationMode ionMode;
 
     /**
@@ -28,7 +35,7 @@ public class Annotation {
      * @param retentionTime
      */
     public Annotation(Lipid lipid, double mz, double intensity, double retentionTime, IoniationMode ionMode) {
-        this(lipid, mz, intensity, retentionTime, Collections.emptySet(), ionMode);
+        this(lipid, mz, intensity, retentionTime, PeakList.EMPTY, ionMode);
     }
 
     /**
@@ -39,21 +46,71 @@ public class Annotation {
      * @param groupedSignals
      */
     public Annotation(Lipid lipid, double mz, double intensity, double retentionTime, Set<Peak> groupedSignals, IoniationMode ionMode) {
+        this(lipid, mz, intensity, retentionTime, PeakList.of(groupedSignals), ionMode);
+    }
+
+    /**
+     * The adduct is detected from the grouped signals the first time it is requested.
+     *
+     * @param lipid
+     * @param mz
+     * @param intensity
+     * @param retentionTime
+     * @param groupedSignals peaks grouped with the annotated one, shared without copying
+     */
+    public Annotation(Lipid lipid, double mz, double intensity, double retentionTime, PeakList groupedSignals, IoniationMode ionMode) {
         this.lipid = lipid;
         this.mz = mz;
         this.rtMin = retentionTime;
         this.intensity = intensity;
-        this.groupedSignals = new TreeSet<>(groupedSignals);
+        this.groupedSignals = groupedSignals;
         this.ionMode = ionMode;
-        detectAdduct();
-        this.score = 0;
-        this.totalScoresApplied = 0;
+    }
+
+    /**
+     * Annotation with a known adduct, which is never detected.
+     *
+     * @param lipid
+     * @param mz
+     * @param intensity
+     * @param retentionTime
+     * @param groupedSignals peaks grouped with the annotated one, shared without copying
+     * @param adduct         adduct name, or null if unknown
+     */
+    public Annotation(Lipid lipid, double mz, double intensity, double retentionTime, PeakList groupedSignals, IoniationMode ionMode, String adduct) {
+        this(lipid, mz, intensity, retentionTime, groupedSignals, ionMode);
+        this.adduct = adduct;
+        this.adductResolved = true;
     }
 
     public Lipid getLipid() {
         return lipid;
     }
 
+    /*
+     * Properties of the lipid read directly on the annotation, so that the rules join on properties of the pattern
+     * itself and the equality constraints are hash indexed.
+     */
+
+    public LipidType getLipidType() {
+        return lipid.getLipidType();
+    }
+
+    public int getCarbonCount() {
+        return lipid.getCarbonCount();
+    }
+
+    public int getDoubleBondsCount() {
+        return lipid.getDoubleBondsCount();
+    }
+
+    /**
+     * @return rank of the lipid type in the elution order, see {@link Lipid#lipidTypeRank(LipidType)}
+     */
+    public int getLipidTypeRank() {
+        return Lipid.lipidTypeRank(lipid.getLipidType());
+    }
+
     public double getMz() {
         return mz;
     }
@@ -62,37 +119,109 @@ public class Annotation {
         return rtMin;
     }
 
+    /**
+     * @return the adduct, detected on the first call unless it was set explicitly
+     */
     public String getAdduct() {
+        if (!adductResolved) {
+            resolveAdduct();
+        }
         return adduct;
     }
 
-    public void setAdduct(String adduct) {
+    /**
+     * Set the adduct, which cancels its detection
+     *
+     * @param adduct adduct name, or null if unknown
+     */
+    public synchronized void setAdduct(String adduct) {
         this.adduct = adduct;
+        this.adductResolved = true;
+    }
+
+    private synchronized void resolveAdduct() {
+        if (!adductResolved) {
+            detectAdduct();
+        }
     }
 
     public double getIntensity() {
         return intensity;
     }
 
+    /**
+     * @return unmodifiable view of the grouped peaks, sorted by mz; prefer {@link #getPeaks()} in hot code
+     */
     public Set<Peak> getGroupedSignals() {
-        return Collections.unmodifiableSet(groupedSignals);
+        return groupedSignals.asSet();
+    }
+
+    public PeakList getPeaks() {
+        return groupedSignals;
     }
 
     public int getScore() {
-        return score;
+        return scoreOf(scoreState.get());
     }
 
+    /**
+     * Replace the score, keeping the number of scores applied
+     *
+     * @param score new score
+     */
     public void setScore(int score) {
-        this.score = score;
+        long state;
+        do {
+            state = scoreState.get();
+        } while (!scoreState.compareAndSet(state, pack(score, scoresAppliedOf(state))));
     }
 
+    /**
+     * Add a score. Safe to call from several threads at the same time.
+     *
+     * @param delta score to add
+     */
     public void addScore(int delta) {
-        this.score += delta;
-        this.totalScoresApplied++;
+        addScores(delta, 1);
+    }
+
+    /**
+     * Apply several scores at once, as if {@link #addScore(int)} had been called scoresApplied times.
+     *
+     * @param delta          sum of the scores
+     * @param scoresApplied  number of scores
+     */
+    public void addScores(int delta, int scoresApplied) {
+        scoreState.getAndAdd(pack(delta, scoresApplied));
+    }
+
+    public int getTotalScoresApplied() {
+        return scoresAppliedOf(scoreState.get());
     }
 
     public double getNormalizedScore() {
-        return (double) this.score / this.totalScoresApplied;
+        long state = scoreState.get();
+        return (double) scoreOf(state) / scoresAppliedOf(state);
+    }
+
+    /**
+     * @return score and number of scores applied read at the same instant
+     */
+    public ScoreSnapshot getScoreSnapshot() {
+        long state = scoreState.get();
+        return new ScoreSnapshot(scoreOf(state), scoresAppliedOf(state));
+    }
+
+    private static long pack(int score, int scoresApplied) {
+        return ((long) score << 32) + (scoresApplied & 0xFFFFFFFFL);
+    }
+
+    private static int scoreOf(long state) {
+        return (int) (state >> 32);
+    }
+
+    private static int scoresAppliedOf(long state) {
+        return (int) state;
     }
 
     @Override
@@ -113,52 +242,20 @@ public class Annotation {
     @Override
     public String toString() {
         return String.format("Annotation(%s, mz=%.4f, RT=%.2f, adduct=%s, intensity=%.1f, score=%d)",
-                lipid.getName(), mz, rtMin, adduct, intensity, score);
+                lipid.getName(), mz, rtMin, getAdduct(), intensity, getScore());
     }
 
 
     /**
-     * Method to detect an adduct based on a reference peak
+     * Method to detect an adduct based on a reference peak. The adduct is kept if none is detected.
      */
-    public void detectAdduct() {
-        double referenceMz = this.mz;
-
-        if (this.ionMode == IoniationMode.POSITIVE) {
-            for (String candidateAdduct : AdductList.MAPMZPOSITIVEADDUCTS.keySet()) {
-                Double referenceMonoisotopicMass = Adduct.getMonoisotopicMassFromMZ(referenceMz, candidateAdduct);
-
-                for (String otherAdduct : AdductList.MAPMZPOSITIVEADDUCTS.keySet()) {
-                    if (otherAdduct.equals(candidateAdduct)) continue;
-
-                    for (Peak peak : groupedSignals) {
-                        Double otherPeakMonoIsotopicMass = Adduct.getMonoisotopicMassFromMZ(peak.getMz(), otherAdduct);
-                        int error = Adduct.calculatePPMIncrement(referenceMonoisotopicMass, otherPeakMonoIsotopicMass);
-
-                        if (error < PPM_TOLERANCE) {
-                            this.adduct = candidateAdduct;
-                            return;
-                        }
-                    }
-                }
-            }
-        } else if (this.ionMode == IoniationMode.NEGATIVE) {
-            for (String candidateAdduct : AdductList.MAPMZNEGATIVEADDUCTS.keySet()) {
-                Double referenceMonoisotopicMass = Adduct.getMonoisotopicMassFromMZ(referenceMz, candidateAdduct);
-
-                for (String otherAdduct : AdductList.MAPMZNEGATIVEADDUCTS.keySet()) {
-                    if (otherAdduct.equals(candidateAdduct)) continue;
-
-                    for (Peak peak : groupedSignals) {
-                        Double otherPeakMonoIsotopicMass = Adduct.getMonoisotopicMassFromMZ(peak.getMz(), otherAdduct);
-                        int error = Adduct.calculatePPMIncrement(referenceMonoisotopicMass, otherPeakMonoIsotopicMass);
-
-                        if (error < PPM_TOLERANCE) {
-                            this.adduct = candidateAdduct;
-                            return;
-                        }
-                    }
-                }
+    public synchronized void detectAdduct() {
+        if (this.ionMode != null) {
+            AdductDescriptor detected = AdductDetector.forMode(this.ionMode).detect(this.mz, groupedSignals);
+            if (detected != null) {
+                this.adduct = detected.getName();
             }
         }
+        this.adductResolved = true;
     }
 }
\ No newline at end of file
@@ -0,0 +1,100 @@
+package lipid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Splits annotations into partitions that can be scored independently. The elution order rules only compare
+ * annotations that share (lipid type, double bonds), (lipid type, carbons) or (carbons, double bonds), so the
+ * connected components of these relations never have a scored pair in common.
+ */
+public class AnnotationPartitioner {
+
+    private AnnotationPartitioner() {
+    }
+
+    /**
+     * @param annotations   annotations to split
+     * @param maxPartitions maximum number of partitions
+     * @return the partitions, balanced by number of annotations; the order of the annotations is kept inside each
+     * partition and the result only depends on the input order
+     */
+    public static List<List<Annotation>> partition(Collection<Annotation> annotations, int maxPartitions) {
+        if (maxPartitions < 1) {
+            throw new IllegalArgumentException("maxPartitions must be positive: " + maxPartitions);
+        }
+        Annotation[] array = annotations.toArray(new Annotation[0]);
+        int n = array.length;
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+
+        Map<Long, Integer> byTypeAndDoubleBonds = new HashMap<>();
+        Map<Long, Integer> byTypeAndCarbons = new HashMap<>();
+        Map<Long, Integer> byCarbonsAndDoubleBonds = new HashMap<>();
+        for (int i = 0; i < n; i++) {
+            Lipid lipid = array[i].getLipid();
+            int type = lipid.getLipidType().ordinal();
+            union(parent, i, byTypeAndDoubleBonds.putIfAbsent(key(type, lipid.getDoubleBondsCount()), i));
+            union(parent, i, byTypeAndCarbons.putIfAbsent(key(type, lipid.getCarbonCount()), i));
+            union(parent, i, byCarbonsAndDoubleBonds.putIfAbsent(key(lipid.getCarbonCount(), lipid.getDoubleBondsCount()), i));
+        }
+
+        // Components in order of their first annotation
+        Map<Integer, List<Annotation>> components = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            components.computeIfAbsent(find(parent, i), k -> new ArrayList<>()).add(array[i]);
+        }
+
+        // Largest components first, each one into the currently smallest partition
+        List<List<Annotation>> sortedComponents = new ArrayList<>(components.values());
+        sortedComponents.sort((a, b) -> Integer.compare(b.size(), a.size()));
+        int partitionCount = Math.min(maxPartitions, sortedComponents.size());
+        List<List<Annotation>> partitions = new ArrayList<>(partitionCount);
+        for (int p = 0; p < partitionCount; p++) {
+            partitions.add(new ArrayList<>());
+        }
+        for (List<Annotation> component : sortedComponents) {
+            List<Annotation> smallest = partitions.get(0);
+            for (List<Annotation> partition : partitions) {
+                if (partition.size() < smallest.size()) {
+                    smallest = partition;
+                }
+            }
+            smallest.addAll(component);
+        }
+        return partitions;
+    }
+
+    private static long key(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    /**
+     * @param b index joined with a, nothing is done if null
+     */
+    private static void union(int[] parent, int a, Integer b) {
+        if (b == null) {
+            return;
+        }
+        int rootA = find(parent, a);
+        int rootB = find(parent, b);
+        if (rootA != rootB) {
+            // The smaller index stays as root so that the result does not depend on hashing
+            parent[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+        }
+    }
+}
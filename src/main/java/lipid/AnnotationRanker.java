@@ -0,0 +1,312 @@
+package lipid;
+
+import adduct.Adduct;
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Ranks the candidate annotations of every feature once they are scored. The annotations of a feature are those with
+ * the same mz and retention time, and they are ranked by a combination of:
+ * <ul>
+ *     <li>the normalized score given by the rules, 0 if no rule scored the annotation;</li>
+ *     <li>the ppm error between the mz of the feature and the mz of the lipid with the adduct of the annotation,
+ *     from 1 at 0 ppm down to 0 at the ppm tolerance and negative beyond it. An unknown ppm error (unknown adduct or
+ *     formula) counts as an error of {@value #UNKNOWN_PPM_TOLERANCES} times the tolerance, so a candidate that could
+ *     not be checked does not outrank one measured just outside the tolerance;</li>
+ *     <li>the plausibility of the adduct, from 1 for [M+H]+ and [M-H]- down to 0 for an unknown adduct.</li>
+ * </ul>
+ * Only the best K candidates of a feature are kept, in a min-heap whose worst candidate is replaced by a better one,
+ * so the memory grows with the number of features and not with the number of candidates. Candidates with the same
+ * combined score are ranked in the order they were added.
+ * <p>
+ * The ranker is a consumer of annotations, so it can be the finalized listener of an {@link IncrementalLipidScorer}.
+ * Instances are not thread-safe.
+ */
+public class AnnotationRanker implements Consumer<Annotation> {
+
+    public static final int DEFAULT_TOP_K = 3;
+    public static final double DEFAULT_SCORE_WEIGHT = 1;
+    public static final double DEFAULT_PPM_WEIGHT = 0.5;
+    public static final double DEFAULT_ADDUCT_WEIGHT = 0.5;
+    /**
+     * Multiple of the ppm tolerance used as the error of a candidate whose ppm error is unknown
+     */
+    public static final int UNKNOWN_PPM_TOLERANCES = 2;
+
+    private static final double[] ADDUCT_PLAUSIBILITY = new double[AdductList.size()];
+
+    static {
+        for (int id = 0; id < ADDUCT_PLAUSIBILITY.length; id++) {
+            AdductDescriptor adduct = AdductList.getDescriptor(id);
+            // Multimers and multiply charged ions are only seen next to the main ion of the compound
+            ADDUCT_PLAUSIBILITY[id] = adduct.getCharge() > 1 || adduct.getMultimer() > 1 ? 0.4 : 0.6;
+        }
+        setPlausibility("[M+H]+", 1);
+        setPlausibility("[M-H]-", 1);
+        setPlausibility("[M+Na]+", 0.8);
+        setPlausibility("[M+NH4]+", 0.8);
+        setPlausibility("[M+HCOOH-H]−", 0.8);
+        setPlausibility("[M+Cl]−", 0.7);
+    }
+
+    private static void setPlausibility(String adductName, double plausibility) {
+        AdductDescriptor adduct = AdductList.getDescriptor(adductName);
+        if (adduct != null) {
+            ADDUCT_PLAUSIBILITY[adduct.getId()] = plausibility;
+        }
+    }
+
+    private static final Comparator<Candidate> WORST_FIRST = Comparator
+            .comparingDouble((Candidate c) -> c.rankScore)
+            .thenComparing(Comparator.comparingLong((Candidate c) -> c.sequence).reversed());
+
+    private final int topK;
+    private final double scoreWeight;
+    private final double ppmWeight;
+    private final double adductWeight;
+    private final double ppmTolerance;
+    private final Map<FeatureKey, PriorityQueue<Candidate>> features = new LinkedHashMap<>();
+    private long added;
+
+    /**
+     * Ranker keeping the best {@value #DEFAULT_TOP_K} candidates of every feature with the default weights
+     */
+    public AnnotationRanker() {
+        this(DEFAULT_TOP_K);
+    }
+
+    /**
+     * @param topK number of candidates kept for every feature
+     */
+    public AnnotationRanker(int topK) {
+        this(topK, DEFAULT_SCORE_WEIGHT, DEFAULT_PPM_WEIGHT, DEFAULT_ADDUCT_WEIGHT,
+                AdductDetector.DEFAULT_PPM_TOLERANCE);
+    }
+
+    /**
+     * @param topK         number of candidates kept for every feature
+     * @param scoreWeight  weight of the normalized score
+     * @param ppmWeight    weight of the ppm error
+     * @param adductWeight weight of the plausibility of the adduct
+     * @param ppmTolerance ppm error at which the ppm term of a candidate is 0
+     */
+    public AnnotationRanker(int topK, double scoreWeight, double ppmWeight, double adductWeight, double ppmTolerance) {
+        if (topK < 1) {
+            throw new IllegalArgumentException("topK must be positive: " + topK);
+        }
+        if (!(ppmTolerance > 0)) {
+            throw new IllegalArgumentException("ppmTolerance must be positive: " + ppmTolerance);
+        }
+        this.topK = topK;
+        this.scoreWeight = scoreWeight;
+        this.ppmWeight = ppmWeight;
+        this.adductWeight = adductWeight;
+        this.ppmTolerance = ppmTolerance;
+    }
+
+    /**
+     * Rank the annotations of a sample.
+     *
+     * @param annotations scored annotations
+     * @param topK        number of candidates kept for every feature
+     * @return the best candidates of every feature, see {@link #getRankings()}
+     */
+    public static List<List<RankedAnnotation>> rank(Collection<Annotation> annotations, int topK) {
+        AnnotationRanker ranker = new AnnotationRanker(topK);
+        ranker.addAll(annotations);
+        return ranker.getRankings();
+    }
+
+    /**
+     * @param adductName adduct name
+     * @return prior plausibility of the adduct between 0 and 1, 0 if it is unknown
+     */
+    public static double adductPlausibility(String adductName) {
+        AdductDescriptor adduct = adductName == null ? null : AdductList.getDescriptor(adductName);
+        return adduct == null ? 0 : ADDUCT_PLAUSIBILITY[adduct.getId()];
+    }
+
+    /**
+     * @param annotation scored annotation
+     * @return ppm between the mz of the annotation and the mz of its lipid with its adduct, -1 if unknown
+     */
+    public static int ppmError(Annotation annotation) {
+        String adductName = annotation.getAdduct();
+        AdductDescriptor adduct = adductName == null ? null : AdductList.getDescriptor(adductName);
+        if (adduct == null) {
+            return -1;
+        }
+        double mass;
+        try {
+            mass = annotation.getLipid().getMonoisotopicMass();
+        } catch (IllegalArgumentException e) {
+            return -1;
+        }
+        return Adduct.calculatePPMIncrement(annotation.getMz(), adduct.toMz(mass));
+    }
+
+    /**
+     * @param annotation scored annotation
+     * @return the combined score the candidates are ranked by
+     */
+    public double rankScore(Annotation annotation) {
+        return rankScore(annotation, ppmError(annotation));
+    }
+
+    private double rankScore(Annotation annotation, int ppmError) {
+        ScoreSnapshot score = annotation.getScoreSnapshot();
+        double normalized = score.getTotalScoresApplied() == 0 ? 0 : score.getNormalizedScore();
+        double ppmTerm = ppmError < 0 ? 1 - UNKNOWN_PPM_TOLERANCES : 1 - ppmError / ppmTolerance;
+        return scoreWeight * normalized + ppmWeight * ppmTerm
+                + adductWeight * adductPlausibility(annotation.getAdduct());
+    }
+
+    /**
+     * Add a candidate to its feature, dropping the worst candidate of the feature if it has more than K.
+     *
+     * @param annotation scored annotation
+     */
+    public void add(Annotation annotation) {
+        int ppmError = ppmError(annotation);
+        Candidate candidate = new Candidate(annotation, rankScore(annotation, ppmError), ppmError, added++);
+        PriorityQueue<Candidate> heap = features.computeIfAbsent(
+                new FeatureKey(annotation.getMz(), annotation.getRtMin()), key -> new PriorityQueue<>(topK, WORST_FIRST));
+        if (heap.size() < topK) {
+            heap.add(candidate);
+        } else if (WORST_FIRST.compare(candidate, heap.peek()) > 0) {
+            heap.poll();
+            heap.add(candidate);
+        }
+    }
+
+    public void addAll(Collection<Annotation> annotations) {
+        for (Annotation annotation : annotations) {
+            add(annotation);
+        }
+    }
+
+    @Override
+    public void accept(Annotation annotation) {
+        add(annotation);
+    }
+
+    /**
+     * @param mz            mz of the feature
+     * @param retentionTime retention time of the feature
+     * @return the best candidates of the feature, best first, empty if the feature has no candidate
+     */
+    public List<RankedAnnotation> getRanking(double mz, double retentionTime) {
+        PriorityQueue<Candidate> heap = features.get(new FeatureKey(mz, retentionTime));
+        return heap == null ? Collections.emptyList() : ranking(heap);
+    }
+
+    /**
+     * @return the best candidates of every feature, best first, with the features in the order of their first
+     * candidate
+     */
+    public List<List<RankedAnnotation>> getRankings() {
+        List<List<RankedAnnotation>> rankings = new ArrayList<>(features.size());
+        for (PriorityQueue<Candidate> heap : features.values()) {
+            rankings.add(ranking(heap));
+        }
+        return rankings;
+    }
+
+    /**
+     * @return the best candidate of every feature, in the order of their first candidate
+     */
+    public List<RankedAnnotation> getBest() {
+        List<RankedAnnotation> best = new ArrayList<>(features.size());
+        for (PriorityQueue<Candidate> heap : features.values()) {
+            best.add(ranking(heap).get(0));
+        }
+        return best;
+    }
+
+    private static List<RankedAnnotation> ranking(PriorityQueue<Candidate> heap) {
+        Candidate[] candidates = heap.toArray(new Candidate[0]);
+        Arrays.sort(candidates, WORST_FIRST.reversed());
+        List<RankedAnnotation> ranking = new ArrayList<>(candidates.length);
+        for (int i = 0; i < candidates.length; i++) {
+            Candidate candidate = candidates[i];
+            ranking.add(new RankedAnnotation(candidate.annotation, i + 1, candidate.rankScore, candidate.ppmError));
+        }
+        return ranking;
+    }
+
+    public int getTopK() {
+        return topK;
+    }
+
+    public int getFeatureCount() {
+        return features.size();
+    }
+
+    /**
+     * @return number of candidates added, kept or not
+     */
+    public long getAddedCount() {
+        return added;
+    }
+
+    /**
+     * Forget the features ranked so far.
+     */
+    public void clear() {
+        features.clear();
+        added = 0;
+    }
+
+    private static final class Candidate {
+        final Annotation annotation;
+        final double rankScore;
+        final int ppmError;
+        final long sequence;
+
+        Candidate(Annotation annotation, double rankScore, int ppmError, long sequence) {
+            this.annotation = annotation;
+            this.rankScore = rankScore;
+            this.ppmError = ppmError;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Feature of an annotation: its mz and retention time, compared exactly since the candidates of a feature are
+     * built from the same row
+     */
+    private static final class FeatureKey {
+        final double mz;
+        final double retentionTime;
+
+        FeatureKey(double mz, double retentionTime) {
+            this.mz = mz;
+            this.retentionTime = retentionTime;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof FeatureKey)) return false;
+            FeatureKey that = (FeatureKey) o;
+            return Double.compare(that.mz, mz) == 0 && Double.compare(that.retentionTime, retentionTime) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            long bits = Double.doubleToLongBits(mz) * 31 + Double.doubleToLongBits(retentionTime);
+            return (int) (bits ^ (bits >>> 32));
+        }
+    }
+}
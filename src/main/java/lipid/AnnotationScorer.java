@@ -0,0 +1,16 @@
+package lipid;
+
+import java.util.Collection;
+
+/**
+ * Scores a set of annotations against each other following the elution order rules (R1-R6 in lipids.drl). The
+ * scores are accumulated into the annotations through {@link Annotation#addScore(int)}.
+ */
+public interface AnnotationScorer {
+
+    /**
+     * @param annotations annotations to score
+     * @return number of rule matches, i.e. pairs of annotations that were scored
+     */
+    int score(Collection<Annotation> annotations);
+}
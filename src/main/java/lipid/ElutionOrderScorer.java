@@ -0,0 +1,301 @@
+package lipid;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Pure Java implementation of the elution order rules R1-R6 of lipids.drl. It gives the same score and number of
+ * scores applied to every annotation as the rule unit.
+ * <p>
+ * Every rule compares two annotations that share two of (lipid type, carbons, double bonds) and checks whether
+ * their retention times are ordered as the third key predicts:
+ * <ul>
+ *     <li>R1/R4: same type and double bonds, more carbons elutes later</li>
+ *     <li>R2/R5: same type and carbons, fewer double bonds elutes later</li>
+ *     <li>R3/R6: same carbons and double bonds, higher {@link Lipid#lipidTypeRank(LipidType)} elutes later</li>
+ * </ul>
+ * A pair that follows the order scores +1 on both annotations and a pair that contradicts it scores -1. Pairs with
+ * equal keys or equal retention times are not scored. Instead of joining every pair, the annotations are grouped by
+ * the two shared keys and, inside each group, sorted by the third one. A Fenwick tree over the retention time ranks
+ * then counts for every annotation the concordant and discordant partners, so scoring costs O(n log n).
+ */
+public class ElutionOrderScorer implements AnnotationScorer {
+
+    private static final LipidType[] LIPID_TYPES = LipidType.values();
+
+    @Override
+    public int score(Collection<Annotation> annotations) {
+        Annotation[] array = annotations.toArray(new Annotation[0]);
+        int n = array.length;
+        int[] lipidTypes = new int[n];
+        int[] carbons = new int[n];
+        int[] doubleBonds = new int[n];
+        double[] retentionTimes = new double[n];
+        for (int i = 0; i < n; i++) {
+            Lipid lipid = array[i].getLipid();
+            lipidTypes[i] = lipid.getLipidType().ordinal();
+            carbons[i] = lipid.getCarbonCount();
+            doubleBonds[i] = lipid.getDoubleBondsCount();
+            retentionTimes[i] = array[i].getRtMin();
+        }
+
+        int[] scores = new int[n];
+        int[] scoresApplied = new int[n];
+        int pairs = score(lipidTypes, carbons, doubleBonds, retentionTimes, scores, scoresApplied);
+        for (int i = 0; i < n; i++) {
+            if (scoresApplied[i] != 0) {
+                array[i].addScores(scores[i], scoresApplied[i]);
+            }
+        }
+        return pairs;
+    }
+
+    /**
+     * Score annotations given as columns.
+     *
+     * @param lipidTypes     {@link LipidType#ordinal()} of the lipid of each annotation
+     * @param carbons        carbon count of the lipid of each annotation
+     * @param doubleBonds    double bond count of the lipid of each annotation
+     * @param retentionTimes retention time of each annotation
+     * @param scores         output, the sum of the scores of each annotation is added to it
+     * @param scoresApplied  output, the number of scores of each annotation is added to it
+     * @return number of pairs of annotations that were scored
+     */
+    public static int score(int[] lipidTypes, int[] carbons, int[] doubleBonds, double[] retentionTimes,
+                            int[] scores, int[] scoresApplied) {
+        int n = lipidTypes.length;
+        int[] rtRanks = rankRetentionTimes(retentionTimes);
+        int[] typeRanks = new int[n];
+        int[] negatedDoubleBonds = new int[n];
+        for (int i = 0; i < n; i++) {
+            typeRanks[i] = Lipid.lipidTypeRank(LIPID_TYPES[lipidTypes[i]]);
+            negatedDoubleBonds[i] = -doubleBonds[i];
+        }
+
+        Workspace workspace = new Workspace(n);
+        long applied = 0;
+        // R1 and R4
+        applied += scoreGroups(lipidTypes, doubleBonds, carbons, rtRanks, scores, scoresApplied, workspace);
+        // R2 and R5
+        applied += scoreGroups(lipidTypes, carbons, negatedDoubleBonds, rtRanks, scores, scoresApplied, workspace);
+        // R3 and R6
+        applied += scoreGroups(carbons, doubleBonds, typeRanks, rtRanks, scores, scoresApplied, workspace);
+        return (int) (applied / 2);
+    }
+
+    /**
+     * @return dense rank (from 1) of every retention time, equal times share the rank and NaN gets 0
+     */
+    private static int[] rankRetentionTimes(double[] retentionTimes) {
+        int n = retentionTimes.length;
+        double[] distinct = new double[n];
+        int count = 0;
+        for (double rt : retentionTimes) {
+            if (!Double.isNaN(rt)) {
+                // Adding 0 turns -0.0 into 0.0, which compare equal in the rules
+                distinct[count++] = rt + 0.0d;
+            }
+        }
+        Arrays.sort(distinct, 0, count);
+        int size = 0;
+        for (int i = 0; i < count; i++) {
+            if (size == 0 || distinct[i] != distinct[size - 1]) {
+                distinct[size++] = distinct[i];
+            }
+        }
+
+        int[] ranks = new int[n];
+        for (int i = 0; i < n; i++) {
+            double rt = retentionTimes[i];
+            ranks[i] = Double.isNaN(rt) ? 0 : Arrays.binarySearch(distinct, 0, size, rt + 0.0d) + 1;
+        }
+        return ranks;
+    }
+
+    /**
+     * Score every pair of annotations that share both group keys and differ in the order key. The pair follows the
+     * elution order when the annotation with the higher order key has the higher retention time.
+     *
+     * @return number of scores applied
+     */
+    private static long scoreGroups(int[] firstKey, int[] secondKey, int[] orderKey, int[] rtRanks,
+                                    int[] scores, int[] scoresApplied, Workspace workspace) {
+        int n = firstKey.length;
+        long[] groupKeys = workspace.longs;
+        int[] members = workspace.members;
+
+        // Dense group ids of the annotations with a retention time
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (rtRanks[i] != 0) {
+                groupKeys[m++] = groupKey(firstKey[i], secondKey[i]);
+            }
+        }
+        Arrays.sort(groupKeys, 0, m);
+        int groups = 0;
+        for (int i = 0; i < m; i++) {
+            if (groups == 0 || groupKeys[i] != groupKeys[groups - 1]) {
+                groupKeys[groups++] = groupKeys[i];
+            }
+        }
+
+        // Counting sort of the annotations by group
+        int[] groupStart = new int[groups + 1];
+        int[] groupIds = workspace.ints;
+        for (int i = 0; i < n; i++) {
+            if (rtRanks[i] != 0) {
+                int groupId = Arrays.binarySearch(groupKeys, 0, groups, groupKey(firstKey[i], secondKey[i]));
+                groupIds[i] = groupId;
+                groupStart[groupId + 1]++;
+            }
+        }
+        for (int g = 0; g < groups; g++) {
+            groupStart[g + 1] += groupStart[g];
+        }
+        int[] next = Arrays.copyOf(groupStart, groups);
+        for (int i = 0; i < n; i++) {
+            if (rtRanks[i] != 0) {
+                members[next[groupIds[i]]++] = i;
+            }
+        }
+
+        long applied = 0;
+        for (int g = 0; g < groups; g++) {
+            int from = groupStart[g];
+            int to = groupStart[g + 1];
+            if (to - from > 1) {
+                applied += scoreGroup(members, from, to, orderKey, rtRanks, scores, scoresApplied, workspace);
+            }
+        }
+        return applied;
+    }
+
+    private static long groupKey(int first, int second) {
+        return ((long) first << 32) | (second & 0xFFFFFFFFL);
+    }
+
+    private static long scoreGroup(int[] members, int from, int to, int[] orderKey, int[] rtRanks,
+                                   int[] scores, int[] scoresApplied, Workspace workspace) {
+        // Sort the members by order key; the index is packed in the low bits
+        long[] sorted = workspace.longs;
+        for (int t = from; t < to; t++) {
+            int i = members[t];
+            sorted[t] = ((long) orderKey[i] << 32) | i;
+        }
+        Arrays.sort(sorted, from, to);
+
+        // Retention time ranks local to the group
+        int[] distinct = workspace.ints;
+        for (int t = from; t < to; t++) {
+            distinct[t] = rtRanks[(int) sorted[t]];
+        }
+        Arrays.sort(distinct, from, to);
+        int size = from;
+        for (int t = from; t < to; t++) {
+            if (size == from || distinct[t] != distinct[size - 1]) {
+                distinct[size++] = distinct[t];
+            }
+        }
+        int[] localRanks = workspace.localRanks;
+        for (int t = from; t < to; t++) {
+            localRanks[t] = Arrays.binarySearch(distinct, from, size, rtRanks[(int) sorted[t]]) - from + 1;
+        }
+        int[] tree = workspace.tree;
+        int ranks = size - from;
+
+        long applied = 0;
+        // Partners with a lower order key: concordant if they also have a lower retention time
+        Arrays.fill(tree, 0, ranks + 1, 0);
+        int inserted = 0;
+        for (int start = from; start < to; ) {
+            int end = endOfKey(sorted, start, to);
+            for (int t = start; t < end; t++) {
+                int rank = localRanks[t];
+                int lower = sum(tree, rank - 1);
+                int higher = inserted - sum(tree, rank);
+                int i = (int) sorted[t];
+                scores[i] += lower - higher;
+                scoresApplied[i] += lower + higher;
+                applied += lower + higher;
+            }
+            for (int t = start; t < end; t++) {
+                add(tree, ranks, localRanks[t]);
+            }
+            inserted += end - start;
+            start = end;
+        }
+
+        // Partners with a higher order key: concordant if they also have a higher retention time
+        Arrays.fill(tree, 0, ranks + 1, 0);
+        inserted = 0;
+        for (int end = to; end > from; ) {
+            int start = startOfKey(sorted, from, end);
+            for (int t = start; t < end; t++) {
+                int rank = localRanks[t];
+                int lower = sum(tree, rank - 1);
+                int higher = inserted - sum(tree, rank);
+                int i = (int) sorted[t];
+                scores[i] += higher - lower;
+                scoresApplied[i] += lower + higher;
+                applied += lower + higher;
+            }
+            for (int t = start; t < end; t++) {
+                add(tree, ranks, localRanks[t]);
+            }
+            inserted += end - start;
+            end = start;
+        }
+        return applied;
+    }
+
+    private static int endOfKey(long[] sorted, int start, int to) {
+        int key = (int) (sorted[start] >> 32);
+        int end = start + 1;
+        while (end < to && (int) (sorted[end] >> 32) == key) {
+            end++;
+        }
+        return end;
+    }
+
+    private static int startOfKey(long[] sorted, int from, int end) {
+        int key = (int) (sorted[end - 1] >> 32);
+        int start = end - 1;
+        while (start > from && (int) (sorted[start - 1] >> 32) == key) {
+            start--;
+        }
+        return start;
+    }
+
+    private static int sum(int[] tree, int rank) {
+        int sum = 0;
+        for (int r = rank; r > 0; r -= r & -r) {
+            sum += tree[r];
+        }
+        return sum;
+    }
+
+    private static void add(int[] tree, int size, int rank) {
+        for (int r = rank; r <= size; r += r & -r) {
+            tree[r]++;
+        }
+    }
+
+    /**
+     * Buffers shared by the three groupings, allocated once per call
+     */
+    private static final class Workspace {
+        final long[] longs;
+        final int[] ints;
+        final int[] members;
+        final int[] localRanks;
+        final int[] tree;
+
+        Workspace(int n) {
+            this.longs = new long[n];
+            this.ints = new int[n];
+            this.members = new int[n];
+            this.localRanks = new int[n];
+            this.tree = new int[n + 1];
+        }
+    }
+}
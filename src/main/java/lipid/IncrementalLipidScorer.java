@@ -0,0 +1,194 @@
+package lipid;
+
+import metrics.ScoringMetrics;
+import org.drools.ruleunits.api.DataHandle;
+import org.drools.ruleunits.api.RuleUnitInstance;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.function.Consumer;
+
+/**
+ * Scores the annotations of a run while it is being acquired. Annotations are inserted in one long-lived
+ * {@link LipidScoreUnit} as they elute and the rules are fired after every insertion, so only the pairs with the new
+ * annotations are evaluated.
+ * <p>
+ * The highest retention time inserted so far is the watermark. An annotation whose retention time is more than the
+ * RT horizon below the watermark is final: it is retracted from the working memory and passed to the finalized
+ * listener, and its score no longer changes. Pairs of annotations further apart than the horizon may therefore not be
+ * scored, while the working memory and the cost of an insertion only depend on the annotations within the horizon.
+ * Annotations without a retention time (NaN) never pair and are finalized right after their insertion, like
+ * annotations that arrive when the watermark is already beyond their horizon. Those late annotations have lost their
+ * pairs with the annotations finalized before them, so a finite horizon needs the annotations in ascending retention
+ * time (within the horizon); they are counted by {@link #getLateCount()}.
+ * <p>
+ * Instances are not thread-safe; they are meant to be fed by the acquisition thread. The rule unit instance is created
+ * with the scorer, so it only records the per rule {@link ScoringMetrics} if metrics were enabled before.
+ */
+public class IncrementalLipidScorer implements AutoCloseable {
+
+    private final LipidScoreUnit lipidScoreUnit;
+    private final RuleUnitInstance<LipidScoreUnit> instance;
+    private final double rtHorizon;
+    private final Consumer<Annotation> onFinalized;
+    private final PriorityQueue<Pending> active = new PriorityQueue<>(Comparator.comparingDouble(p -> p.retentionTime));
+    private final List<Pending> untimed = new ArrayList<>();
+    private double watermark = Double.NEGATIVE_INFINITY;
+    private long inserted;
+    private long finalized;
+    private long late;
+    private long rulesFired;
+
+    /**
+     * @param rtHorizon   retention time (min) after which an annotation is final, positive infinity to keep every
+     *                    annotation until the scorer is closed
+     * @param onFinalized called with every annotation once its score is final
+     */
+    public IncrementalLipidScorer(double rtHorizon, Consumer<Annotation> onFinalized) {
+        if (!(rtHorizon >= 0)) {
+            throw new IllegalArgumentException("rtHorizon must not be negative: " + rtHorizon);
+        }
+        this.rtHorizon = rtHorizon;
+        this.onFinalized = onFinalized;
+        this.lipidScoreUnit = new LipidScoreUnit();
+        this.instance = ScoringMetrics.createInstance(lipidScoreUnit);
+    }
+
+    /**
+     * Insert an annotation, fire the rules for its pairs and finalize the annotations beyond the horizon.
+     *
+     * @param annotation annotation that has just eluted
+     * @return number of rules fired
+     */
+    public int insert(Annotation annotation) {
+        return insert(List.of(annotation));
+    }
+
+    /**
+     * Insert annotations that eluted together, firing the rules once for all of them. The annotations beyond the
+     * horizon of the new watermark are retracted before firing, so they are not paired with the new ones.
+     *
+     * @param annotations annotations that have just eluted
+     * @return number of rules fired
+     */
+    public int insert(Collection<Annotation> annotations) {
+        double limit = watermark - rtHorizon;
+        for (Annotation annotation : annotations) {
+            if (annotation.getRtMin() < limit) {
+                late++;
+            }
+        }
+        for (Annotation annotation : annotations) {
+            if (annotation.getRtMin() > watermark) {
+                watermark = annotation.getRtMin();
+            }
+        }
+        retractBeyondHorizon();
+        for (Annotation annotation : annotations) {
+            DataHandle handle = lipidScoreUnit.getAnnotations().add(annotation);
+            Pending pending = new Pending(annotation, handle, annotation.getRtMin());
+            if (Double.isNaN(pending.retentionTime)) {
+                untimed.add(pending);
+            } else {
+                active.add(pending);
+            }
+        }
+        inserted += annotations.size();
+
+        int fired = ScoringMetrics.fire(instance);
+        rulesFired += fired;
+        // Annotations without retention time, or arriving already beyond the horizon, have no more pairs to come
+        for (Pending pending : untimed) {
+            retract(pending);
+        }
+        untimed.clear();
+        retractBeyondHorizon();
+        return fired;
+    }
+
+    private void retractBeyondHorizon() {
+        double limit = watermark - rtHorizon;
+        while (!active.isEmpty() && active.peek().retentionTime < limit) {
+            retract(active.poll());
+        }
+    }
+
+    private void retract(Pending pending) {
+        lipidScoreUnit.getAnnotations().remove(pending.handle);
+        finalized++;
+        onFinalized.accept(pending.annotation);
+    }
+
+    /**
+     * Finalize every annotation still in the working memory, e.g. at the end of the run.
+     *
+     * @return number of annotations finalized
+     */
+    public int finalizeAll() {
+        int count = active.size();
+        while (!active.isEmpty()) {
+            retract(active.poll());
+        }
+        return count;
+    }
+
+    /**
+     * @return number of annotations in the working memory, waiting to be finalized
+     */
+    public int getActiveCount() {
+        return active.size();
+    }
+
+    /**
+     * @return highest retention time inserted so far
+     */
+    public double getWatermark() {
+        return watermark;
+    }
+
+    public long getInsertedCount() {
+        return inserted;
+    }
+
+    public long getFinalizedCount() {
+        return finalized;
+    }
+
+    /**
+     * @return number of annotations inserted when the watermark was already beyond their horizon
+     */
+    public long getLateCount() {
+        return late;
+    }
+
+    public long getRulesFired() {
+        return rulesFired;
+    }
+
+    /**
+     * Finalize the remaining annotations and release the rule unit.
+     */
+    @Override
+    public void close() {
+        try {
+            finalizeAll();
+        } finally {
+            instance.close();
+        }
+    }
+
+    private static final class Pending {
+        final Annotation annotation;
+        final DataHandle handle;
+        final double retentionTime;
+
+        Pending(Annotation annotation, DataHandle handle, double retentionTime) {
+            this.annotation = annotation;
+            this.handle = handle;
+            this.retentionTime = retentionTime;
+        }
+    }
+}
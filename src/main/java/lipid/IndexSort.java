@@ -0,0 +1,60 @@
+package lipid;
+
+import java.util.Arrays;
+
+/**
+ * Orders of the positions of a column of values, sorted on primitive keys instead of boxed indexes.
+ */
+public final class IndexSort {
+
+    private static final long HIGH_BITS = 0xFFFFFFFF00000000L;
+
+    private IndexSort() {
+    }
+
+    /**
+     * Sort the positions by value as a stable sort of the indexes with {@link Double#compare(double, double)} would.
+     * Every position is packed in a long key under the high half of the bits of its value, the keys are sorted, and
+     * the few values sharing the high half of their bits (equal values, or values closer than about one millionth) are
+     * then ordered by their exact value.
+     *
+     * @param values values of the positions
+     * @param size   number of positions, from 0 (inclusive) to size (exclusive)
+     * @return the positions in ascending order of their value, equal values in ascending position
+     */
+    public static int[] ascending(double[] values, int size) {
+        long[] keys = new long[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (sortableBits(values[i]) & HIGH_BITS) | i;
+        }
+        Arrays.sort(keys);
+        int[] order = new int[size];
+        for (int k = 0; k < size; k++) {
+            order[k] = (int) keys[k];
+        }
+        for (int k = 1; k < size; k++) {
+            long high = keys[k] & HIGH_BITS;
+            if ((keys[k - 1] & HIGH_BITS) != high) {
+                continue;
+            }
+            // Insertion in the run of equal high bits, already in ascending position
+            int position = order[k];
+            double value = values[position];
+            int j = k;
+            while (j > 0 && (keys[j - 1] & HIGH_BITS) == high && Double.compare(values[order[j - 1]], value) > 0) {
+                order[j] = order[j - 1];
+                j--;
+            }
+            order[j] = position;
+        }
+        return order;
+    }
+
+    /**
+     * @return the bits of the value as a long in the order of {@link Double#compare(double, double)}
+     */
+    static long sortableBits(double value) {
+        long bits = Double.doubleToLongBits(value);
+        return bits ^ ((bits >> 63) & Long.MAX_VALUE);
+    }
+}
@@ -0,0 +1,163 @@
+package lipid;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import formula.IsotopeEnvelope;
+
+import java.util.Collection;
+
+/**
+ * Scores annotations by matching the theoretical isotope envelope of the formula of their lipid against their
+ * grouped peaks. The M+1, M+2... peaks are expected at {@link IsotopeEnvelope#ISOTOPE_SPACING}/charge from the
+ * annotated mz, within the ppm tolerance, with an intensity relative to the monoisotopic peak within the intensity
+ * tolerance of the theoretical abundance.
+ * <p>
+ * An annotation whose expected isotopes are all found scores +1 and one with a missing or mismatched isotope scores
+ * -1. Annotations without grouped peaks, without a monoisotopic intensity or annotated as a multimer are not scored.
+ * Envelopes are cached per formula and the matching only reads the primitive arrays of the {@link PeakList}.
+ * <p>
+ * Unlike an {@link AnnotationScorer}, every annotation is scored on its own, not against the others, so this is not
+ * one: {@link #score(Collection)} returns the number of annotations scored, not of pairs.
+ */
+public class IsotopePatternScorer {
+
+    public static final double DEFAULT_INTENSITY_TOLERANCE = 0.3;
+    public static final int DEFAULT_ISOTOPES = 2;
+
+    /**
+     * Isotopes expected with a lower relative abundance are too faint to be required
+     */
+    public static final double MIN_RELATIVE_ABUNDANCE = 0.01;
+
+    private final double ppmTolerance;
+    private final double intensityTolerance;
+    private final int isotopes;
+
+    public IsotopePatternScorer() {
+        this(AdductDetector.DEFAULT_PPM_TOLERANCE, DEFAULT_INTENSITY_TOLERANCE, DEFAULT_ISOTOPES);
+    }
+
+    /**
+     * @param ppmTolerance       tolerance between the expected and the observed mz of the isotopes
+     * @param intensityTolerance tolerance on the relative intensity, as a fraction of the theoretical one
+     * @param isotopes           number of isotopes checked after the monoisotopic peak, at most
+     *                           {@link IsotopeEnvelope#PEAKS} - 1
+     */
+    public IsotopePatternScorer(double ppmTolerance, double intensityTolerance, int isotopes) {
+        if (isotopes < 1 || isotopes >= IsotopeEnvelope.PEAKS) {
+            throw new IllegalArgumentException("Isotopes must be between 1 and " + (IsotopeEnvelope.PEAKS - 1));
+        }
+        this.ppmTolerance = ppmTolerance;
+        this.intensityTolerance = intensityTolerance;
+        this.isotopes = isotopes;
+    }
+
+    /**
+     * Add the isotope score of every annotation that can be checked.
+     *
+     * @param annotations annotations to score
+     * @return number of annotations that were scored
+     */
+    public int score(Collection<Annotation> annotations) {
+        int scored = 0;
+        for (Annotation annotation : annotations) {
+            int score = score(annotation);
+            if (score != 0) {
+                annotation.addScore(score);
+                scored++;
+            }
+        }
+        return scored;
+    }
+
+    /**
+     * Check an annotation without adding the score to it. The charge is read from the adduct of the annotation, so an
+     * adduct that was not set nor detected yet is detected from the grouped peaks by {@link Annotation#getAdduct()}
+     * and kept in the annotation; without an adduct the ion is taken as singly charged.
+     *
+     * @param annotation annotation to check
+     * @return 1 if the isotope envelope matches, -1 if it does not, 0 if it cannot be checked
+     */
+    public int score(Annotation annotation) {
+        PeakList peaks = annotation.getPeaks();
+        if (peaks.isEmpty()) {
+            return 0;
+        }
+        int charge = 1;
+        AdductDescriptor adduct = AdductList.getDescriptor(annotation.getAdduct());
+        if (adduct != null) {
+            if (adduct.getMultimer() != 1) {
+                return 0;
+            }
+            charge = adduct.getCharge();
+        }
+        IsotopeEnvelope envelope;
+        try {
+            envelope = IsotopeEnvelope.cached(annotation.getLipid().getFormula());
+        } catch (IllegalArgumentException e) {
+            return 0;
+        }
+        return score(annotation.getMz(), annotation.getIntensity(), charge, envelope,
+                peaks.mzArray(), peaks.intensityArray(), 0, peaks.size());
+    }
+
+    /**
+     * Match an envelope against peaks given as columns, e.g. the grouped peaks of a feature of a columnar file.
+     *
+     * @param mz            mz of the monoisotopic peak
+     * @param intensity     intensity of the monoisotopic peak, or 0 to take it from the peak at mz
+     * @param charge        charge of the ion
+     * @param envelope      theoretical envelope of the formula
+     * @param peakMz        mz of the peaks, sorted in ascending order between from and to
+     * @param peakIntensity intensity of the peaks
+     * @param from          first index (inclusive) of the peaks
+     * @param to            last index (exclusive) of the peaks
+     * @return 1 if the isotope envelope matches, -1 if it does not, 0 if it cannot be checked
+     */
+    public int score(double mz, double intensity, int charge, IsotopeEnvelope envelope,
+                     double[] peakMz, double[] peakIntensity, int from, int to) {
+        if (intensity <= 0) {
+            intensity = mostIntense(mz, peakMz, peakIntensity, from, to);
+            if (intensity <= 0) {
+                return 0;
+            }
+        }
+        boolean checked = false;
+        for (int k = 1; k <= isotopes; k++) {
+            double expected = envelope.relativeAbundance(k);
+            if (expected < MIN_RELATIVE_ABUNDANCE) {
+                continue;
+            }
+            checked = true;
+            double observed = mostIntense(mz + k * IsotopeEnvelope.ISOTOPE_SPACING / charge, peakMz, peakIntensity, from, to);
+            if (observed <= 0 || Math.abs(observed / intensity - expected) > intensityTolerance * expected) {
+                return -1;
+            }
+        }
+        return checked ? 1 : 0;
+    }
+
+    /**
+     * @return intensity of the most intense peak within the ppm tolerance of the target mz, 0 if there is none
+     */
+    private double mostIntense(double target, double[] peakMz, double[] peakIntensity, int from, int to) {
+        double window = target * ppmTolerance / 1000000d;
+        double lower = target - window;
+        double upper = target + window;
+        int low = from;
+        int high = to;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (peakMz[mid] < lower) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        double max = 0;
+        for (int i = low; i < to && peakMz[i] <= upper; i++) {
+            max = Math.max(max, peakIntensity[i]);
+        }
+        return max;
+    }
+}
@@ -1,5 +1,7 @@
 package lipid;
 
+import formula.Formula;
+
 import java.util.Objects;
 
 public class Lipid {
@@ -9,6 +11,10 @@ public class Lipid {
     private final LipidType lipidType;
     private final int carbonCount;
     private final int doubleBondsCount;
+    /**
+     * Mass computed from the formula on first use, NaN until then
+     */
+    private volatile double monoisotopicMass = Double.NaN;
 
 
     /**
@@ -52,6 +58,20 @@ public class Lipid {
         return doubleBondsCount;
     }
 
+    /**
+     * @return monoisotopic mass of the formula, computed once per lipid and shared between lipids with the same
+     * formula
+     * @throws IllegalArgumentException if the formula is null or cannot be parsed
+     */
+    public double getMonoisotopicMass() {
+        double mass = monoisotopicMass;
+        if (Double.isNaN(mass)) {
+            mass = Formula.cachedMonoisotopicMass(formula);
+            monoisotopicMass = mass;
+        }
+        return mass;
+    }
+
     /**
      * Method to represent the position/importance of different types of lipids
      *
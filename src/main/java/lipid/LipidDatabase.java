@@ -0,0 +1,269 @@
+package lipid;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Catalogue of candidate lipids indexed by the m/z of every adduct of {@link AdductList}. For each ionisation mode
+ * the theoretical m/z of all (lipid, adduct) pairs are precomputed and sorted in a primitive array, so that the
+ * candidates of an observed m/z are found with two binary searches, in O(log n + k).
+ */
+public class LipidDatabase {
+
+    public static final String LIPID_ID = "lipid_id";
+    public static final String LIPID_NAME = "lipid_name";
+    public static final String FORMULA = "formula";
+    public static final String LIPID_TYPE = "lipid_type";
+    public static final String CARBONS = "carbons";
+    public static final String DOUBLE_BONDS = "double_bonds";
+    public static final String MONOISOTOPIC_MASS = "monoisotopic_mass";
+
+    private final Lipid[] lipids;
+    private final double[] monoisotopicMasses;
+    private final Map<IoniationMode, MassIndex> indexes = new EnumMap<>(IoniationMode.class);
+
+    /**
+     * @param lipids lipids of the catalogue, with the mass computed from their formula
+     */
+    public LipidDatabase(List<Lipid> lipids) {
+        this(lipids, monoisotopicMasses(lipids));
+    }
+
+    /**
+     * @param lipids             lipids of the catalogue
+     * @param monoisotopicMasses neutral monoisotopic mass of each lipid
+     */
+    public LipidDatabase(List<Lipid> lipids, double[] monoisotopicMasses) {
+        if (lipids.size() != monoisotopicMasses.length) {
+            throw new IllegalArgumentException("The catalogue needs one monoisotopic mass per lipid");
+        }
+        this.lipids = lipids.toArray(new Lipid[0]);
+        this.monoisotopicMasses = monoisotopicMasses.clone();
+        for (IoniationMode ionMode : IoniationMode.values()) {
+            indexes.put(ionMode, new MassIndex(this.monoisotopicMasses, AdductList.getDescriptors(ionMode)));
+        }
+    }
+
+    private static double[] monoisotopicMasses(List<Lipid> lipids) {
+        double[] masses = new double[lipids.size()];
+        for (int i = 0; i < masses.length; i++) {
+            masses[i] = lipids.get(i).getMonoisotopicMass();
+        }
+        return masses;
+    }
+
+    /**
+     * Load a catalogue (CSV or TSV) with the header columns lipid_id, lipid_name, formula, lipid_type, carbons,
+     * double_bonds and optionally monoisotopic_mass, in any order. Without that column, or when it is blank, the mass
+     * is computed from the formula.
+     *
+     * @param path catalogue file
+     * @return the indexed catalogue
+     * @throws IOException if the file cannot be read or a row is malformed
+     */
+    public static LipidDatabase load(Path path) throws IOException {
+        try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+            return load(reader);
+        }
+    }
+
+    /**
+     * @param reader catalogue in the format of {@link #load(Path)}, not closed by this method
+     * @return the indexed catalogue
+     * @throws IOException if the catalogue cannot be read or a row is malformed
+     */
+    public static LipidDatabase load(Reader reader) throws IOException {
+        BufferedReader lines = reader instanceof BufferedReader ? (BufferedReader) reader : new BufferedReader(reader);
+        String header = lines.readLine();
+        if (header == null) {
+            throw new IOException("Empty lipid catalogue: missing header");
+        }
+        String delimiter = header.indexOf('\t') >= 0 ? "\t" : ",";
+        String[] columns = header.split(delimiter, -1);
+        Map<String, Integer> indexes = new HashMap<>();
+        for (int i = 0; i < columns.length; i++) {
+            indexes.put(columns[i].trim().toLowerCase(Locale.ROOT), i);
+        }
+        int id = required(indexes, LIPID_ID);
+        int name = required(indexes, LIPID_NAME);
+        int formula = required(indexes, FORMULA);
+        int lipidType = required(indexes, LIPID_TYPE);
+        int carbons = required(indexes, CARBONS);
+        int doubleBonds = required(indexes, DOUBLE_BONDS);
+        int mass = indexes.getOrDefault(MONOISOTOPIC_MASS, -1);
+
+        List<Lipid> lipids = new ArrayList<>();
+        double[] masses = new double[1024];
+        long lineNumber = 1;
+        String line;
+        while ((line = lines.readLine()) != null) {
+            lineNumber++;
+            if (line.isBlank()) {
+                continue;
+            }
+            String[] values = line.split(delimiter, -1);
+            try {
+                Lipid lipid = new Lipid(Integer.parseInt(values[id].trim()), values[name].trim(), values[formula].trim(),
+                        LipidType.valueOf(values[lipidType].trim().toUpperCase(Locale.ROOT)),
+                        Integer.parseInt(values[carbons].trim()), Integer.parseInt(values[doubleBonds].trim()));
+                if (lipids.size() == masses.length) {
+                    masses = Arrays.copyOf(masses, masses.length * 2);
+                }
+                masses[lipids.size()] = mass < 0 || values[mass].isBlank()
+                        ? lipid.getMonoisotopicMass()
+                        : Double.parseDouble(values[mass].trim());
+                lipids.add(lipid);
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed lipid at line " + lineNumber + ": " + e.getMessage(), e);
+            }
+        }
+        return new LipidDatabase(lipids, Arrays.copyOf(masses, lipids.size()));
+    }
+
+    private static int required(Map<String, Integer> indexes, String column) throws IOException {
+        Integer index = indexes.get(column);
+        if (index == null) {
+            throw new IOException("Lipid catalogue lacks the column " + column);
+        }
+        return index;
+    }
+
+    /**
+     * @return number of lipids of the catalogue
+     */
+    public int size() {
+        return lipids.length;
+    }
+
+    public Lipid getLipid(int index) {
+        return lipids[index];
+    }
+
+    public double getMonoisotopicMass(int index) {
+        return monoisotopicMasses[index];
+    }
+
+    /**
+     * @param mz      observed m/z
+     * @param ppm     tolerance in ppm between the observed and the theoretical m/z
+     * @param ionMode ionisation mode of the observation
+     * @return one annotation per candidate (lipid, adduct), without retention time (NaN) or intensity (0)
+     */
+    public List<Annotation> lookup(double mz, double ppm, IoniationMode ionMode) {
+        return lookup(mz, 0, Double.NaN, ppm, ionMode);
+    }
+
+    /**
+     * @param mz            observed m/z
+     * @param intensity     observed intensity
+     * @param retentionTime observed retention time
+     * @param ppm           tolerance in ppm between the observed and the theoretical m/z
+     * @param ionMode       ionisation mode of the observation
+     * @return one annotation per candidate (lipid, adduct), in order of theoretical m/z, with the adduct set
+     */
+    public List<Annotation> lookup(double mz, double intensity, double retentionTime, double ppm, IoniationMode ionMode) {
+        MassIndex index = indexes.get(ionMode);
+        int from = index.fromIndex(mz, ppm);
+        int to = index.toIndex(mz, ppm);
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        List<Annotation> candidates = new ArrayList<>(to - from);
+        for (int i = from; i < to; i++) {
+            candidates.add(new Annotation(lipids[index.lipids[i]], mz, intensity, retentionTime, PeakList.EMPTY, ionMode,
+                    AdductList.getDescriptor(index.adductIds[i]).getName()));
+        }
+        return candidates;
+    }
+
+    /**
+     * @return number of candidates (lipid, adduct) of an observed m/z, without creating them
+     */
+    public int countCandidates(double mz, double ppm, IoniationMode ionMode) {
+        MassIndex index = indexes.get(ionMode);
+        return Math.max(0, index.toIndex(mz, ppm) - index.fromIndex(mz, ppm));
+    }
+
+    /**
+     * Theoretical m/z of every (lipid, adduct) pair of one ionisation mode, sorted, with the lipid position and the
+     * adduct id in parallel arrays
+     */
+    private static final class MassIndex {
+        final double[] mz;
+        final int[] lipids;
+        final int[] adductIds;
+
+        MassIndex(double[] monoisotopicMasses, AdductDescriptor[] adducts) {
+            int n = monoisotopicMasses.length * adducts.length;
+            double[] unsortedMz = new double[n];
+            for (int l = 0; l < monoisotopicMasses.length; l++) {
+                for (int a = 0; a < adducts.length; a++) {
+                    unsortedMz[l * adducts.length + a] = adducts[a].toMz(monoisotopicMasses[l]);
+                }
+            }
+            int[] order = IndexSort.ascending(unsortedMz, n);
+
+            this.mz = new double[n];
+            this.lipids = new int[n];
+            this.adductIds = new int[n];
+            for (int i = 0; i < n; i++) {
+                int pair = order[i];
+                mz[i] = unsortedMz[pair];
+                lipids[i] = pair / adducts.length;
+                adductIds[i] = adducts[pair % adducts.length].getId();
+            }
+        }
+
+        /**
+         * @return first position whose theoretical m/z is within the tolerance, |observed - theoretical| / theoretical
+         */
+        int fromIndex(double observedMz, double ppm) {
+            double lower = observedMz / (1 + ppm / 1000000d);
+            int low = 0;
+            int high = mz.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mz[mid] < lower) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * @return position after the last theoretical m/z within the tolerance
+         */
+        int toIndex(double observedMz, double ppm) {
+            double factor = 1 - ppm / 1000000d;
+            double upper = factor > 0 ? observedMz / factor : Double.POSITIVE_INFINITY;
+            int low = 0;
+            int high = mz.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (mz[mid] <= upper) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package lipid;
+
+import metrics.LatencyHistogram;
+import metrics.ScoringMetrics;
+import org.drools.ruleunits.api.DataHandle;
+import org.drools.ruleunits.api.RuleUnit;
+import org.drools.ruleunits.api.RuleUnitInstance;
+import org.drools.ruleunits.api.RuleUnitProvider;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scores many small samples with a pool of {@link LipidScoreUnit} instances built from one compiled rule unit.
+ * Every sample borrows an instance, inserts its annotations, fires the rules and retracts the annotations again, so
+ * the instance goes back to the pool with an empty data store. The instances are warmed up when the service starts
+ * and the latency of every sample is recorded.
+ * <p>
+ * The service is thread-safe: up to pool size samples are scored at the same time and the others wait for an
+ * instance. Closing the service waits for the samples being scored and disposes every instance once it is back in
+ * the pool; the samples still waiting for an instance and the later ones fail with an {@link IllegalStateException}.
+ * <p>
+ * The pooled instances are created when the service starts, so they only record the per rule
+ * {@link ScoringMetrics} if metrics were enabled before.
+ */
+public class LipidScoringService implements AnnotationScorer, AutoCloseable {
+
+    public static final int DEFAULT_WARM_UP_SAMPLES = 200;
+
+    private static final LipidType[] LIPID_TYPES = LipidType.values();
+    /**
+     * How long a sample waits for an instance before checking again whether the service was closed
+     */
+    private static final long CLOSED_CHECK_MILLIS = 10;
+
+    private final RuleUnit<LipidScoreUnit> ruleUnit;
+    private final BlockingQueue<PooledInstance> pool;
+    private final List<PooledInstance> instances;
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private volatile boolean closed;
+
+    /**
+     * Pool of one instance per available processor, warmed up with {@value #DEFAULT_WARM_UP_SAMPLES} samples
+     */
+    public LipidScoringService() {
+        this(Runtime.getRuntime().availableProcessors(), DEFAULT_WARM_UP_SAMPLES);
+    }
+
+    /**
+     * @param poolSize        number of rule unit instances
+     * @param warmUpSamples   number of synthetic samples scored by every instance before the service is used
+     */
+    public LipidScoringService(int poolSize, int warmUpSamples) {
+        if (poolSize < 1) {
+            throw new IllegalArgumentException("poolSize must be positive: " + poolSize);
+        }
+        this.ruleUnit = RuleUnitProvider.get().getRuleUnit(new LipidScoreUnit());
+        this.pool = new ArrayBlockingQueue<>(poolSize);
+        this.instances = new ArrayList<>(poolSize);
+        for (int i = 0; i < poolSize; i++) {
+            PooledInstance instance = new PooledInstance();
+            instances.add(instance);
+            pool.add(instance);
+        }
+        warmUp(warmUpSamples);
+    }
+
+    /**
+     * Score synthetic samples on every instance so that the rule network and the scoring code are compiled before
+     * the first real sample. The latency of the warm-up samples is not recorded.
+     */
+    private void warmUp(int samples) {
+        Random random = new Random(0);
+        for (PooledInstance instance : instances) {
+            for (int sample = 0; sample < samples; sample++) {
+                instance.score(warmUpSample(random));
+            }
+        }
+    }
+
+    private static List<Annotation> warmUpSample(Random random) {
+        int size = 10 + random.nextInt(40);
+        List<Annotation> sample = new ArrayList<>(size);
+        for (int id = 0; id < size; id++) {
+            LipidType type = LIPID_TYPES[random.nextInt(LIPID_TYPES.length)];
+            int carbons = 30 + 2 * random.nextInt(6);
+            int doubleBonds = random.nextInt(4);
+            Lipid lipid = new Lipid(id, type + " " + carbons + ":" + doubleBonds, "C1", type, carbons, doubleBonds);
+            sample.add(new Annotation(lipid, 500 + id, 1000, random.nextDouble() * 20, PeakList.EMPTY, null, null));
+        }
+        return sample;
+    }
+
+    /**
+     * Score one sample on a pooled instance, waiting for one if all are busy.
+     *
+     * @param annotations annotations of the sample
+     * @return number of rules fired
+     * @throws IllegalStateException if the service is closed before the sample gets an instance
+     */
+    @Override
+    public int score(Collection<Annotation> annotations) {
+        long start = System.nanoTime();
+        PooledInstance instance = null;
+        try {
+            while (instance == null) {
+                if (closed) {
+                    throw new IllegalStateException("The scoring service is closed");
+                }
+                instance = pool.poll(CLOSED_CHECK_MILLIS, TimeUnit.MILLISECONDS);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a rule unit instance", e);
+        }
+        if (closed) {
+            // Taken while close() collects the instances: give it back to be disposed
+            pool.add(instance);
+            throw new IllegalStateException("The scoring service is closed");
+        }
+        try {
+            return instance.score(annotations);
+        } finally {
+            pool.add(instance);
+            latency.record(System.nanoTime() - start);
+        }
+    }
+
+    /**
+     * @return latency of the samples scored since the service started, including the wait for an instance
+     */
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    /**
+     * @return median latency of a sample, in microseconds
+     */
+    public double getLatencyP50Micros() {
+        return latency.getPercentileNanos(0.5) / 1000d;
+    }
+
+    /**
+     * @return 99th percentile of the latency of a sample, in microseconds
+     */
+    public double getLatencyP99Micros() {
+        return latency.getPercentileNanos(0.99) / 1000d;
+    }
+
+    public int getPoolSize() {
+        return instances.size();
+    }
+
+    /**
+     * Reject new samples, wait for the samples being scored and dispose every instance as it comes back to the pool.
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        boolean interrupted = false;
+        int disposed = 0;
+        while (disposed < instances.size()) {
+            try {
+                pool.take().close();
+                disposed++;
+            } catch (InterruptedException e) {
+                // The instances in use must still be disposed once their sample is scored
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * One rule unit instance with its data store. Only used by the thread that borrowed it.
+     */
+    private final class PooledInstance {
+        private final LipidScoreUnit data = new LipidScoreUnit();
+        private final RuleUnitInstance<LipidScoreUnit> instance = ScoringMetrics.createInstance(ruleUnit, data);
+        private final List<DataHandle> handles = new ArrayList<>();
+
+        int score(Collection<Annotation> annotations) {
+            try {
+                for (Annotation annotation : annotations) {
+                    handles.add(data.getAnnotations().add(annotation));
+                }
+                return ScoringMetrics.fire(instance);
+            } finally {
+                for (DataHandle handle : handles) {
+                    data.getAnnotations().remove(handle);
+                }
+                handles.clear();
+            }
+        }
+
+        void close() {
+            instance.close();
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package lipid;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
+
+/**
+ * Scorer that splits the annotations with {@link AnnotationPartitioner} and scores every partition on its own
+ * thread, by default with one {@link LipidScoreUnit} instance per partition. Partitions share no scored pair and
+ * every annotation belongs to exactly one partition, so the scores are the same as with a single instance whatever
+ * the scheduling of the threads.
+ * <p>
+ * The speedup is limited by the largest partition. Lipid classes sharing carbon and double bond counts are linked
+ * into one component, and on realistic data one component holds about 75% of the annotations; when there is a single
+ * component the annotations are scored by one scorer on the calling thread.
+ */
+public class ParallelLipidScorer implements AnnotationScorer {
+
+    private final int parallelism;
+    private final Supplier<AnnotationScorer> partitionScorer;
+
+    /**
+     * Parallel scoring with one rule unit instance per partition and as many partitions as available processors
+     */
+    public ParallelLipidScorer() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * @param parallelism maximum number of partitions scored at the same time
+     */
+    public ParallelLipidScorer(int parallelism) {
+        this(parallelism, RuleUnitScorer::new);
+    }
+
+    /**
+     * @param parallelism     maximum number of partitions scored at the same time
+     * @param partitionScorer creates the scorer of each partition
+     */
+    public ParallelLipidScorer(int parallelism, Supplier<AnnotationScorer> partitionScorer) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        }
+        this.parallelism = parallelism;
+        this.partitionScorer = partitionScorer;
+    }
+
+    @Override
+    public int score(Collection<Annotation> annotations) {
+        List<List<Annotation>> partitions = AnnotationPartitioner.partition(annotations, parallelism);
+        if (partitions.size() <= 1) {
+            return partitionScorer.get().score(annotations);
+        }
+
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> results = new ArrayList<>(partitions.size());
+            for (List<Annotation> partition : partitions) {
+                results.add(executor.submit(() -> partitionScorer.get().score(partition)));
+            }
+            int matches = 0;
+            for (Future<Integer> result : results) {
+                matches += result.get();
+            }
+            return matches;
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Scoring of a partition failed", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scoring partitions", e);
+        }
+    }
+}
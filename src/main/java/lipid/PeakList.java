@@ -0,0 +1,284 @@
+package lipid;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * Immutable list of peaks sorted by mz, stored as two parallel primitive arrays. Like a {@code TreeSet<Peak>}, it
+ * holds at most one peak per mz. Peaks are accessed by index, so iterating and querying m/z windows do not allocate.
+ */
+public final class PeakList {
+
+    public static final PeakList EMPTY = new PeakList(new double[0], new double[0]);
+
+    private final double[] mz;
+    private final double[] intensity;
+
+    private PeakList(double[] mz, double[] intensity) {
+        this.mz = mz;
+        this.intensity = intensity;
+    }
+
+    /**
+     * @param peaks peaks in any order; for peaks with the same mz the first one is kept
+     * @return the sorted list of the peaks
+     */
+    public static PeakList of(Collection<Peak> peaks) {
+        if (peaks instanceof PeakSetView) {
+            return ((PeakSetView) peaks).peaks;
+        }
+        double[] mz = new double[peaks.size()];
+        double[] intensity = new double[mz.length];
+        int i = 0;
+        for (Peak peak : peaks) {
+            mz[i] = peak.getMz();
+            intensity[i++] = peak.getIntensity();
+        }
+        return sortAndDeduplicate(mz, intensity);
+    }
+
+    /**
+     * @param mz        mz of the peaks in any order
+     * @param intensity intensity of the peaks
+     * @return the sorted list of the peaks; for peaks with the same mz the first one is kept
+     */
+    public static PeakList of(double[] mz, double[] intensity) {
+        if (mz.length != intensity.length) {
+            throw new IllegalArgumentException("Peaks need one intensity per mz");
+        }
+        return sortAndDeduplicate(mz.clone(), intensity.clone());
+    }
+
+    /**
+     * Sorts the arrays in place (stable, so the first of equal mz values is kept)
+     */
+    private static PeakList sortAndDeduplicate(double[] mz, double[] intensity) {
+        int n = mz.length;
+        if (n == 0) {
+            return EMPTY;
+        }
+        boolean sorted = true;
+        for (int i = 1; i < n && sorted; i++) {
+            sorted = Double.compare(mz[i - 1], mz[i]) < 0;
+        }
+        if (sorted) {
+            return new PeakList(mz, intensity);
+        }
+
+        // Insertion sort for the usual few grouped peaks, index sort otherwise
+        double[] sortedMz = new double[n];
+        double[] sortedIntensity = new double[n];
+        if (n <= 32) {
+            int size = 0;
+            for (int i = 0; i < n; i++) {
+                int j = size;
+                while (j > 0 && Double.compare(sortedMz[j - 1], mz[i]) > 0) {
+                    j--;
+                }
+                if (j > 0 && Double.compare(sortedMz[j - 1], mz[i]) == 0) {
+                    continue;
+                }
+                System.arraycopy(sortedMz, j, sortedMz, j + 1, size - j);
+                System.arraycopy(sortedIntensity, j, sortedIntensity, j + 1, size - j);
+                sortedMz[j] = mz[i];
+                sortedIntensity[j] = intensity[i];
+                size++;
+            }
+            return new PeakList(Arrays.copyOf(sortedMz, size), Arrays.copyOf(sortedIntensity, size));
+        }
+
+        int[] order = IndexSort.ascending(mz, n);
+        int size = 0;
+        for (int i = 0; i < n; i++) {
+            int k = order[i];
+            if (size > 0 && Double.compare(sortedMz[size - 1], mz[k]) == 0) {
+                continue;
+            }
+            sortedMz[size] = mz[k];
+            sortedIntensity[size++] = intensity[k];
+        }
+        return new PeakList(Arrays.copyOf(sortedMz, size), Arrays.copyOf(sortedIntensity, size));
+    }
+
+    public int size() {
+        return mz.length;
+    }
+
+    public boolean isEmpty() {
+        return mz.length == 0;
+    }
+
+    /**
+     * @param index position of the peak, from 0 to {@link #size()} (exclusive)
+     * @return mz of the peak
+     */
+    public double mzAt(int index) {
+        return mz[index];
+    }
+
+    /**
+     * @param index position of the peak, from 0 to {@link #size()} (exclusive)
+     * @return intensity of the peak
+     */
+    public double intensityAt(int index) {
+        return intensity[index];
+    }
+
+    /**
+     * @param index position of the peak, from 0 to {@link #size()} (exclusive)
+     * @return a new peak object with the values at the position
+     */
+    public Peak get(int index) {
+        return new Peak(mz[index], intensity[index]);
+    }
+
+    /**
+     * @param minMz lower bound of the window
+     * @return position of the first peak with mz greater than or equal to minMz, {@link #size()} if there is none
+     */
+    public int fromIndex(double minMz) {
+        int low = 0;
+        int high = mz.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mz[mid] < minMz) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @param maxMz upper bound of the window
+     * @return position after the last peak with mz lower than or equal to maxMz
+     */
+    public int toIndex(double maxMz) {
+        int low = 0;
+        int high = mz.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (mz[mid] <= maxMz) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return number of peaks with minMz &lt;= mz &lt;= maxMz
+     */
+    public int countInRange(double minMz, double maxMz) {
+        return Math.max(0, toIndex(maxMz) - fromIndex(minMz));
+    }
+
+    /**
+     * @return position of the peak with exactly this mz, or a negative value if there is none
+     */
+    public int indexOf(double peakMz) {
+        int index = fromIndex(peakMz);
+        return index < mz.length && Double.compare(mz[index], peakMz) == 0 ? index : -1;
+    }
+
+    /**
+     * Sorted mz values, shared with the detector and scorers of the package. Must not be modified.
+     */
+    double[] mzArray() {
+        return mz;
+    }
+
+    /**
+     * Intensities in the order of {@link #mzArray()}, shared with the scorers of the package. Must not be modified.
+     */
+    double[] intensityArray() {
+        return intensity;
+    }
+
+    /**
+     * @return copy of the mz of the peaks in ascending order
+     */
+    public double[] toMzArray() {
+        return mz.clone();
+    }
+
+    /**
+     * @return copy of the intensity of the peaks, in the order of their mz
+     */
+    public double[] toIntensityArray() {
+        return intensity.clone();
+    }
+
+    /**
+     * @return unmodifiable set view of the peaks; peak objects are created while iterating
+     */
+    public Set<Peak> asSet() {
+        return new PeakSetView(this);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof PeakList)) return false;
+        PeakList that = (PeakList) o;
+        return Arrays.equals(mz, that.mz) && Arrays.equals(intensity, that.intensity);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * Arrays.hashCode(mz) + Arrays.hashCode(intensity);
+    }
+
+    @Override
+    public String toString() {
+        return asSet().toString();
+    }
+
+    /**
+     * Set of peaks backed by a peak list. Peaks are equal when their mz is equal, so lookups are binary searches.
+     */
+    private static final class PeakSetView extends AbstractSet<Peak> {
+
+        private final PeakList peaks;
+
+        private PeakSetView(PeakList peaks) {
+            this.peaks = peaks;
+        }
+
+        @Override
+        public Iterator<Peak> iterator() {
+            return new Iterator<>() {
+                private int next;
+
+                @Override
+                public boolean hasNext() {
+                    return next < peaks.size();
+                }
+
+                @Override
+                public Peak next() {
+                    if (next >= peaks.size()) {
+                        throw new NoSuchElementException();
+                    }
+                    return peaks.get(next++);
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return peaks.size();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return o instanceof Peak && peaks.indexOf(((Peak) o).getMz()) >= 0;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package lipid;
+
+/**
+ * Candidate annotation of a feature with its position among the candidates kept by {@link AnnotationRanker}.
+ */
+public final class RankedAnnotation {
+
+    private final Annotation annotation;
+    private final int rank;
+    private final double rankScore;
+    private final int ppmError;
+
+    /**
+     * @param annotation annotation of the feature
+     * @param rank       position among the candidates of the feature, 1 for the best one
+     * @param rankScore  combined score the candidates were ranked by
+     * @param ppmError   ppm between the mz of the feature and the mz of the lipid with the adduct, -1 if unknown
+     */
+    public RankedAnnotation(Annotation annotation, int rank, double rankScore, int ppmError) {
+        this.annotation = annotation;
+        this.rank = rank;
+        this.rankScore = rankScore;
+        this.ppmError = ppmError;
+    }
+
+    public Annotation getAnnotation() {
+        return annotation;
+    }
+
+    public int getRank() {
+        return rank;
+    }
+
+    public double getRankScore() {
+        return rankScore;
+    }
+
+    /**
+     * @return ppm error of the candidate, -1 if the adduct or the mass of the lipid is unknown
+     */
+    public int getPpmError() {
+        return ppmError;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("RankedAnnotation(#%d, %s, rankScore=%.3f, ppm=%d)",
+                rank, annotation.getLipid().getName(), rankScore, ppmError);
+    }
+}
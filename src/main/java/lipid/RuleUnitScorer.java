@@ -0,0 +1,44 @@
+package lipid;
+
+import metrics.ScoringMetrics;
+import org.drools.ruleunits.api.RuleUnit;
+import org.drools.ruleunits.api.RuleUnitInstance;
+
+import java.util.Collection;
+import java.util.ServiceLoader;
+
+/**
+ * Scorer that inserts the annotations in a new {@link LipidScoreUnit} and fires the rules of lipids.drl.
+ */
+public class RuleUnitScorer implements AnnotationScorer {
+
+    /**
+     * Rule unit generated from lipids.drl by the kie-maven-plugin
+     */
+    static final String GENERATED_RULE_UNIT = LipidScoreUnit.class.getName() + "RuleUnit";
+
+    /**
+     * Kept out of {@link LipidScoreUnit}, whose getters the generated code binds as globals of the unit.
+     *
+     * @return true if the executable model generated at build time is on the classpath. Otherwise the rule unit
+     * provider compiles lipids.drl the first time the unit is used, which takes several seconds.
+     */
+    public static boolean isPrecompiled() {
+        ServiceLoader<?> units = ServiceLoader.load(RuleUnit.class, Thread.currentThread().getContextClassLoader());
+        return units.stream().anyMatch(provider -> provider.type().getName().equals(GENERATED_RULE_UNIT));
+    }
+
+    @Override
+    public int score(Collection<Annotation> annotations) {
+        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit();
+        RuleUnitInstance<LipidScoreUnit> instance = ScoringMetrics.createInstance(lipidScoreUnit);
+        try {
+            for (Annotation annotation : annotations) {
+                lipidScoreUnit.getAnnotations().add(annotation);
+            }
+            return ScoringMetrics.fire(instance);
+        } finally {
+            instance.close();
+        }
+    }
+}
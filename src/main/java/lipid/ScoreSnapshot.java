@@ -0,0 +1,54 @@
+package lipid;
+
+import java.util.Objects;
+
+/**
+ * Immutable view of the score of an annotation: the sum of the scores and the number of scores applied, read
+ * together so that the normalized score is always consistent.
+ */
+public final class ScoreSnapshot {
+
+    private final int score;
+    private final int totalScoresApplied;
+
+    public ScoreSnapshot(int score, int totalScoresApplied) {
+        this.score = score;
+        this.totalScoresApplied = totalScoresApplied;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    public int getTotalScoresApplied() {
+        return totalScoresApplied;
+    }
+
+    /**
+     * @return score / total scores applied, NaN if no score was applied
+     */
+    public double getNormalizedScore() {
+        return (double) score / totalScoresApplied;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof ScoreSnapshot)) return false;
+        ScoreSnapshot that = (ScoreSnapshot) o;
+        return score == that.score && totalScoresApplied == that.totalScoresApplied;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(score, totalScoresApplied);
+    }
+
+    @Override
+    public String toString() {
+        return "ScoreSnapshot{" +
+                "score=" + score +
+                ", totalScoresApplied=" + totalScoresApplied +
+                '}';
+    }
+}
@@ -0,0 +1,29 @@
+package lipid;
+
+/**
+ * Implementations of the elution order scoring. Both give the same scores to the annotations.
+ */
+public enum ScoringEngine {
+
+    /**
+     * Rules of lipids.drl fired by the Drools {@link LipidScoreUnit}
+     */
+    DROOLS {
+        @Override
+        public AnnotationScorer newScorer() {
+            return new RuleUnitScorer();
+        }
+    },
+
+    /**
+     * Pure Java {@link ElutionOrderScorer}
+     */
+    NATIVE {
+        @Override
+        public AnnotationScorer newScorer() {
+            return new ElutionOrderScorer();
+        }
+    };
+
+    public abstract AnnotationScorer newScorer();
+}
@@ -1,23 +1,131 @@
 package main;
 
-import lipid.LipidScoreUnit;
-import org.drools.ruleunits.api.RuleUnitInstance;
-import org.drools.ruleunits.api.RuleUnitProvider;
+import feature.BatchScoringRunner;
+import feature.BatchScoringRunner.FileReport;
+import feature.StreamingScoringPipeline;
 
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Path;
+import java.util.ArrayList;
 import java.util.List;
 
+/**
+ * Command line batch scoring of feature tables:
+ * <pre>
+ * java main.Main [--workers N] [--batch-size N] [--rt-horizon MIN] [--output DIR] FILE_OR_DIRECTORY...
+ * </pre>
+ * Every table (or every .csv/.tsv table of a directory) is scored on its own and written as TSV to
+ * NAME.EXT.scored.tsv, next to the table or in the output directory. The wall time and the throughput of every table
+ * and of the whole batch are reported on the standard output.
+ * <p>
+ * By default the RT horizon is infinite: every pair of annotations of a table is scored and the whole table is kept
+ * in memory. A finite --rt-horizon bounds the memory of every worker, but annotations further apart than the horizon
+ * are not paired and the tables must be sorted by retention time; a table that is not fails.
+ */
 public class Main {
 
-    public static void main(String[] args) {
-        LipidScoreUnit lipidScoreUnit = new LipidScoreUnit();
+    private static final String USAGE = "Usage: java main.Main [--workers N] [--batch-size N] [--rt-horizon MIN]"
+            + " [--output DIR] FILE_OR_DIRECTORY...\n"
+            + "  --rt-horizon MIN  retention time after which an annotation is final (default: infinite, every pair"
+            + " is scored\n"
+            + "                    and the whole table is kept in memory; a finite horizon bounds the memory but does"
+            + " not pair\n"
+            + "                    annotations further apart than MIN and needs tables sorted by retention time)";
 
-        RuleUnitInstance<LipidScoreUnit> instance = RuleUnitProvider.get().createRuleUnitInstance(lipidScoreUnit);
+    public static void main(String[] args) {
+        int status = run(args, System.out, System.err);
+        if (status != 0) {
+            System.exit(status);
+        }
+    }
 
+    /**
+     * @return exit status: 0 if every table was scored, 1 if some failed, 2 if the arguments are wrong
+     */
+    static int run(String[] args, PrintStream out, PrintStream err) {
+        int workers = Runtime.getRuntime().availableProcessors();
+        int batchSize = StreamingScoringPipeline.DEFAULT_BATCH_SIZE;
+        double rtHorizon = Double.POSITIVE_INFINITY;
+        Path outputDirectory = null;
+        List<Path> paths = new ArrayList<>();
         try {
-            instance.fire();
+            for (int i = 0; i < args.length; i++) {
+                switch (args[i]) {
+                    case "--workers":
+                        workers = Integer.parseInt(value(args, ++i));
+                        break;
+                    case "--batch-size":
+                        batchSize = Integer.parseInt(value(args, ++i));
+                        break;
+                    case "--rt-horizon":
+                        rtHorizon = Double.parseDouble(value(args, ++i));
+                        break;
+                    case "--output":
+                        outputDirectory = Path.of(value(args, ++i));
+                        break;
+                    default:
+                        if (args[i].startsWith("--")) {
+                            throw new IllegalArgumentException("Unknown option " + args[i]);
+                        }
+                        paths.add(Path.of(args[i]));
+                }
+            }
+            if (paths.isEmpty()) {
+                throw new IllegalArgumentException("No feature table given");
+            }
+            BatchScoringRunner runner = new BatchScoringRunner(workers, batchSize, rtHorizon, outputDirectory);
+            List<Path> inputs = BatchScoringRunner.inputFiles(paths);
+            runner.checkOutputs(inputs);
+            return score(runner, inputs, workers, out, err);
+        } catch (IllegalArgumentException e) {
+            err.println(e.getMessage());
+            err.println(USAGE);
+            return 2;
+        } catch (IOException e) {
+            err.println("Cannot list the feature tables: " + e.getMessage());
+            return 1;
+        }
+    }
 
-        } finally {
-            instance.close();
+    private static String value(String[] args, int index) {
+        if (index >= args.length) {
+            throw new IllegalArgumentException("Missing value of " + args[index - 1]);
+        }
+        return args[index];
+    }
+
+    private static int score(BatchScoringRunner runner, List<Path> inputs, int workers, PrintStream out,
+                             PrintStream err) {
+        out.printf("Scoring %d feature tables on %d workers%n", inputs.size(), workers);
+        long start = System.nanoTime();
+        List<FileReport> reports;
+        try {
+            reports = runner.run(inputs, report -> {
+                if (report.isSuccessful()) {
+                    out.printf("%s: %d features in %.1f ms (%.0f features/s) -> %s%n", report.getInput(),
+                            report.getFeatures(), report.getWallNanos() / 1e6, report.getFeaturesPerSecond(),
+                            report.getOutput());
+                } else {
+                    err.printf("%s: failed: %s%n", report.getInput(), report.getError().getMessage());
+                }
+            });
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            err.println("Interrupted");
+            return 1;
+        }
+        long wallNanos = System.nanoTime() - start;
+        long features = 0;
+        int failed = 0;
+        for (FileReport report : reports) {
+            features += report.getFeatures();
+            if (!report.isSuccessful()) {
+                failed++;
+            }
         }
+        out.printf("Total: %d features from %d tables in %.1f s (%.0f features/s), %d failed%n", features,
+                reports.size(), wallNanos / 1e9, wallNanos > 0 ? features * 1e9 / wallNanos : 0, failed);
+        return failed == 0 ? 0 : 1;
     }
 }
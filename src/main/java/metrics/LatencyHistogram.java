@@ -0,0 +1,104 @@
+package metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free histogram of durations in nanoseconds, with every power of two split in {@value #SUB_BUCKETS} linear
+ * sub-buckets as in HdrHistogram. Durations below {@value #SUB_BUCKETS} ns are counted exactly and the others in
+ * sub-buckets of 1/{@value #SUB_BUCKETS} of their power of two, so a percentile is reported as the middle of its
+ * sub-bucket, within 1/{@value #HALF_RESOLUTION} (about 1.6%) of the recorded duration.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int HALF_RESOLUTION = 2 * SUB_BUCKETS;
+    /**
+     * Exact values below SUB_BUCKETS, then SUB_BUCKETS sub-buckets for every power of two up to 2^62
+     */
+    private static final int BUCKETS = (63 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final LongAdder totalNanos = new LongAdder();
+
+    /**
+     * @param nanos duration, negative values are recorded as 0
+     */
+    public void record(long nanos) {
+        long value = Math.max(nanos, 0);
+        buckets.incrementAndGet(bucket(value));
+        count.increment();
+        totalNanos.add(value);
+    }
+
+    /**
+     * @return the bucket of a non-negative value
+     */
+    static int bucket(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & (SUB_BUCKETS - 1));
+    }
+
+    /**
+     * @return the middle of the values of the bucket
+     */
+    static long middle(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = (bucket >>> SUB_BUCKET_BITS) - 1;
+        long lowest = (long) (SUB_BUCKETS + (bucket & (SUB_BUCKETS - 1))) << shift;
+        return lowest + ((1L << shift) - 1) / 2;
+    }
+
+    public long getCount() {
+        return count.sum();
+    }
+
+    public long getTotalNanos() {
+        return totalNanos.sum();
+    }
+
+    public double getMeanNanos() {
+        long n = count.sum();
+        return n == 0 ? 0 : (double) totalNanos.sum() / n;
+    }
+
+    /**
+     * @param quantile between 0 and 1, e.g. 0.99
+     * @return the middle (ns) of the sub-bucket holding the quantile, 0 if nothing was recorded
+     */
+    public long getPercentileNanos(double quantile) {
+        long[] counts = new long[BUCKETS];
+        long total = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            counts[b] = buckets.get(b);
+            total += counts[b];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = Math.max(1, (long) Math.ceil(quantile * total));
+        long seen = 0;
+        for (int b = 0; b < BUCKETS; b++) {
+            seen += counts[b];
+            if (seen >= rank) {
+                return middle(b);
+            }
+        }
+        return middle(BUCKETS - 1);
+    }
+
+    public void reset() {
+        for (int b = 0; b < BUCKETS; b++) {
+            buckets.set(b, 0);
+        }
+        count.reset();
+        totalNanos.reset();
+    }
+}
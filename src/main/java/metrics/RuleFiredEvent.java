@@ -0,0 +1,19 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of the firing of one rule
+ */
+@Name("lipid.RuleFired")
+@Label("Rule Fired")
+@Category("Lipid Scoring")
+@Description("Execution of the consequence of one rule of lipids.drl")
+class RuleFiredEvent extends jdk.jfr.Event {
+
+    @Label("Rule")
+    String rule;
+}
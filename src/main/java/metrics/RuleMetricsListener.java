@@ -0,0 +1,55 @@
+package metrics;
+
+import org.kie.api.event.rule.AfterMatchFiredEvent;
+import org.kie.api.event.rule.BeforeMatchFiredEvent;
+import org.kie.api.event.rule.DefaultAgendaEventListener;
+import org.kie.api.event.rule.MatchCancelledEvent;
+import org.kie.api.event.rule.MatchCreatedEvent;
+
+/**
+ * Agenda listener of one rule unit instance that times every rule firing. Rules of an instance fire on one thread at
+ * a time, so the start of the current firing is a plain field.
+ */
+class RuleMetricsListener extends DefaultAgendaEventListener {
+
+    private long firingStart;
+    private RuleFiredEvent event;
+
+    @Override
+    public void matchCreated(MatchCreatedEvent matchEvent) {
+        if (ScoringMetrics.isEnabled()) {
+            ScoringMetrics.recordMatchCreated();
+        }
+    }
+
+    @Override
+    public void matchCancelled(MatchCancelledEvent matchEvent) {
+        if (ScoringMetrics.isEnabled()) {
+            ScoringMetrics.recordMatchCancelled();
+        }
+    }
+
+    @Override
+    public void beforeMatchFired(BeforeMatchFiredEvent matchEvent) {
+        event = new RuleFiredEvent();
+        event.begin();
+        firingStart = System.nanoTime();
+    }
+
+    @Override
+    public void afterMatchFired(AfterMatchFiredEvent matchEvent) {
+        long nanos = System.nanoTime() - firingStart;
+        String rule = matchEvent.getMatch().getRule().getName();
+        if (ScoringMetrics.isEnabled()) {
+            ScoringMetrics.recordRuleFired(rule, nanos);
+        }
+        if (event != null) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.rule = rule;
+                event.commit();
+            }
+            event = null;
+        }
+    }
+}
@@ -0,0 +1,19 @@
+package metrics;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * JFR event of one {@code fire()} of a rule unit instance
+ */
+@Name("lipid.RuleUnitFire")
+@Label("Rule Unit Fire")
+@Category("Lipid Scoring")
+@Description("Firing of the rules of a lipid score unit")
+class RuleUnitFireEvent extends jdk.jfr.Event {
+
+    @Label("Rules Fired")
+    int rulesFired;
+}
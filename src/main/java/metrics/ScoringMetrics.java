@@ -0,0 +1,218 @@
+package metrics;
+
+import org.drools.ruleunits.api.RuleUnit;
+import org.drools.ruleunits.api.RuleUnitData;
+import org.drools.ruleunits.api.RuleUnitInstance;
+import org.drools.ruleunits.api.RuleUnitProvider;
+import org.drools.ruleunits.api.conf.RuleConfig;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Process-wide counters of the scoring hot paths: rule firings per rule, latency of {@code fire()} and of every rule,
+ * rule matches and the peak comparisons of adduct detection. Metrics are disabled by default, or enabled with the
+ * system property {@code lipid.metrics=true}. When disabled, the adduct detection hook is a single read of a boolean,
+ * while {@link #fire(RuleUnitInstance)} and {@link #createInstance(RuleUnitData)} also create a JFR event to ask
+ * whether a recording enables it; the event does not escape, so the JIT removes the allocation once the method is
+ * compiled. The counters are published through JMX by {@link #registerMBean()} and, while a JFR recording enables
+ * them, as the {@link RuleUnitFireEvent} and {@link RuleFiredEvent} events.
+ * <p>
+ * The per rule counters and the matches come from a listener attached when an instance is created, and only if metrics
+ * or the {@link RuleFiredEvent} are enabled at that time, so that instances created while they are off carry no
+ * listener. Enabling the metrics later only affects the rule counters of new instances: long-lived ones, such as the
+ * pool of a {@link lipid.LipidScoringService} or an {@link lipid.IncrementalLipidScorer}, only record the
+ * {@code fire()} latency. Enable the metrics before creating them to count their rules.
+ */
+public final class ScoringMetrics {
+
+    public static final String OBJECT_NAME = "lipid:type=ScoringMetrics";
+
+    private static volatile boolean enabled = Boolean.getBoolean("lipid.metrics");
+
+    private static final LatencyHistogram FIRE_LATENCY = new LatencyHistogram();
+    private static final LongAdder RULES_FIRED = new LongAdder();
+    private static final Map<String, LongAdder> RULE_FIRE_COUNTS = new ConcurrentHashMap<>();
+    private static final Map<String, LatencyHistogram> RULE_LATENCIES = new ConcurrentHashMap<>();
+    private static final LongAdder MATCHES_CREATED = new LongAdder();
+    private static final LongAdder MATCHES_CANCELLED = new LongAdder();
+    private static final LongAdder ADDUCT_DETECTIONS = new LongAdder();
+    private static final LongAdder ADDUCTS_DETECTED = new LongAdder();
+    private static final LongAdder PEAK_COMPARISONS = new LongAdder();
+
+    private ScoringMetrics() {
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param enabled whether to record the metrics; the rule counters are only recorded by the instances created
+     *                afterwards, see {@link #createInstance(RuleUnitData)}
+     */
+    public static void setEnabled(boolean enabled) {
+        ScoringMetrics.enabled = enabled;
+    }
+
+    /**
+     * Create an instance of a rule unit, with the listener of the rule metrics attached if metrics or the
+     * {@link RuleFiredEvent} are enabled. The listener checks whether metrics are enabled at every rule firing, but an
+     * instance created without it never records rule metrics.
+     *
+     * @param ruleUnitData data of the rule unit
+     * @return the new instance
+     */
+    public static <T extends RuleUnitData> RuleUnitInstance<T> createInstance(T ruleUnitData) {
+        return createInstance(RuleUnitProvider.get().getRuleUnit(ruleUnitData), ruleUnitData);
+    }
+
+    /**
+     * Same as {@link #createInstance(RuleUnitData)} from a rule unit that was already built.
+     *
+     * @param ruleUnit     compiled rule unit
+     * @param ruleUnitData data of the new instance
+     * @return the new instance
+     */
+    public static <T extends RuleUnitData> RuleUnitInstance<T> createInstance(RuleUnit<T> ruleUnit, T ruleUnitData) {
+        if (!enabled && !new RuleFiredEvent().isEnabled()) {
+            return ruleUnit.createInstance(ruleUnitData);
+        }
+        RuleConfig config = RuleUnitProvider.get().newRuleConfig();
+        config.getAgendaEventListeners().add(new RuleMetricsListener());
+        return ruleUnit.createInstance(ruleUnitData, config);
+    }
+
+    /**
+     * Fire the rules of an instance, recording its latency when metrics or the {@link RuleUnitFireEvent} are enabled.
+     *
+     * @param instance rule unit instance
+     * @return number of rules fired
+     */
+    public static int fire(RuleUnitInstance<?> instance) {
+        RuleUnitFireEvent event = new RuleUnitFireEvent();
+        boolean record = enabled;
+        if (!record && !event.isEnabled()) {
+            return instance.fire();
+        }
+        long start = System.nanoTime();
+        event.begin();
+        int fired = instance.fire();
+        event.end();
+        if (record) {
+            FIRE_LATENCY.record(System.nanoTime() - start);
+        }
+        if (event.shouldCommit()) {
+            event.rulesFired = fired;
+            event.commit();
+        }
+        return fired;
+    }
+
+    static void recordRuleFired(String rule, long nanos) {
+        RULES_FIRED.increment();
+        RULE_FIRE_COUNTS.computeIfAbsent(rule, name -> new LongAdder()).increment();
+        RULE_LATENCIES.computeIfAbsent(rule, name -> new LatencyHistogram()).record(nanos);
+    }
+
+    static void recordMatchCreated() {
+        MATCHES_CREATED.increment();
+    }
+
+    static void recordMatchCancelled() {
+        MATCHES_CANCELLED.increment();
+    }
+
+    /**
+     * Record one adduct detection; a no-op while metrics are disabled.
+     *
+     * @param peakComparisons number of grouped peaks compared with the reference
+     * @param detected        whether an adduct was detected
+     */
+    public static void recordAdductDetection(int peakComparisons, boolean detected) {
+        if (enabled) {
+            ADDUCT_DETECTIONS.increment();
+            PEAK_COMPARISONS.add(peakComparisons);
+            if (detected) {
+                ADDUCTS_DETECTED.increment();
+            }
+        }
+    }
+
+    public static LatencyHistogram getFireLatency() {
+        return FIRE_LATENCY;
+    }
+
+    /**
+     * @return latency of the rules that have fired, by rule name
+     */
+    public static Map<String, LatencyHistogram> getRuleLatencies() {
+        return new TreeMap<>(RULE_LATENCIES);
+    }
+
+    /**
+     * @return number of firings by rule name
+     */
+    public static Map<String, Long> getRuleFireCounts() {
+        Map<String, Long> counts = new TreeMap<>();
+        RULE_FIRE_COUNTS.forEach((rule, count) -> counts.put(rule, count.sum()));
+        return counts;
+    }
+
+    public static long getRulesFired() {
+        return RULES_FIRED.sum();
+    }
+
+    public static long getMatchesCreated() {
+        return MATCHES_CREATED.sum();
+    }
+
+    public static long getMatchesCancelled() {
+        return MATCHES_CANCELLED.sum();
+    }
+
+    public static long getAdductDetections() {
+        return ADDUCT_DETECTIONS.sum();
+    }
+
+    public static long getAdductsDetected() {
+        return ADDUCTS_DETECTED.sum();
+    }
+
+    public static long getPeakComparisons() {
+        return PEAK_COMPARISONS.sum();
+    }
+
+    public static void reset() {
+        FIRE_LATENCY.reset();
+        RULES_FIRED.reset();
+        RULE_FIRE_COUNTS.clear();
+        RULE_LATENCIES.clear();
+        MATCHES_CREATED.reset();
+        MATCHES_CANCELLED.reset();
+        ADDUCT_DETECTIONS.reset();
+        ADDUCTS_DETECTED.reset();
+        PEAK_COMPARISONS.reset();
+    }
+
+    /**
+     * Register the metrics in the platform MBean server as {@value #OBJECT_NAME}, if not already registered.
+     */
+    public static void registerMBean() {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.registerMBean(new ScoringMetricsBean(), new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already published
+        } catch (JMException e) {
+            throw new IllegalStateException("Cannot register the scoring metrics", e);
+        }
+    }
+}
@@ -0,0 +1,88 @@
+package metrics;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Implementation of the MXBean, reading the process-wide {@link ScoringMetrics}
+ */
+class ScoringMetricsBean implements ScoringMetricsMXBean {
+
+    @Override
+    public boolean isEnabled() {
+        return ScoringMetrics.isEnabled();
+    }
+
+    @Override
+    public void setEnabled(boolean enabled) {
+        ScoringMetrics.setEnabled(enabled);
+    }
+
+    @Override
+    public long getFireCount() {
+        return ScoringMetrics.getFireLatency().getCount();
+    }
+
+    @Override
+    public double getFireLatencyMeanMicros() {
+        return ScoringMetrics.getFireLatency().getMeanNanos() / 1000d;
+    }
+
+    @Override
+    public double getFireLatencyP50Micros() {
+        return ScoringMetrics.getFireLatency().getPercentileNanos(0.5) / 1000d;
+    }
+
+    @Override
+    public double getFireLatencyP99Micros() {
+        return ScoringMetrics.getFireLatency().getPercentileNanos(0.99) / 1000d;
+    }
+
+    @Override
+    public long getRulesFired() {
+        return ScoringMetrics.getRulesFired();
+    }
+
+    @Override
+    public Map<String, Long> getRuleFireCounts() {
+        return ScoringMetrics.getRuleFireCounts();
+    }
+
+    @Override
+    public Map<String, Double> getRuleLatencyP99Micros() {
+        Map<String, Double> latencies = new TreeMap<>();
+        ScoringMetrics.getRuleLatencies().forEach((rule, histogram) ->
+                latencies.put(rule, histogram.getPercentileNanos(0.99) / 1000d));
+        return latencies;
+    }
+
+    @Override
+    public long getMatchesCreated() {
+        return ScoringMetrics.getMatchesCreated();
+    }
+
+    @Override
+    public long getMatchesCancelled() {
+        return ScoringMetrics.getMatchesCancelled();
+    }
+
+    @Override
+    public long getAdductDetections() {
+        return ScoringMetrics.getAdductDetections();
+    }
+
+    @Override
+    public long getAdductsDetected() {
+        return ScoringMetrics.getAdductsDetected();
+    }
+
+    @Override
+    public long getPeakComparisons() {
+        return ScoringMetrics.getPeakComparisons();
+    }
+
+    @Override
+    public void reset() {
+        ScoringMetrics.reset();
+    }
+}
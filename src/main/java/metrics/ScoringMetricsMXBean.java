@@ -0,0 +1,39 @@
+package metrics;
+
+import java.util.Map;
+
+/**
+ * JMX view of {@link ScoringMetrics}. Latencies are in microseconds.
+ */
+public interface ScoringMetricsMXBean {
+
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    long getFireCount();
+
+    double getFireLatencyMeanMicros();
+
+    double getFireLatencyP50Micros();
+
+    double getFireLatencyP99Micros();
+
+    long getRulesFired();
+
+    Map<String, Long> getRuleFireCounts();
+
+    Map<String, Double> getRuleLatencyP99Micros();
+
+    long getMatchesCreated();
+
+    long getMatchesCancelled();
+
+    long getAdductDetections();
+
+    long getAdductsDetected();
+
+    long getPeakComparisons();
+
+    void reset();
+}
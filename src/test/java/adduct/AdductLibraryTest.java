@@ -0,0 +1,101 @@
+package adduct;
+
+import lipid.AdductDetector;
+import lipid.IoniationMode;
+import lipid.PeakList;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class AdductLibraryTest {
+
+    @Test
+    public void shouldLoadTheDefaultAdductsInTheirOriginalOrder() {
+        List<String> positive = Arrays.asList("[M+H]+", "[M+2H]2+", "[M+Na]+", "[M+K]+", "[M+NH4]+", "[M+H-H2O]+",
+                "[M+H+NH4]2+", "[2M+H]+", "[2M+Na]+");
+        List<String> negative = Arrays.asList("[M-H]-", "[M+Cl]−", "[M+HCOOH-H]−", "[M-H-H2O]−", "[2M-H]−", "[M-2H]2−");
+
+        assertEquals(positive, List.copyOf(AdductList.MAPMZPOSITIVEADDUCTS.keySet()));
+        assertEquals(negative, List.copyOf(AdductList.MAPMZNEGATIVEADDUCTS.keySet()));
+        assertEquals(1.007276d * 2, AdductList.MAPMZNEGATIVEADDUCTS.get("[M-2H]2−"), 0d);
+        assertEquals(positive.size() + negative.size(), AdductList.size());
+        for (int id = 0; id < AdductList.size(); id++) {
+            String expected = id < positive.size() ? positive.get(id) : negative.get(id - positive.size());
+            assertEquals(expected, AdductList.getDescriptor(id).getName());
+        }
+    }
+
+    @Test
+    public void shouldLookUpNamesWithEitherMinusSign() {
+        AdductDescriptor chloride = AdductList.getDescriptor("[M+Cl]−");
+
+        assertSame(chloride, AdductList.getDescriptor("[M+Cl]-"));
+        assertSame(AdductList.getDescriptor("[M-H]-"), AdductList.getDescriptor("[M−H]−"));
+        assertEquals("[M+Cl]−", chloride.getName());
+        assertNull(AdductList.getDescriptor("[M+Br]-"));
+        assertNull(AdductList.getDescriptor((String) null));
+    }
+
+    @Test
+    public void shouldCompileARunSpecificLibraryIntoDenseArrays() throws IOException {
+        StringBuilder file = new StringBuilder("# run specific adducts\n\n");
+        file.append("[M-H]-\tNEGATIVE\t1.007276\n");
+        file.append("[M+H]+\tPOSITIVE\t-1.007276\n");
+        file.append("[M+Na]+\tPOSITIVE\t-22.989218\n");
+        file.append("[M-2H]2-\tnegative\t2.014552\t2\n");
+        for (int i = 0; i < 50; i++) {
+            file.append("[M+X").append(i).append("]+\tPOSITIVE\t").append(-100 - i).append('\n');
+        }
+        AdductLibrary library = AdductLibrary.load(new StringReader(file.toString()));
+
+        assertEquals(54, library.size());
+        assertEquals(52, library.size(IoniationMode.POSITIVE));
+        assertEquals(2, library.getDescriptors(IoniationMode.NEGATIVE).length);
+        AdductDescriptor doublyDeprotonated = library.getDescriptor("[M-2H]2−");
+        assertEquals(3, doublyDeprotonated.getId());
+        assertEquals(2, doublyDeprotonated.getCharge());
+        for (int id = 0; id < library.size(); id++) {
+            AdductDescriptor adduct = library.getDescriptor(id);
+            assertEquals(id, adduct.getId());
+            assertEquals(adduct.toMonoisotopicMass(700.5), library.toMonoisotopicMass(700.5, id), 0d);
+            assertEquals(adduct.toMz(699.5), library.toMz(699.5, id), 0d);
+        }
+
+        // [M+H]+ and [M+Na]+ of the same mass are explained by the library
+        double mass = 760.5851;
+        double protonated = library.getDescriptor("[M+H]+").toMz(mass);
+        PeakList peaks = PeakList.of(new double[]{protonated, library.getDescriptor("[M+Na]+").toMz(mass)},
+                new double[]{1, 1});
+        AdductDetector detector = new AdductDetector(library, IoniationMode.POSITIVE,
+                AdductDetector.DEFAULT_PPM_TOLERANCE, null);
+        assertSame(library.getDescriptor("[M+H]+"), detector.detect(protonated, peaks));
+    }
+
+    @Test
+    public void shouldReportTheMalformedLine() {
+        assertMalformed("[M+H]+\tPOSITIVE\n", "Line 1");
+        assertMalformed("[M+H]+\tPOSITIVE\t-1.007276\n[M+H]+\tNEUTRAL\t0\n", "Line 2");
+        assertMalformed("[M+H]+\tPOSITIVE\tabc\n", "Line 1");
+        assertMalformed("[M+H]+\tPOSITIVE\t-1.007276\t0\n", "Line 1");
+        // Same name once normalized
+        assertMalformed("[M-H]-\tNEGATIVE\t1.007276\n[M−H]−\tNEGATIVE\t1.007276\n", "Line 2");
+    }
+
+    private static void assertMalformed(String content, String expectedLine) {
+        try {
+            AdductLibrary.load(new StringReader(content));
+            fail("Expected a malformed adduct file: " + content);
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith(expectedLine));
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package adduct;
+
+import lipid.IoniationMode;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class AdductTest {
+
+    @Test
+    public void shouldParseChargeAndMultimerOnce() {
+        AdductDescriptor doublyCharged = AdductList.getDescriptor("[M+2H]2+");
+        AdductDescriptor dimer = AdductList.getDescriptor("[2M+Na]+");
+
+        assertNotNull(doublyCharged);
+        assertEquals(2, doublyCharged.getCharge());
+        assertEquals(1, doublyCharged.getMultimer());
+        assertEquals(IoniationMode.POSITIVE, doublyCharged.getPolarity());
+
+        assertNotNull(dimer);
+        assertEquals(1, dimer.getCharge());
+        assertEquals(2, dimer.getMultimer());
+        assertEquals(IoniationMode.NEGATIVE, AdductList.getDescriptor("[M-H]-").getPolarity());
+    }
+
+    @Test
+    public void shouldConvertTheSameWithNameDescriptorAndId() {
+        for (int id = 0; id < AdductList.size(); id++) {
+            AdductDescriptor adduct = AdductList.getDescriptor(id);
+            double mass = 699.4927d;
+            double mz = Adduct.getMzFromMonoisotopicMass(mass, adduct.getName());
+
+            assertEquals(mz, Adduct.getMzFromMonoisotopicMass(mass, adduct), 0d);
+            assertEquals(mz, Adduct.getMzFromMonoisotopicMass(mass, id), 0d);
+            assertEquals(mass, Adduct.getMonoisotopicMassFromMZ(mz, adduct.getName()), 1e-9);
+            assertEquals(mass, Adduct.getMonoisotopicMassFromMZ(mz, adduct), 1e-9);
+            assertEquals(mass, Adduct.getMonoisotopicMassFromMZ(mz, id), 1e-9);
+        }
+    }
+
+    @Test
+    public void shouldReturnNullForUnknownAdduct() {
+        assertNull(AdductList.getDescriptor("[M+Xe]+"));
+        assertNull(Adduct.getMonoisotopicMassFromMZ(700.5d, "[M+Xe]+"));
+        assertNull(Adduct.getMzFromMonoisotopicMass(699.5d, "[M+Xe]+"));
+    }
+}
@@ -0,0 +1,126 @@
+package adduct;
+
+import lipid.AdductDetector;
+import lipid.IoniationMode;
+import lipid.PeakList;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class NeutralMassCacheTest {
+
+    private static final AdductDescriptor PROTONATED = AdductList.getDescriptor("[M+H]+");
+    private static final AdductDescriptor SODIUM = AdductList.getDescriptor("[M+Na]+");
+
+    @Test
+    public void shouldReturnTheComputedMassAndCountHits() {
+        NeutralMassCache cache = new NeutralMassCache(16, NeutralMassCache.Eviction.LRU);
+
+        double mass = cache.toMonoisotopicMass(760.5851, PROTONATED);
+        assertEquals(Adduct.getMonoisotopicMassFromMZ(760.5851, "[M+H]+"), mass, 0d);
+        assertEquals(mass, cache.toMonoisotopicMass(760.5851, PROTONATED.getId()), 0d);
+        // Same mz, other adduct
+        assertEquals(SODIUM.toMonoisotopicMass(760.5851), Adduct.getMonoisotopicMassFromMZ(760.5851, SODIUM, cache), 0d);
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(2, cache.size());
+        assertEquals(1d / 3, cache.getHitRate(), 1e-9);
+
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.getHitCount());
+    }
+
+    @Test
+    public void shouldEvictTheLeastRecentlyUsedEntry() {
+        NeutralMassCache cache = new NeutralMassCache(2, NeutralMassCache.Eviction.LRU, 1);
+        cache.toMonoisotopicMass(100, PROTONATED);
+        cache.toMonoisotopicMass(200, PROTONATED);
+        cache.toMonoisotopicMass(100, PROTONATED);
+        cache.toMonoisotopicMass(300, PROTONATED);
+
+        assertEquals(1, cache.getEvictionCount());
+        cache.toMonoisotopicMass(100, PROTONATED);
+        assertEquals(2, cache.getHitCount());
+        cache.toMonoisotopicMass(200, PROTONATED);
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void shouldEvictTheOldestEntry() {
+        NeutralMassCache cache = new NeutralMassCache(2, NeutralMassCache.Eviction.FIFO, 1);
+        cache.toMonoisotopicMass(100, PROTONATED);
+        cache.toMonoisotopicMass(200, PROTONATED);
+        cache.toMonoisotopicMass(100, PROTONATED);
+        cache.toMonoisotopicMass(300, PROTONATED);
+
+        assertEquals(1, cache.getEvictionCount());
+        cache.toMonoisotopicMass(200, PROTONATED);
+        assertEquals(2, cache.getHitCount());
+        cache.toMonoisotopicMass(100, PROTONATED);
+        assertEquals(2, cache.getHitCount());
+    }
+
+    @Test
+    public void shouldStayCorrectWhenSharedByThreads() throws InterruptedException {
+        NeutralMassCache cache = new NeutralMassCache(256, NeutralMassCache.Eviction.LRU, 4);
+        AdductDescriptor[] adducts = AdductList.getDescriptors(IoniationMode.POSITIVE);
+        AtomicInteger errors = new AtomicInteger();
+        List<Thread> threads = new ArrayList<>();
+        for (int t = 0; t < 8; t++) {
+            long seed = t;
+            threads.add(new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < 50000; i++) {
+                    double mz = 400 + random.nextInt(300) * 0.5;
+                    AdductDescriptor adduct = adducts[random.nextInt(adducts.length)];
+                    if (cache.toMonoisotopicMass(mz, adduct) != adduct.toMonoisotopicMass(mz)) {
+                        errors.incrementAndGet();
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertEquals(0, errors.get());
+        assertEquals(8 * 50000, cache.getHitCount() + cache.getMissCount());
+        assertEquals(256, cache.size());
+    }
+
+    @Test
+    public void shouldDetectTheSameAdductsWithACache() {
+        NeutralMassCache cache = new NeutralMassCache(64, NeutralMassCache.Eviction.LRU);
+        AdductDetector cached = new AdductDetector(IoniationMode.POSITIVE, AdductDetector.DEFAULT_PPM_TOLERANCE, cache);
+        AdductDetector uncached = AdductDetector.forMode(IoniationMode.POSITIVE);
+        AdductDescriptor[] adducts = AdductList.getDescriptors(IoniationMode.POSITIVE);
+        Random random = new Random(3);
+        for (int i = 0; i < 500; i++) {
+            double mass = 500 + random.nextDouble() * 500;
+            double referenceMz = adducts[random.nextInt(adducts.length)].toMz(mass);
+            double otherMz = random.nextBoolean()
+                    ? adducts[random.nextInt(adducts.length)].toMz(mass)
+                    : 300 + random.nextDouble() * 900;
+            PeakList peaks = PeakList.of(new double[]{referenceMz, otherMz}, new double[]{1, 1});
+
+            assertSame(uncached.detect(referenceMz, peaks), cached.detect(referenceMz, peaks));
+            // A second detection of the same peaks only reads the cache
+            assertSame(uncached.detect(referenceMz, peaks), cached.detect(referenceMz, peaks));
+        }
+        assertSame(cache, cached.getCache());
+        assertTrue(cache.getHitCount() > 0);
+    }
+}
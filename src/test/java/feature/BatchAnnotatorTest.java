@@ -0,0 +1,82 @@
+package feature;
+
+import adduct.AdductDescriptor;
+import adduct.AdductLibrary;
+import adduct.AdductList;
+import lipid.AdductDetector;
+import lipid.Annotation;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.LipidType;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class BatchAnnotatorTest {
+
+    private static final Lipid LIPID = new Lipid(1, "PC 34:1", "C42H82NO8P", LipidType.PC, 34, 1);
+
+    @Test
+    public void shouldDetectTheSameAdductsAsOneAnnotationAtATime() {
+        Random random = new Random(5);
+        for (IoniationMode ionMode : IoniationMode.values()) {
+            AdductDescriptor[] adducts = AdductList.getDescriptors(ionMode);
+            // More features than one block of the detector
+            FeatureColumns columns = new FeatureColumns();
+            for (int feature = 0; feature < 3000; feature++) {
+                double neutralMass = 300 + random.nextDouble() * 900;
+                double mz = adducts[random.nextInt(adducts.length)].toMz(neutralMass);
+                int peaks = random.nextInt(8);
+                double[] peakMz = new double[peaks];
+                double[] peakIntensity = new double[peaks];
+                for (int i = 0; i < peaks; i++) {
+                    peakMz[i] = random.nextBoolean()
+                            ? adducts[random.nextInt(adducts.length)].toMz(neutralMass) * (1 + (random.nextDouble() - 0.5) * 3e-5)
+                            : 150 + random.nextDouble() * 1500;
+                    peakIntensity[i] = random.nextDouble() * 1e6;
+                }
+                columns.add(mz, random.nextDouble() * 20, 1e6, LIPID.getCompoundId(), peakMz, peakIntensity);
+            }
+
+            AnnotatedFeatures annotated = new BatchAnnotator(ionMode).annotate(columns);
+
+            assertEquals(columns.size(), annotated.size());
+            assertTrue(annotated.detectedCount() > 0);
+            for (int feature = 0; feature < columns.size(); feature++) {
+                Annotation annotation = annotated.toAnnotation(feature, LIPID);
+                Annotation oneByOne = new Annotation(LIPID, annotation.getMz(), annotation.getIntensity(),
+                        annotation.getRtMin(), annotation.getPeaks(), ionMode);
+                assertEquals(oneByOne.getAdduct(), annotation.getAdduct());
+                AdductDescriptor adduct = annotated.adduct(feature);
+                assertEquals(oneByOne.getAdduct(), adduct == null ? null : adduct.getName());
+            }
+        }
+    }
+
+    @Test
+    public void shouldResolveTheIdsInTheLibraryOfTheDetector() throws IOException {
+        // [M+H]+ has id 1 here but id 0 in AdductList
+        AdductLibrary library = AdductLibrary.load(new StringReader(
+                "[M+Na]+\tPOSITIVE\t-22.989218\n[M+H]+\tPOSITIVE\t-1.007276\n"));
+        double mass = 759.5778;
+        double protonated = library.getDescriptor("[M+H]+").toMz(mass);
+        FeatureColumns columns = new FeatureColumns();
+        columns.add(protonated, 10, 1e6, LIPID.getCompoundId(),
+                new double[]{protonated, library.getDescriptor("[M+Na]+").toMz(mass)}, new double[]{1e6, 5e5});
+        AdductDetector detector = new AdductDetector(library, IoniationMode.POSITIVE,
+                AdductDetector.DEFAULT_PPM_TOLERANCE, null);
+
+        AnnotatedFeatures annotated = new BatchAnnotator(IoniationMode.POSITIVE, detector).annotate(columns);
+
+        assertSame(library, annotated.getLibrary());
+        assertEquals(1, annotated.adductId(0));
+        assertSame(library.getDescriptor("[M+H]+"), annotated.adduct(0));
+        assertEquals("[M+H]+", annotated.toAnnotation(0, LIPID).getAdduct());
+    }
+}
@@ -0,0 +1,163 @@
+package feature;
+
+import feature.BatchScoringRunner.FileReport;
+import lipid.Annotation;
+import lipid.RuleUnitScorer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class BatchScoringRunnerTest {
+
+    private static final String TABLE = String.join("\n",
+            "mz\trt\tintensity\tlipid_id\tlipid_name\tformula\tlipid_type\tcarbons\tdouble_bonds",
+            "718.5381\t5.5\t80000\t5\tPE 34:1\tC39H76NO8P\tPE\t34\t1",
+            "760.5851\t6.5\t80000\t4\tPC 34:1\tC42H82NO8P\tPC\t34\t1",
+            "913.822\t8\t10E5\t3\tTG 56:3\tC59H108O6\tTG\t56\t3",
+            "857.7593\t9\t10E7\t2\tTG 52:3\tC55H100O6\tTG\t52\t3",
+            "885.79056\t10\t10E6\t1\tTG 54:3\tC57H104O6\tTG\t54\t3",
+            "");
+
+    private Path folder;
+
+    @Before
+    public void createFolder() throws IOException {
+        folder = Files.createTempDirectory("batch");
+    }
+
+    @After
+    public void deleteFolder() throws IOException {
+        try (Stream<Path> files = Files.walk(folder)) {
+            for (Path file : (Iterable<Path>) files.sorted(Comparator.reverseOrder())::iterator) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private static Map<Integer, Integer> scoresById(List<Annotation> annotations) {
+        Map<Integer, Integer> scores = new HashMap<>();
+        for (Annotation annotation : annotations) {
+            scores.put(annotation.getLipid().getCompoundId(), annotation.getScore());
+        }
+        return scores;
+    }
+
+    private static List<Annotation> read(Path table) throws IOException {
+        try (FeatureTableReader reader = FeatureTableReader.open(table)) {
+            return reader.readBatch(Integer.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void shouldScoreEveryTableOfADirectory() throws Exception {
+        Path input = Files.createDirectory(folder.resolve("run"));
+        Files.writeString(input.resolve("a.tsv"), TABLE);
+        Files.writeString(input.resolve("b.csv"), TABLE.replace('\t', ','));
+        Files.writeString(input.resolve("notes.txt"), "not a table");
+        Path output = Files.createDirectory(folder.resolve("scored"));
+
+        List<Path> inputs = BatchScoringRunner.inputFiles(List.of(input));
+        assertEquals(List.of(input.resolve("a.tsv"), input.resolve("b.csv")), inputs);
+
+        List<FileReport> done = new ArrayList<>();
+        List<FileReport> reports = new BatchScoringRunner(2, 2, Double.POSITIVE_INFINITY, output)
+                .run(inputs, done::add);
+
+        assertEquals(2, done.size());
+        List<Annotation> expected;
+        try (FeatureTableReader reader = new FeatureTableReader(new StringReader(TABLE))) {
+            expected = reader.readBatch(Integer.MAX_VALUE);
+        }
+        new RuleUnitScorer().score(expected);
+        for (FileReport report : reports) {
+            assertTrue(report.isSuccessful());
+            assertEquals(5, report.getFeatures());
+            assertEquals(output, report.getOutput().getParent());
+
+            List<String> lines = Files.readAllLines(report.getOutput());
+            assertEquals(6, lines.size());
+            assertTrue(lines.get(0).endsWith("adduct\tscore\tscores_applied\tnormalized_score"));
+            // The scored table can be read back, with the scores of a single firing over the whole table
+            Map<Integer, Integer> scores = new HashMap<>();
+            for (String line : lines.subList(1, lines.size())) {
+                String[] values = line.split("\t");
+                scores.put(Integer.parseInt(values[3]), Integer.parseInt(values[10]));
+            }
+            assertEquals(scoresById(expected), scores);
+            assertEquals(5, read(report.getOutput()).size());
+        }
+        assertTrue(BatchScoringRunner.inputFiles(List.of(output)).isEmpty());
+    }
+
+    @Test
+    public void shouldReportMalformedTablesAndScoreTheOthers() throws Exception {
+        Path good = Files.writeString(folder.resolve("good.tsv"), TABLE);
+        Path bad = Files.writeString(folder.resolve("bad.tsv"), "mz\trt\n700.5\t10");
+
+        List<FileReport> reports = new BatchScoringRunner(2, 100, 1d, null).run(List.of(good, bad), report -> { });
+
+        assertTrue(reports.get(0).isSuccessful());
+        assertEquals(good.resolveSibling("good.tsv" + BatchScoringRunner.OUTPUT_SUFFIX), reports.get(0).getOutput());
+        assertFalse(reports.get(1).isSuccessful());
+        assertTrue(reports.get(1).getError() instanceof IOException);
+    }
+
+    @Test
+    public void shouldRejectATableNotSortedByRtWithAFiniteHorizon() throws Exception {
+        // Sorted by m/z: the TG 56:3 at 8 min comes after the TG 54:3 at 10 min
+        String[] rows = TABLE.split("\n");
+        String byMz = String.join("\n", rows[0], rows[1], rows[2], rows[4], rows[5], rows[3], "");
+        Path table = Files.writeString(folder.resolve("by-mz.tsv"), byMz);
+
+        FileReport finite = new BatchScoringRunner(1, 2, 1d, null).process(table);
+        assertFalse(finite.isSuccessful());
+        assertTrue(finite.getError() instanceof IOException);
+        assertTrue(finite.getError().getMessage().contains("Feature 5 at RT 8.0"));
+
+        FileReport infinite = new BatchScoringRunner(1, 2, Double.POSITIVE_INFINITY, null).process(table);
+        assertTrue(infinite.isSuccessful());
+        assertEquals(5, infinite.getFeatures());
+    }
+
+    @Test
+    public void shouldKeepTheExtensionOfTheTableInTheOutputName() throws Exception {
+        BatchScoringRunner runner = new BatchScoringRunner(1, 100, 1d, folder.resolve("out"));
+
+        assertEquals(folder.resolve("out").resolve("a.csv" + BatchScoringRunner.OUTPUT_SUFFIX),
+                runner.outputFile(folder.resolve("a.csv")));
+        assertFalse(runner.outputFile(folder.resolve("a.csv")).equals(runner.outputFile(folder.resolve("a.tsv"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectTablesSharingAnOutputFile() throws Exception {
+        Path first = Files.writeString(Files.createDirectory(folder.resolve("first")).resolve("a.tsv"), TABLE);
+        Path second = Files.writeString(Files.createDirectory(folder.resolve("second")).resolve("a.tsv"), TABLE);
+        Path output = folder.resolve("out");
+
+        try {
+            new BatchScoringRunner(2, 100, 1d, output).run(List.of(first, second), report -> { });
+        } finally {
+            assertFalse(Files.exists(output));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectANegativeRtHorizon() {
+        new BatchScoringRunner(1, 100, -1d, null);
+    }
+}
@@ -0,0 +1,161 @@
+package feature;
+
+import adduct.AdductDescriptor;
+import lipid.AdductDetector;
+import lipid.Annotation;
+import lipid.ElutionOrderScorer;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.LipidType;
+import lipid.Peak;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class MappedFeatureFileTest {
+
+    private static final LipidType[] TYPES = LipidType.values();
+
+    @Test
+    public void shouldReadBackWhatWasWritten() throws IOException {
+        Path file = Files.createTempFile("features", ".col");
+        try {
+            FeatureColumns columns = new FeatureColumns(2, 2);
+            columns.add(700.5, 6.5, 1e5, 7, new double[]{722.482, 700.5}, new double[]{8e4, 1e5});
+            columns.add(885.79, 10, 1e6, 8, new double[0], new double[0]);
+            columns.add(857.76, 9, 1e7, 9, new double[]{857.76}, new double[]{1e7});
+            ColumnarFeatureFile.write(file, columns);
+
+            try (MappedFeatureFile mapped = MappedFeatureFile.open(file)) {
+                assertEquals(3, mapped.size());
+                assertEquals(3, mapped.peakCount());
+
+                MappedFeatureFile.FeatureView view = mapped.view().moveTo(0);
+                assertEquals(700.5, view.mz(), 0d);
+                assertEquals(6.5, view.rt(), 0d);
+                assertEquals(7, view.lipidId());
+                assertEquals(2, view.peakCount());
+                // Grouped peaks are sorted by mz
+                assertEquals(700.5, view.peakMz(0), 0d);
+                assertEquals(8e4, view.peakIntensity(1), 0d);
+
+                assertSame(view, view.moveTo(1));
+                assertEquals(0, view.peakCount());
+                assertEquals(1e7, view.moveTo(2).intensity(), 0d);
+                assertEquals("[M+H]+", mapped.detectAdduct(0, IoniationMode.POSITIVE).getName());
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void shouldDetectAndScoreLikeAnnotations() throws IOException {
+        Random random = new Random(5);
+        Map<Integer, Lipid> lipids = new HashMap<>();
+        List<Annotation> annotations = new ArrayList<>();
+        FeatureColumns columns = new FeatureColumns();
+        for (int id = 0; id < 500; id++) {
+            LipidType type = TYPES[random.nextInt(TYPES.length)];
+            Lipid lipid = new Lipid(id, type.name(), "C1", type, 30 + 2 * random.nextInt(4), random.nextInt(4));
+            lipids.put(id, lipid);
+            double mz = 400 + random.nextDouble() * 600;
+            Set<Peak> peaks = new TreeSet<>();
+            peaks.add(new Peak(mz, 1e5));
+            peaks.add(new Peak((mz - 1.007276) + 22.989218, 5e4));
+            for (int p = random.nextInt(10); p > 0; p--) {
+                peaks.add(new Peak(150 + random.nextDouble() * 1350, random.nextDouble() * 1e5));
+            }
+            Annotation annotation = new Annotation(lipid, mz, 1e5, Math.round(random.nextDouble() * 30) / 2d, peaks, IoniationMode.POSITIVE);
+            annotations.add(annotation);
+            columns.add(annotation);
+        }
+
+        Path file = Files.createTempFile("features", ".col");
+        try {
+            ColumnarFeatureFile.write(file, columns);
+            int[] scores = new int[annotations.size()];
+            int[] scoresApplied = new int[annotations.size()];
+            try (MappedFeatureFile mapped = MappedFeatureFile.open(file)) {
+                AdductDetector detector = AdductDetector.forMode(IoniationMode.POSITIVE);
+                for (int i = 0; i < annotations.size(); i++) {
+                    AdductDescriptor adduct = mapped.detectAdduct(i, detector);
+                    assertEquals(annotations.get(i).getAdduct(), adduct == null ? null : adduct.getName());
+                }
+                mapped.scoreElutionOrder(lipids::get, scores, scoresApplied);
+            }
+
+            new ElutionOrderScorer().score(annotations);
+            for (int i = 0; i < annotations.size(); i++) {
+                assertEquals(annotations.get(i).getScore(), scores[i]);
+                assertEquals(annotations.get(i).getTotalScoresApplied(), scoresApplied[i]);
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void shouldRejectACorruptHeaderOrPeakOffsets() throws IOException {
+        Path file = Files.createTempFile("features", ".col");
+        try {
+            FeatureColumns columns = new FeatureColumns(2, 3);
+            columns.add(700.5, 6.5, 1e5, 7, new double[]{700.5, 722.482}, new double[]{1e5, 8e4});
+            columns.add(857.76, 9, 1e7, 9, new double[]{857.76}, new double[]{1e7});
+            ColumnarFeatureFile.write(file, columns);
+            byte[] valid = Files.readAllBytes(file);
+            int peakOffsets = (int) ColumnarFeatureFile.columnOffsets(2, 3)[4];
+
+            // Number of features and of peaks in the header
+            assertCorrupt(file, valid, 12, -1);
+            assertCorrupt(file, valid, 16, -5);
+            // Peak offsets 0, 2, 3
+            assertCorrupt(file, valid, peakOffsets, 1);
+            assertCorrupt(file, valid, peakOffsets + 4, 4);
+            assertCorrupt(file, valid, peakOffsets + 8, 1);
+            assertCorrupt(file, valid, peakOffsets + 8, 2);
+
+            Files.write(file, valid);
+            try (MappedFeatureFile mapped = MappedFeatureFile.open(file)) {
+                MappedFeatureFile.FeatureView view = mapped.view().moveTo(1);
+                assertEquals(857.76, view.peakMz(0), 0d);
+                for (int k : new int[]{-1, 1}) {
+                    try {
+                        view.peakMz(k);
+                        fail("Expected peak " + k + " out of the feature");
+                    } catch (IndexOutOfBoundsException e) {
+                        assertTrue(e.getMessage(), e.getMessage().startsWith("Peak " + k));
+                    }
+                }
+            }
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    private static void assertCorrupt(Path file, byte[] valid, int position, int value) throws IOException {
+        byte[] corrupt = valid.clone();
+        ByteBuffer.wrap(corrupt).order(ColumnarFeatureFile.BYTE_ORDER).putInt(position, value);
+        Files.write(file, corrupt);
+        try (MappedFeatureFile mapped = MappedFeatureFile.open(file)) {
+            fail("Expected a corrupt file, read " + mapped.size() + " features");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Corrupt columnar feature file"));
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package feature;
+
+import adduct.AdductLibrary;
+import lipid.Annotation;
+import lipid.ElutionOrderScorer;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.LipidType;
+import lipid.PeakList;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class OffHeapAnnotationStoreTest {
+
+    private static final LipidType[] TYPES = LipidType.values();
+
+    @Test
+    public void shouldReadBackAnnotationsAcrossChunks() {
+        try (OffHeapAnnotationStore store = new OffHeapAnnotationStore(3)) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(i, store.add(500 + i, i * 0.5, 1e5 * i, 100 + i, i % 3 - 1));
+            }
+            store.addScores(9, -2, 3);
+
+            assertEquals(10, store.size());
+            // 3 records per chunk rounds up to 4, so 3 chunks
+            assertEquals(3L * 4 * OffHeapAnnotationStore.RECORD_SIZE, store.offHeapBytes());
+            assertEquals(507, store.mz(7), 0d);
+            assertEquals(-1, store.adductId(6));
+            assertEquals(-2d / 3, store.normalizedScore(9), 1e-12);
+            assertTrue(Double.isNaN(store.normalizedScore(0)));
+
+            OffHeapAnnotationStore.AnnotationView view = store.view();
+            assertSame(view, view.moveTo(5));
+            assertEquals(2.5, view.rt(), 0d);
+            assertEquals(105, view.lipidId());
+            view.addScores(1, 1);
+            assertEquals(1, store.score(5));
+
+            double[] sum = new double[1];
+            store.forEach(annotation -> sum[0] += annotation.mz());
+            assertEquals(10 * 500 + 45, sum[0], 0d);
+        }
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void shouldRejectAnIndexOutOfTheStore() {
+        try (OffHeapAnnotationStore store = new OffHeapAnnotationStore()) {
+            store.add(500, 1, 1, 1, -1);
+            store.mz(1);
+        }
+    }
+
+    @Test
+    public void shouldScoreAndExportLikeAnnotationObjects() throws IOException {
+        Random random = new Random(13);
+        Map<Integer, Lipid> lipids = new HashMap<>();
+        List<Annotation> annotations = new ArrayList<>();
+        for (int id = 0; id < 500; id++) {
+            LipidType type = TYPES[random.nextInt(TYPES.length)];
+            Lipid lipid = new Lipid(id, type + " " + id, "C1", type, 30 + 2 * random.nextInt(4), random.nextInt(4));
+            lipids.put(id, lipid);
+            String adduct = random.nextBoolean() ? "[M+H]+" : random.nextBoolean() ? "[M+Na]+" : null;
+            annotations.add(new Annotation(lipid, 500 + random.nextDouble() * 500, 1e5, random.nextDouble() * 20,
+                    PeakList.EMPTY, IoniationMode.POSITIVE, adduct));
+        }
+
+        try (OffHeapAnnotationStore store = new OffHeapAnnotationStore(64)) {
+            for (Annotation annotation : annotations) {
+                store.add(annotation);
+            }
+            assertEquals(new ElutionOrderScorer().score(annotations), store.scoreElutionOrder(lipids::get));
+
+            StringWriter expected = new StringWriter();
+            try (ScoredAnnotationWriter writer = new ScoredAnnotationWriter(expected)) {
+                for (Annotation annotation : annotations) {
+                    writer.write(annotation);
+                }
+            }
+            StringWriter actual = new StringWriter();
+            try (ScoredAnnotationWriter writer = new ScoredAnnotationWriter(actual)) {
+                store.forEach(annotation -> {
+                    try {
+                        writer.write(annotation, lipids.get(annotation.lipidId()));
+                    } catch (IOException e) {
+                        throw new AssertionError(e);
+                    }
+                });
+            }
+            assertEquals(expected.toString(), actual.toString());
+
+            for (int i = 0; i < annotations.size(); i += 50) {
+                Annotation original = annotations.get(i);
+                Annotation copy = store.toAnnotation(i, lipids::get, IoniationMode.POSITIVE);
+                assertEquals(original, copy);
+                assertEquals(original.getAdduct(), copy.getAdduct());
+                assertEquals(original.getScoreSnapshot(), copy.getScoreSnapshot());
+            }
+        }
+    }
+
+    @Test
+    public void shouldResolveTheAdductsInTheLibraryOfTheStore() throws IOException {
+        // [M+Na]+ has id 0 here but id 2 in AdductList
+        AdductLibrary library = AdductLibrary.load(new StringReader("[M+Na]+\tPOSITIVE\t-22.989218\n"));
+        Lipid lipid = new Lipid(4, "PC 34:1", "C42H82NO8P", LipidType.PC, 34, 1);
+        Annotation sodiated = new Annotation(lipid, 782.567, 1e5, 6.5, PeakList.EMPTY, IoniationMode.POSITIVE,
+                "[M+Na]+");
+
+        try (OffHeapAnnotationStore store = new OffHeapAnnotationStore(library, 16)) {
+            store.add(sodiated);
+
+            assertEquals(0, store.adductId(0));
+            assertSame(library.getDescriptor("[M+Na]+"), store.view().moveTo(0).adduct());
+            assertEquals("[M+Na]+", store.toAnnotation(0, id -> lipid, IoniationMode.POSITIVE).getAdduct());
+            StringWriter table = new StringWriter();
+            try (ScoredAnnotationWriter writer = new ScoredAnnotationWriter(table)) {
+                writer.write(store.view().moveTo(0), lipid);
+            }
+            assertTrue(table.toString().contains("\t[M+Na]+\t"));
+        }
+    }
+
+    @Test
+    public void shouldResolveEveryLipidOnceWhenScoring() {
+        Random random = new Random(17);
+        Map<Integer, Lipid> lipids = new HashMap<>();
+        for (int l = 0; l < 300; l++) {
+            // Sparse ids
+            int id = 1000 + 7919 * l;
+            LipidType type = TYPES[random.nextInt(TYPES.length)];
+            lipids.put(id, new Lipid(id, type + " " + l, "C1", type, 30 + 2 * random.nextInt(4), random.nextInt(4)));
+        }
+        List<Lipid> catalogue = new ArrayList<>(lipids.values());
+        List<Annotation> annotations = new ArrayList<>();
+        try (OffHeapAnnotationStore store = new OffHeapAnnotationStore(256)) {
+            for (int i = 0; i < 2000; i++) {
+                Lipid lipid = catalogue.get(random.nextInt(catalogue.size()));
+                Annotation annotation = new Annotation(lipid, 500 + i, 1e5, Math.round(random.nextDouble() * 40) / 2d,
+                        PeakList.EMPTY, IoniationMode.POSITIVE, null);
+                annotations.add(annotation);
+                store.add(annotation);
+            }
+            Map<Integer, Integer> calls = new HashMap<>();
+
+            int pairs = store.scoreElutionOrder(id -> {
+                calls.merge(id, 1, Integer::sum);
+                return lipids.get(id);
+            });
+
+            assertEquals(new ElutionOrderScorer().score(annotations), pairs);
+            for (int count : calls.values()) {
+                assertEquals(1, count);
+            }
+            for (int i = 0; i < annotations.size(); i++) {
+                assertEquals(annotations.get(i).getScore(), store.score(i));
+                assertEquals(annotations.get(i).getTotalScoresApplied(), store.scoresApplied(i));
+            }
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package feature;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import formula.IsotopeEnvelope;
+import lipid.IoniationMode;
+import lipid.PeakList;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+public class PeakGrouperTest {
+
+    private static final double PPM = 10;
+    private static final double RT_TOLERANCE = 0.05;
+
+    @Test
+    public void shouldGroupCoElutingIsotopesAndAdducts() {
+        double mass = 759.5778;
+        double protonated = AdductList.getDescriptor("[M+H]+").toMz(mass);
+        double sodiated = AdductList.getDescriptor("[M+Na]+").toMz(mass);
+        double[] mz = {protonated, protonated + IsotopeEnvelope.ISOTOPE_SPACING, 650.4321, sodiated, sodiated};
+        double[] rt = {10.00, 10.01, 10.00, 10.03, 12.00};
+        double[] intensity = {1e6, 4e5, 2e5, 3e5, 3e5};
+
+        PeakGroups groups = new PeakGrouper(IoniationMode.POSITIVE).group(mz, rt, intensity, mz.length);
+
+        assertEquals(3, groups.groupCount());
+        assertArrayEquals(new int[]{0, 0, 1, 0, 2}, new int[]{groups.groupOf(0), groups.groupOf(1),
+                groups.groupOf(2), groups.groupOf(3), groups.groupOf(4)});
+        assertArrayEquals(new int[]{0, 1, 3}, groups.members(0));
+        PeakList peaks = groups.peaksOf(1);
+        assertEquals(3, peaks.size());
+        assertEquals(protonated, peaks.mzAt(0), 0d);
+        assertEquals(sodiated, peaks.mzAt(2), 0d);
+    }
+
+    @Test
+    public void shouldOnlyLinkAdductsThroughTheMainIon() {
+        double mass = 759.5778;
+        double sodiated = AdductList.getDescriptor("[M+Na]+").toMz(mass);
+        double potassiated = AdductList.getDescriptor("[M+K]+").toMz(mass);
+        double protonated = AdductList.getDescriptor("[M+H]+").toMz(mass);
+        double[] rt = {10.00, 10.01, 10.02};
+        double[] intensity = {1e5, 1e5, 1e5};
+
+        PeakGrouper grouper = new PeakGrouper(IoniationMode.POSITIVE);
+        PeakGroups withoutMainIon = grouper.group(new double[]{sodiated, potassiated}, rt, intensity, 2);
+        PeakGroups withMainIon = grouper.group(new double[]{sodiated, potassiated, protonated}, rt, intensity, 3);
+
+        assertEquals(2, withoutMainIon.groupCount());
+        assertEquals(1, withMainIon.groupCount());
+    }
+
+    /**
+     * Features of compounds detected as their main ion and a few other adducts with isotopes, mixed with unrelated
+     * features
+     */
+    private static FeatureColumns randomRun(int compounds, long seed) {
+        Random random = new Random(seed);
+        AdductDescriptor[] adducts = AdductList.getDescriptors(IoniationMode.POSITIVE);
+        FeatureColumns columns = new FeatureColumns();
+        double[] noPeaks = new double[0];
+        for (int c = 0; c < compounds; c++) {
+            double mass = 400 + random.nextDouble() * 600;
+            double rt = random.nextDouble() * 30;
+            int detected = 1 + random.nextInt(3);
+            for (int a = 0; a < detected; a++) {
+                AdductDescriptor adduct = a == 0 ? adducts[0] : adducts[random.nextInt(adducts.length)];
+                double mz = adduct.toMz(mass) * (1 + (random.nextDouble() - 0.5) * 4e-6);
+                for (int isotope = 0; isotope <= random.nextInt(3); isotope++) {
+                    columns.add(mz + isotope * IsotopeEnvelope.ISOTOPE_SPACING / adduct.getCharge(),
+                            rt + random.nextDouble() * 0.02, 1e5, c, noPeaks, noPeaks);
+                }
+            }
+            columns.add(200 + random.nextDouble() * 1500, random.nextDouble() * 30, 1e4, -1, noPeaks, noPeaks);
+        }
+        return columns;
+    }
+
+    private static boolean within(double value, double target) {
+        return Math.abs(value - target) <= target * PPM / 1000000d;
+    }
+
+    /**
+     * Links of {@link PeakGrouper} checked on every pair, taking the later feature as the one searched for
+     */
+    private static boolean linked(double mzI, double mzK, AdductDescriptor[] adducts) {
+        for (int charge = 1; charge <= PeakGrouper.MAX_CHARGE; charge++) {
+            for (int isotope = 1; isotope <= PeakGrouper.MAX_ISOTOPES; isotope++) {
+                double shift = isotope * IsotopeEnvelope.ISOTOPE_SPACING / charge;
+                if (within(mzI, mzK - shift) || within(mzI, mzK + shift)) {
+                    return true;
+                }
+            }
+        }
+        // Main ion [M+H]+ and any other adduct
+        AdductDescriptor main = adducts[0];
+        for (AdductDescriptor other : adducts) {
+            if (other != main && (within(other.toMonoisotopicMass(mzI), main.toMonoisotopicMass(mzK))
+                    || within(main.toMonoisotopicMass(mzI), other.toMonoisotopicMass(mzK)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            i = parent[i];
+        }
+        return i;
+    }
+
+    @Test
+    public void shouldFindTheComponentsOfABruteForceLinking() {
+        FeatureColumns run = randomRun(400, 5);
+        int n = run.size();
+        double[] mz = run.mz();
+        double[] rt = run.rt();
+        AdductDescriptor[] adducts = AdductList.getDescriptors(IoniationMode.POSITIVE);
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < n; k++) {
+                boolean later = rt[k] > rt[i] || (rt[k] == rt[i] && k > i);
+                if (later && rt[k] - rt[i] <= RT_TOLERANCE && linked(mz[i], mz[k], adducts)) {
+                    parent[find(parent, i)] = find(parent, k);
+                }
+            }
+        }
+        int[] labels = new int[n];
+        for (int i = 0; i < n; i++) {
+            labels[i] = find(parent, i);
+        }
+        PeakGroups expected = new PeakGroups(mz, run.intensity(), n, labels);
+
+        PeakGroups groups = new PeakGrouper(IoniationMode.POSITIVE, PPM, RT_TOLERANCE, 1).group(run);
+
+        assertTrue(groups.groupCount() < n / 2);
+        for (int i = 0; i < n; i++) {
+            assertEquals("Group of feature " + i, expected.groupOf(i), groups.groupOf(i));
+        }
+    }
+
+    @Test
+    public void shouldGroupInParallelLikeSerially() {
+        FeatureColumns run = randomRun(20000, 7);
+        PeakGroups serial = new PeakGrouper(IoniationMode.POSITIVE, PPM, RT_TOLERANCE, 1).group(run);
+        PeakGroups parallel = new PeakGrouper(IoniationMode.POSITIVE, PPM, RT_TOLERANCE, 4).group(run);
+
+        assertEquals(serial.groupCount(), parallel.groupCount());
+        for (int i = 0; i < run.size(); i++) {
+            assertEquals(serial.groupOf(i), parallel.groupOf(i));
+        }
+
+        FeatureColumns grouped = serial.withGroupedPeaks(run);
+        int feature = serial.members(0)[0];
+        assertEquals(serial.peaksOf(feature).size(),
+                grouped.peakOffsets()[feature + 1] - grouped.peakOffsets()[feature]);
+        assertNotEquals(0, grouped.peakCount());
+    }
+}
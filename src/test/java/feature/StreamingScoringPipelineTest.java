@@ -0,0 +1,82 @@
+package feature;
+
+import lipid.Annotation;
+import lipid.LipidType;
+import lipid.RuleUnitScorer;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+public class StreamingScoringPipelineTest {
+
+    private static final String TABLE = String.join("\n",
+            "mz\trt\tintensity\tlipid_id\tlipid_name\tformula\tlipid_type\tcarbons\tdouble_bonds\tion_mode\tgrouped_peaks",
+            "885.79056\t10\t10E6\t1\tTG 54:3\tC57H104O6\tTG\t54\t3\tPOSITIVE\t",
+            "857.7593\t9\t10E7\t2\tTG 52:3\tC55H100O6\tTG\t52\t3\tPOSITIVE\t",
+            "913.822\t8\t10E5\t3\tTG 56:3\tC59H108O6\tTG\t56\t3\tPOSITIVE\t",
+            "",
+            "700.500\t6.5\t80000\t4\tPC 34:1\tC42H82NO8P\tPC\t34\t1\tPOSITIVE\t700.500:100000;722.482:80000",
+            "885.79056\t10.5\t10E6\t1\tTG 54:3\tC57H104O6\tTG\t54\t3\t\t");
+
+    private static List<Annotation> readAll(String table) throws IOException {
+        try (FeatureTableReader reader = new FeatureTableReader(new StringReader(table))) {
+            return reader.readBatch(Integer.MAX_VALUE);
+        }
+    }
+
+    @Test
+    public void shouldParseFeatures() throws IOException {
+        List<Annotation> annotations = readAll(TABLE);
+
+        assertEquals(5, annotations.size());
+        Annotation pc = annotations.get(3);
+        assertEquals(LipidType.PC, pc.getLipid().getLipidType());
+        assertEquals(2, pc.getGroupedSignals().size());
+        assertEquals("[M+H]+", pc.getAdduct());
+        assertEquals(6.5d, pc.getRtMin(), 0d);
+        // Rows of the same lipid share the instance
+        assertSame(annotations.get(0).getLipid(), annotations.get(4).getLipid());
+    }
+
+    @Test
+    public void shouldParseCommaSeparatedTables() throws IOException {
+        List<Annotation> annotations = readAll(TABLE.replace('\t', ','));
+
+        assertEquals(5, annotations.size());
+        assertEquals(857.7593d, annotations.get(1).getMz(), 0d);
+    }
+
+    @Test(expected = IOException.class)
+    public void shouldRejectTablesWithoutRequiredColumns() throws IOException {
+        readAll("mz\trt\n700.5\t10");
+    }
+
+    @Test
+    public void shouldScoreIncrementallyLikeASingleFiring() throws IOException {
+        List<Annotation> expected = readAll(TABLE);
+        new RuleUnitScorer().score(expected);
+
+        List<Annotation> streamed = new ArrayList<>();
+        List<Integer> batchSizes = new ArrayList<>();
+        try (FeatureTableReader reader = new FeatureTableReader(new StringReader(TABLE));
+             StreamingScoringPipeline pipeline = new StreamingScoringPipeline(2)) {
+            long read = pipeline.run(reader, batch -> {
+                batchSizes.add(batch.size());
+                streamed.addAll(batch);
+            });
+            assertEquals(5, read);
+            assertEquals(5, pipeline.getAnnotations());
+        }
+
+        assertEquals(List.of(2, 2, 1), batchSizes);
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getScoreSnapshot(), streamed.get(i).getScoreSnapshot());
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package formula;
+
+import lipid.Lipid;
+import lipid.LipidType;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+public class FormulaTest {
+
+    @Test
+    public void shouldCountTheElementsOfAFormula() {
+        Formula formula = Formula.parse("C42H82NO8P");
+
+        assertEquals(42, formula.getCount(Element.C));
+        assertEquals(82, formula.getCount(Element.H));
+        assertEquals(1, formula.getCount(Element.N));
+        assertEquals(8, formula.getCount(Element.O));
+        assertEquals(1, formula.getCount(Element.P));
+        assertEquals(0, formula.getCount(Element.S));
+        assertEquals("C42H82NO8P", formula.toString());
+    }
+
+    @Test
+    public void shouldReadTwoLetterSymbolsAndRepeatedElements() {
+        Formula formula = Formula.parse("CH3ClNaCl");
+
+        assertEquals(1, formula.getCount(Element.C));
+        assertEquals(2, formula.getCount(Element.CL));
+        assertEquals(1, formula.getCount(Element.NA));
+        assertEquals(Formula.parse("CH3NaCl2"), formula);
+    }
+
+    @Test
+    public void shouldComputeTheMonoisotopicMass() {
+        assertEquals(884.7833, Formula.monoisotopicMass("C57H104O6"), 0.0001);
+        assertEquals(759.5778, Formula.parse("C42H82NO8P").getMonoisotopicMass(), 0.0001);
+        assertEquals(Formula.monoisotopicMass("C39H76NO8P"), Formula.cachedMonoisotopicMass("C39H76NO8P"), 0d);
+    }
+
+    @Test
+    public void shouldCacheTheMassOfALipid() {
+        Lipid lipid = new Lipid(1, "TG 54:3", "C57H104O6", LipidType.TG, 54, 3);
+
+        assertEquals(884.7833, lipid.getMonoisotopicMass(), 0.0001);
+        assertEquals(lipid.getMonoisotopicMass(), lipid.getMonoisotopicMass(), 0d);
+    }
+
+    @Test
+    public void shouldComputeTheIsotopeEnvelope() {
+        IsotopeEnvelope envelope = IsotopeEnvelope.cached("C57H104O6");
+
+        assertEquals(1d, envelope.relativeAbundance(0), 0d);
+        // M+1 from 13C, 2H and 17O; M+2 mostly from two 13C and one 18O
+        assertEquals(0.6308, envelope.relativeAbundance(1), 0.001);
+        assertEquals(0.2079, envelope.relativeAbundance(2), 0.001);
+        assertEquals(envelope.relativeAbundance(1), IsotopeEnvelope.of(Formula.parse("C57H104O6")).relativeAbundance(1), 1e-12);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectUnknownElements() {
+        Formula.parse("C42Xx");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectGroups() {
+        Formula.parse("C2(OH)2");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectANullFormula() {
+        Formula.parse(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectANullFormulaInTheCache() {
+        Formula.cachedMonoisotopicMass(null);
+    }
+}
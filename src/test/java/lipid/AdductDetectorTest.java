@@ -0,0 +1,94 @@
+package lipid;
+
+import adduct.Adduct;
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class AdductDetectorTest {
+
+    /**
+     * Reference implementation: every candidate adduct against every other adduct and every grouped peak.
+     */
+    private static String detectByFullScan(double referenceMz, Set<Peak> groupedSignals, IoniationMode ionMode) {
+        AdductDescriptor[] adducts = AdductList.getDescriptors(ionMode);
+        for (AdductDescriptor candidateAdduct : adducts) {
+            double referenceMonoisotopicMass = candidateAdduct.toMonoisotopicMass(referenceMz);
+            for (AdductDescriptor otherAdduct : adducts) {
+                if (otherAdduct == candidateAdduct) continue;
+                for (Peak peak : groupedSignals) {
+                    double otherMass = otherAdduct.toMonoisotopicMass(peak.getMz());
+                    if (Adduct.calculatePPMIncrement(referenceMonoisotopicMass, otherMass) < AdductDetector.DEFAULT_PPM_TOLERANCE) {
+                        return candidateAdduct.getName();
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static final Lipid PC = new Lipid(1, "PC 34:1", "C42H82NO8P", LipidType.PC, 34, 1);
+    private static final Set<Peak> PC_SIGNALS = Set.of(new Peak(760.5851, 1e6), new Peak(782.5670, 5e5));
+
+    @Test
+    public void shouldDetectTheAdductOnFirstRequest() {
+        Annotation annotation = new Annotation(PC, 760.5851, 1e6, 10d, PC_SIGNALS, IoniationMode.POSITIVE);
+
+        assertEquals("[M+H]+", annotation.getAdduct());
+        assertEquals("[M+H]+", annotation.getAdduct());
+    }
+
+    @Test
+    public void shouldNotDetectAnAdductThatWasSet() {
+        Annotation set = new Annotation(PC, 760.5851, 1e6, 10d, PC_SIGNALS, IoniationMode.POSITIVE);
+        set.setAdduct("[M+K]+");
+        Annotation explicit = new Annotation(PC, 760.5851, 1e6, 10d, PeakList.of(PC_SIGNALS), IoniationMode.POSITIVE, null);
+
+        assertEquals("[M+K]+", set.getAdduct());
+        assertNull(explicit.getAdduct());
+        explicit.detectAdduct();
+        assertEquals("[M+H]+", explicit.getAdduct());
+    }
+
+    @Test
+    public void shouldReturnNullWithoutGroupedSignals() {
+        assertNull(AdductDetector.forMode(IoniationMode.POSITIVE).detect(700.5d, Set.of()));
+    }
+
+    @Test
+    public void shouldMatchFullScanOnRandomGroups() {
+        Random random = new Random(42);
+        for (IoniationMode ionMode : IoniationMode.values()) {
+            AdductDescriptor[] adducts = AdductList.getDescriptors(ionMode);
+            AdductDetector detector = AdductDetector.forMode(ionMode);
+
+            for (int sample = 0; sample < 2000; sample++) {
+                double neutralMass = 300 + random.nextDouble() * 900;
+                double referenceMz = adducts[random.nextInt(adducts.length)].toMz(neutralMass);
+                Set<Peak> groupedSignals = new TreeSet<>();
+                groupedSignals.add(new Peak(referenceMz, 1000));
+
+                int peaks = random.nextInt(20);
+                for (int i = 0; i < peaks; i++) {
+                    double mz = random.nextBoolean()
+                            // Related adduct, with an error of up to ~15 ppm
+                            ? adducts[random.nextInt(adducts.length)].toMz(neutralMass) * (1 + (random.nextDouble() - 0.5) * 3e-5)
+                            // Unrelated signal
+                            : 150 + random.nextDouble() * 1500;
+                    groupedSignals.add(new Peak(mz, random.nextDouble() * 1e6));
+                }
+
+                AdductDescriptor detected = detector.detect(referenceMz, groupedSignals);
+                assertEquals(detectByFullScan(referenceMz, groupedSignals, ionMode),
+                        detected == null ? null : detected.getName());
+            }
+        }
+    }
+}
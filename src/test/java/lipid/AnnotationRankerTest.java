@@ -0,0 +1,139 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class AnnotationRankerTest {
+
+    private static final Lipid TG_54_3 = new Lipid(1, "TG 54:3", "C57H104O6", LipidType.TG, 54, 3);
+    private static final Lipid TG_52_3 = new Lipid(2, "TG 52:3", "C55H100O6", LipidType.TG, 52, 3);
+
+    private static Annotation annotation(Lipid lipid, double mz, double rt, String adduct, int score, int applied) {
+        Annotation annotation = new Annotation(lipid, mz, 1000, rt, PeakList.EMPTY, IoniationMode.POSITIVE, adduct);
+        annotation.addScores(score, applied);
+        return annotation;
+    }
+
+    @Test
+    public void shouldPreferTheCandidateMatchingTheMzWithAPlausibleAdduct() {
+        // TG 54:3 [M+H]+ is at 885.7906
+        Annotation matching = annotation(TG_54_3, 885.79056, 10, "[M+H]+", 1, 1);
+        Annotation offMass = annotation(TG_52_3, 885.79056, 10, "[M+H]+", 1, 1);
+        Annotation unknownAdduct = annotation(TG_52_3, 885.79056, 10, null, 1, 1);
+
+        AnnotationRanker ranker = new AnnotationRanker(3);
+        ranker.add(offMass);
+        ranker.add(unknownAdduct);
+        ranker.add(matching);
+
+        assertEquals(0, AnnotationRanker.ppmError(matching));
+        assertTrue(AnnotationRanker.ppmError(offMass) > 10000);
+        assertEquals(-1, AnnotationRanker.ppmError(unknownAdduct));
+        List<RankedAnnotation> ranking = ranker.getRanking(885.79056, 10);
+        assertEquals(3, ranking.size());
+        assertSame(matching, ranking.get(0).getAnnotation());
+        assertEquals(1, ranking.get(0).getRank());
+        assertEquals(0, ranking.get(0).getPpmError());
+        assertSame(unknownAdduct, ranking.get(1).getAnnotation());
+        assertSame(offMass, ranking.get(2).getAnnotation());
+    }
+
+    @Test
+    public void shouldRankALipidWithoutFormulaAsOfUnknownPpm() {
+        Lipid noFormula = new Lipid(3, "TG 54:3", null, LipidType.TG, 54, 3);
+        Annotation annotation = annotation(noFormula, 885.79056, 10, "[M+H]+", 1, 1);
+
+        AnnotationRanker ranker = new AnnotationRanker(1);
+        ranker.add(annotation);
+
+        assertEquals(-1, AnnotationRanker.ppmError(annotation));
+        assertSame(annotation, ranker.getBest().get(0).getAnnotation());
+    }
+
+    @Test
+    public void shouldRankAnUnknownPpmBelowACandidateJustOutsideTheTolerance() {
+        // 11 ppm above TG 54:3 [M+H]+, just outside the 10 ppm tolerance
+        double mz = 885.79056 * (1 + 11e-6);
+        Annotation measured = annotation(TG_54_3, mz, 10, "[M+H]+", 1, 1);
+        Annotation unknownPpm = annotation(new Lipid(3, "TG 54:3", null, LipidType.TG, 54, 3), mz, 10, "[M+H]+", 1, 1);
+
+        AnnotationRanker ranker = new AnnotationRanker(2);
+        ranker.add(unknownPpm);
+        ranker.add(measured);
+
+        assertEquals(11, AnnotationRanker.ppmError(measured));
+        assertEquals(-1, AnnotationRanker.ppmError(unknownPpm));
+        List<RankedAnnotation> ranking = ranker.getRanking(mz, 10);
+        assertSame(measured, ranking.get(0).getAnnotation());
+        assertSame(unknownPpm, ranking.get(1).getAnnotation());
+        assertEquals(0.5 * (1 - 11 / 10d) - 0.5 * (1 - AnnotationRanker.UNKNOWN_PPM_TOLERANCES),
+                ranker.rankScore(measured) - ranker.rankScore(unknownPpm), 1e-9);
+    }
+
+    @Test
+    public void shouldRankUnscoredAnnotationsWithANeutralScore() {
+        Annotation unscored = annotation(TG_54_3, 885.79056, 10, "[M+H]+", 0, 0);
+        Annotation penalized = annotation(TG_54_3, 885.79056, 10, "[M+H]+", -1, 1);
+
+        AnnotationRanker ranker = new AnnotationRanker(1);
+        double unscoredRank = ranker.rankScore(unscored);
+        assertFalse(Double.isNaN(unscoredRank));
+        assertEquals(1, unscoredRank - ranker.rankScore(penalized), 1e-9);
+
+        ranker.add(penalized);
+        ranker.add(unscored);
+        assertEquals(1, ranker.getFeatureCount());
+        assertSame(unscored, ranker.getBest().get(0).getAnnotation());
+    }
+
+    @Test
+    public void shouldKeepTheSameTopKAsAFullSort() {
+        String[] adducts = {"[M+H]+", "[M+Na]+", "[M+2H]2+", "[2M+H]+", null};
+        Random random = new Random(7);
+        for (int topK : new int[]{1, 2, 5}) {
+            AnnotationRanker ranker = new AnnotationRanker(topK);
+            Map<Double, List<Annotation>> byFeature = new LinkedHashMap<>();
+            for (int i = 0; i < 2000; i++) {
+                double mz = 800 + random.nextInt(50);
+                int applied = random.nextInt(4);
+                // Few distinct scores so that ties are frequent
+                Annotation annotation = annotation(random.nextBoolean() ? TG_54_3 : TG_52_3, mz, mz / 100,
+                        adducts[random.nextInt(adducts.length)], applied == 0 ? 0 : random.nextInt(2 * applied + 1) - applied, applied);
+                ranker.add(annotation);
+                byFeature.computeIfAbsent(mz, key -> new ArrayList<>()).add(annotation);
+            }
+
+            assertEquals(2000, ranker.getAddedCount());
+            List<List<RankedAnnotation>> rankings = ranker.getRankings();
+            assertEquals(byFeature.size(), rankings.size());
+            int feature = 0;
+            for (List<Annotation> candidates : byFeature.values()) {
+                List<Annotation> expected = new ArrayList<>(candidates);
+                // Stable sort: candidates with the same score stay in insertion order
+                expected.sort(Comparator.comparingDouble(ranker::rankScore).reversed());
+                List<RankedAnnotation> ranking = rankings.get(feature++);
+                assertEquals(Math.min(topK, candidates.size()), ranking.size());
+                for (int r = 0; r < ranking.size(); r++) {
+                    assertSame(expected.get(r), ranking.get(r).getAnnotation());
+                    assertEquals(r + 1, ranking.get(r).getRank());
+                }
+            }
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void shouldRejectANonPositiveTopK() {
+        new AnnotationRanker(0);
+    }
+}
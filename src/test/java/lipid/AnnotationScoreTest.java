@@ -0,0 +1,66 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.assertEquals;
+
+public class AnnotationScoreTest {
+
+    private static Annotation newAnnotation() {
+        Lipid lipid = new Lipid(1, "TG 54:3", "C57H104O6", LipidType.TG, 54, 3);
+        return new Annotation(lipid, 885.79056, 10E6, 10d, IoniationMode.POSITIVE);
+    }
+
+    @Test
+    public void shouldKeepScoreAndCountTogether() {
+        Annotation annotation = newAnnotation();
+        annotation.addScore(1);
+        annotation.addScore(-1);
+        annotation.addScore(-1);
+        annotation.addScores(-4, 2);
+
+        assertEquals(new ScoreSnapshot(-5, 5), annotation.getScoreSnapshot());
+        assertEquals(-1.0, annotation.getNormalizedScore(), 0.0001);
+
+        annotation.setScore(3);
+        assertEquals(new ScoreSnapshot(3, 5), annotation.getScoreSnapshot());
+    }
+
+    @Test
+    public void shouldNotLoseConcurrentUpdates() throws InterruptedException {
+        Annotation annotation = newAnnotation();
+        int threads = 8;
+        int updates = 20000;
+        CountDownLatch start = new CountDownLatch(1);
+        List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            int delta = t % 2 == 0 ? 1 : -1;
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                for (int i = 0; i < updates; i++) {
+                    annotation.addScore(delta);
+                    annotation.addScore(1);
+                }
+            });
+            worker.start();
+            workers.add(worker);
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+
+        ScoreSnapshot snapshot = annotation.getScoreSnapshot();
+        assertEquals(threads * updates, snapshot.getScore());
+        assertEquals(2 * threads * updates, snapshot.getTotalScoresApplied());
+    }
+}
@@ -0,0 +1,93 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Parity of the native {@link ElutionOrderScorer} with the rules of lipids.drl.
+ */
+public class ElutionOrderScorerTest {
+
+    private static final LipidType[] TYPES = LipidType.values();
+
+    /**
+     * Random annotations with few distinct carbons, double bonds and retention times so that groups are large and
+     * ties are frequent.
+     */
+    static List<Annotation> randomAnnotations(int count, long seed) {
+        Random random = new Random(seed);
+        List<Annotation> annotations = new ArrayList<>(count);
+        for (int id = 0; id < count; id++) {
+            LipidType type = TYPES[random.nextInt(TYPES.length)];
+            int carbons = 30 + 2 * random.nextInt(4);
+            int doubleBonds = random.nextInt(4);
+            Lipid lipid = new Lipid(id, type + " " + carbons + ":" + doubleBonds, "C1", type, carbons, doubleBonds);
+            double rt = Math.round(random.nextDouble() * 40) / 2d;
+            annotations.add(new Annotation(lipid, 500 + id, 1000, rt, IoniationMode.POSITIVE));
+        }
+        return annotations;
+    }
+
+    static void assertSameScores(List<Annotation> expected, List<Annotation> actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals("Score of " + expected.get(i), expected.get(i).getScore(), actual.get(i).getScore());
+            assertEquals("Scores applied to " + expected.get(i),
+                    expected.get(i).getTotalScoresApplied(), actual.get(i).getTotalScoresApplied());
+        }
+    }
+
+    @Test
+    public void shouldScoreLikeTheRuleUnit() {
+        for (long seed = 1; seed <= 5; seed++) {
+            List<Annotation> drools = randomAnnotations(300, seed);
+            List<Annotation> nativeScored = randomAnnotations(300, seed);
+
+            int droolsMatches = ScoringEngine.DROOLS.newScorer().score(drools);
+            int nativeMatches = ScoringEngine.NATIVE.newScorer().score(nativeScored);
+
+            assertEquals(droolsMatches, nativeMatches);
+            assertSameScores(drools, nativeScored);
+        }
+    }
+
+    @Test
+    public void shouldScoreCarbonOrder() {
+        Annotation annotation1 = new Annotation(new Lipid(1, "TG 54:3", "C57H104O6", LipidType.TG, 54, 3), 885.79056, 10E6, 10d, IoniationMode.POSITIVE);
+        Annotation annotation2 = new Annotation(new Lipid(2, "TG 52:3", "C55H100O6", LipidType.TG, 52, 3), 857.7593, 10E7, 9d, IoniationMode.POSITIVE);
+        Annotation annotation3 = new Annotation(new Lipid(3, "TG 56:3", "C59H108O6", LipidType.TG, 56, 3), 913.822, 10E5, 8d, IoniationMode.POSITIVE);
+
+        int matches = new ElutionOrderScorer().score(List.of(annotation1, annotation2, annotation3));
+
+        assertEquals(3, matches);
+        assertEquals(0d, annotation1.getNormalizedScore(), 0.01);
+        assertEquals(0d, annotation2.getNormalizedScore(), 0.01);
+        assertEquals(-1.0, annotation3.getNormalizedScore(), 0.01);
+    }
+
+    @Test
+    public void shouldScoreLipidTypeOrder() {
+        Annotation annotation1 = new Annotation(new Lipid(1, "PI 34:0", "C43H83O13P", LipidType.PI, 54, 0), 839.5644179056, 10E6, 10d, IoniationMode.POSITIVE);
+        Annotation annotation2 = new Annotation(new Lipid(2, "PG 34:0", "C40H79O10P", LipidType.PG, 54, 0), 751.54836, 10E7, 9d, IoniationMode.POSITIVE);
+        Annotation annotation3 = new Annotation(new Lipid(3, "PC 34:0", "C42H84NO8P", LipidType.PC, 54, 0), 913.822, 10E5, 11d, IoniationMode.POSITIVE);
+
+        new ElutionOrderScorer().score(List.of(annotation1, annotation2, annotation3));
+
+        assertEquals(1.0, annotation1.getNormalizedScore(), 0.01);
+        assertEquals(1.0, annotation2.getNormalizedScore(), 0.01);
+        assertEquals(1.0, annotation3.getNormalizedScore(), 0.01);
+    }
+
+    @Test
+    public void shouldNotScoreEqualRetentionTimes() {
+        Annotation annotation1 = new Annotation(new Lipid(1, "TG 54:3", "C57H104O6", LipidType.TG, 54, 3), 885.79056, 10E6, 10d, IoniationMode.POSITIVE);
+        Annotation annotation2 = new Annotation(new Lipid(2, "TG 52:3", "C55H100O6", LipidType.TG, 52, 3), 857.7593, 10E7, 10d, IoniationMode.POSITIVE);
+
+        assertEquals(0, new ElutionOrderScorer().score(List.of(annotation1, annotation2)));
+        assertEquals(0, annotation1.getTotalScoresApplied());
+    }
+}
@@ -0,0 +1,76 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IncrementalLipidScorerTest {
+
+    private static List<Annotation> sortedByRt(List<Annotation> annotations) {
+        List<Annotation> sorted = new ArrayList<>(annotations);
+        sorted.sort(Comparator.comparingDouble(Annotation::getRtMin));
+        return sorted;
+    }
+
+    @Test
+    public void shouldScoreLikeOneFiringWithoutHorizon() {
+        List<Annotation> expected = sortedByRt(ElutionOrderScorerTest.randomAnnotations(200, 7));
+        List<Annotation> actual = sortedByRt(ElutionOrderScorerTest.randomAnnotations(200, 7));
+        new RuleUnitScorer().score(expected);
+
+        List<Annotation> finalized = new ArrayList<>();
+        try (IncrementalLipidScorer scorer = new IncrementalLipidScorer(Double.POSITIVE_INFINITY, finalized::add)) {
+            for (Annotation annotation : actual) {
+                scorer.insert(annotation);
+            }
+            assertEquals(actual.size(), scorer.getActiveCount());
+            assertTrue(finalized.isEmpty());
+        }
+
+        assertEquals(actual.size(), finalized.size());
+        ElutionOrderScorerTest.assertSameScores(expected, actual);
+    }
+
+    @Test
+    public void shouldRetractAnnotationsBeyondTheHorizon() {
+        // Two bursts 50 min apart, each inserted at once: with a 5 min horizon they are scored as two separate runs
+        List<Annotation> early = sortedByRt(ElutionOrderScorerTest.randomAnnotations(100, 3));
+        List<Annotation> late = new ArrayList<>();
+        for (Annotation annotation : sortedByRt(ElutionOrderScorerTest.randomAnnotations(100, 4))) {
+            late.add(new Annotation(annotation.getLipid(), annotation.getMz(), annotation.getIntensity(),
+                    annotation.getRtMin() + 50, IoniationMode.POSITIVE));
+        }
+        List<Annotation> expectedEarly = sortedByRt(ElutionOrderScorerTest.randomAnnotations(100, 3));
+        List<Annotation> expectedLate = new ArrayList<>();
+        for (Annotation annotation : late) {
+            expectedLate.add(new Annotation(annotation.getLipid(), annotation.getMz(), annotation.getIntensity(),
+                    annotation.getRtMin(), IoniationMode.POSITIVE));
+        }
+        new RuleUnitScorer().score(expectedEarly);
+        new RuleUnitScorer().score(expectedLate);
+
+        List<Annotation> finalized = new ArrayList<>();
+        try (IncrementalLipidScorer scorer = new IncrementalLipidScorer(5, finalized::add)) {
+            scorer.insert(early);
+            scorer.insert(late);
+            assertTrue(finalized.containsAll(early));
+            assertTrue(scorer.getActiveCount() < late.size());
+            assertEquals(70d, scorer.getWatermark(), 0.5);
+            assertEquals(0, scorer.getLateCount());
+
+            Annotation untimed = new Annotation(early.get(0).getLipid(), 600, 1000, Double.NaN, IoniationMode.POSITIVE);
+            scorer.insert(untimed);
+            assertEquals(untimed, finalized.get(finalized.size() - 1));
+            assertEquals(70d, scorer.getWatermark(), 0.5);
+        }
+
+        assertEquals(early.size() + late.size() + 1, finalized.size());
+        ElutionOrderScorerTest.assertSameScores(expectedEarly, early);
+        ElutionOrderScorerTest.assertSameScores(expectedLate, late);
+    }
+}
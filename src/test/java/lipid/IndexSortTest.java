@@ -0,0 +1,51 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertTrue;
+
+public class IndexSortTest {
+
+    private static int[] boxedOrder(double[] values) {
+        Integer[] order = new Integer[values.length];
+        for (int i = 0; i < values.length; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (x, y) -> Double.compare(values[x], values[y]));
+        return Arrays.stream(order).mapToInt(Integer::intValue).toArray();
+    }
+
+    @Test
+    public void shouldSortLikeAStableSortOfBoxedIndexes() {
+        Random random = new Random(11);
+        double[] values = new double[5000];
+        for (int i = 0; i < values.length; i++) {
+            switch (random.nextInt(4)) {
+                // Repeated values
+                case 0 -> values[i] = Math.round(random.nextDouble() * 40) / 2d;
+                // Values sharing the high half of their bits
+                case 1 -> values[i] = 760.5851 + random.nextInt(1000) * 1e-10;
+                case 2 -> values[i] = (random.nextDouble() - 0.5) * 2000;
+                default -> values[i] = random.nextDouble() * 30;
+            }
+        }
+        values[0] = -0d;
+        values[1] = 0d;
+        values[2] = Double.NaN;
+        values[3] = Double.NEGATIVE_INFINITY;
+
+        assertArrayEquals(boxedOrder(values), IndexSort.ascending(values, values.length));
+    }
+
+    @Test
+    public void shouldSortOnlyThePrefix() {
+        double[] values = {3, 1, 2, 0, -1};
+
+        assertArrayEquals(new int[]{1, 2, 0}, IndexSort.ascending(values, 3));
+        assertTrue(IndexSort.ascending(values, 0).length == 0);
+    }
+}
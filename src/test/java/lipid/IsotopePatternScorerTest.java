@@ -0,0 +1,80 @@
+package lipid;
+
+import formula.IsotopeEnvelope;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+public class IsotopePatternScorerTest {
+
+    private static final Lipid TG = new Lipid(1, "TG 54:3", "C57H104O6", LipidType.TG, 54, 3);
+    private static final double MZ = 902.8171;
+    private static final double INTENSITY = 1e6;
+
+    private static Annotation annotation(Set<Peak> peaks) {
+        Annotation annotation = new Annotation(TG, MZ, INTENSITY, 10d, peaks, IoniationMode.POSITIVE);
+        annotation.setAdduct("[M+NH4]+");
+        return annotation;
+    }
+
+    private static Peak isotope(int shift, double relativeIntensity) {
+        return new Peak(MZ + shift * IsotopeEnvelope.ISOTOPE_SPACING, INTENSITY * relativeIntensity);
+    }
+
+    @Test
+    public void shouldScoreAMatchingEnvelope() {
+        IsotopeEnvelope envelope = IsotopeEnvelope.cached(TG.getFormula());
+        Annotation annotation = annotation(Set.of(isotope(0, 1), isotope(1, envelope.relativeAbundance(1)),
+                isotope(2, envelope.relativeAbundance(2) * 1.1)));
+
+        assertEquals(1, new IsotopePatternScorer().score(List.of(annotation)));
+        assertEquals(1, annotation.getScore());
+        assertEquals(1, annotation.getTotalScoresApplied());
+    }
+
+    @Test
+    public void shouldPenaliseMissingOrMismatchedIsotopes() {
+        IsotopeEnvelope envelope = IsotopeEnvelope.cached(TG.getFormula());
+        Annotation missing = annotation(Set.of(isotope(0, 1), isotope(2, envelope.relativeAbundance(2))));
+        Annotation mismatched = annotation(Set.of(isotope(0, 1), isotope(1, 0.1), isotope(2, envelope.relativeAbundance(2))));
+
+        new IsotopePatternScorer().score(List.of(missing, mismatched));
+
+        assertEquals(-1, missing.getScore());
+        assertEquals(-1, mismatched.getScore());
+    }
+
+    @Test
+    public void shouldNotScoreWithoutGroupedPeaks() {
+        Annotation annotation = annotation(Set.of());
+
+        assertEquals(0, new IsotopePatternScorer().score(List.of(annotation)));
+        assertEquals(0, annotation.getTotalScoresApplied());
+    }
+
+    @Test
+    public void shouldSpaceIsotopesByTheCharge() {
+        Annotation annotation = new Annotation(TG, MZ, INTENSITY, 10d, Set.of(new Peak(MZ, INTENSITY),
+                new Peak(MZ + IsotopeEnvelope.ISOTOPE_SPACING / 2, INTENSITY * IsotopeEnvelope.cached(TG.getFormula()).relativeAbundance(1)),
+                new Peak(MZ + IsotopeEnvelope.ISOTOPE_SPACING, INTENSITY * IsotopeEnvelope.cached(TG.getFormula()).relativeAbundance(2))),
+                IoniationMode.POSITIVE);
+        annotation.setAdduct("[M+2H]2+");
+
+        assertEquals(1, new IsotopePatternScorer().score(annotation));
+    }
+
+    @Test
+    public void shouldScoreWithoutADetectedAdduct() {
+        Lipid pc = new Lipid(2, "PC 34:1", "C42H82NO8P", LipidType.PC, 34, 1);
+        Annotation annotation = new Annotation(pc, 760.5851, INTENSITY, 10d,
+                Set.of(new Peak(100, INTENSITY), new Peak(200, INTENSITY)), IoniationMode.POSITIVE);
+
+        // Taken as charge 1: the M+1 peak is missing
+        assertEquals(-1, new IsotopePatternScorer().score(annotation));
+        assertNull(annotation.getAdduct());
+    }
+}
@@ -0,0 +1,80 @@
+package lipid;
+
+import adduct.AdductDescriptor;
+import adduct.AdductList;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LipidDatabaseTest {
+
+    private static final String CATALOGUE = String.join("\n",
+            "lipid_id,lipid_name,formula,lipid_type,carbons,double_bonds,monoisotopic_mass",
+            "1,PC 34:1,C42H82NO8P,PC,34,1,759.5778",
+            "2,TG 54:3,C57H104O6,TG,54,3,884.7833",
+            "3,PE 34:1,C39H76NO8P,PE,34,1,717.5309",
+            "");
+
+    @Test
+    public void shouldLoadTheCatalogueAndFindTheCandidatesOfAnMz() throws IOException {
+        LipidDatabase database = LipidDatabase.load(new StringReader(CATALOGUE));
+        assertEquals(3, database.size());
+
+        double mz = AdductList.getDescriptor("[M+H]+").toMz(759.5778);
+        List<Annotation> candidates = database.lookup(mz, 3d, 15d, 5, IoniationMode.POSITIVE);
+
+        assertEquals(1, candidates.size());
+        Annotation candidate = candidates.get(0);
+        assertEquals("PC 34:1", candidate.getLipid().getName());
+        assertEquals("[M+H]+", candidate.getAdduct());
+        assertEquals(15d, candidate.getRtMin(), 0d);
+        assertEquals(1, database.countCandidates(mz, 5, IoniationMode.POSITIVE));
+        assertTrue(database.lookup(mz, 5, IoniationMode.NEGATIVE).isEmpty());
+    }
+
+    @Test
+    public void shouldComputeMissingMassesFromTheFormula() throws IOException {
+        LipidDatabase database = LipidDatabase.load(new StringReader(
+                CATALOGUE.replace(",759.5778", ",").replace(",884.7833", ",")));
+
+        assertEquals(759.5778, database.getMonoisotopicMass(0), 0.0001);
+        assertEquals(884.7833, database.getMonoisotopicMass(1), 0.0001);
+        assertEquals(717.5309, database.getMonoisotopicMass(2), 0d);
+    }
+
+    @Test
+    public void shouldFindTheSameCandidatesAsALinearScan() {
+        Random random = new Random(3);
+        List<Lipid> lipids = new ArrayList<>();
+        double[] masses = new double[2000];
+        for (int i = 0; i < masses.length; i++) {
+            lipids.add(new Lipid(i, "L" + i, "C1", LipidType.PC, 34, 1));
+            masses[i] = 400 + random.nextDouble() * 600;
+        }
+        LipidDatabase database = new LipidDatabase(lipids, masses);
+
+        for (IoniationMode ionMode : IoniationMode.values()) {
+            for (int sample = 0; sample < 200; sample++) {
+                double mz = 150 + random.nextDouble() * 1800;
+                double ppm = random.nextInt(50);
+                int expected = 0;
+                for (double mass : masses) {
+                    for (AdductDescriptor adduct : AdductList.getDescriptors(ionMode)) {
+                        double theoreticalMz = adduct.toMz(mass);
+                        if (Math.abs(mz - theoreticalMz) / theoreticalMz * 1000000d <= ppm) {
+                            expected++;
+                        }
+                    }
+                }
+                assertEquals(expected, database.lookup(mz, ppm, ionMode).size());
+            }
+        }
+    }
+}
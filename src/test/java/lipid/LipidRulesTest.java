@@ -0,0 +1,88 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Regression of the rules of lipids.drl against a brute force evaluation of every unordered pair of annotations.
+ */
+public class LipidRulesTest {
+
+    /**
+     * @return +1 or -1 if the rules score the pair, 0 otherwise
+     */
+    private static int referenceScore(Annotation a, Annotation b) {
+        Lipid l1 = a.getLipid();
+        Lipid l2 = b.getLipid();
+        int carbons = Integer.compare(l1.getCarbonCount(), l2.getCarbonCount());
+        int doubleBonds = Integer.compare(l1.getDoubleBondsCount(), l2.getDoubleBondsCount());
+        int rank = Integer.compare(Lipid.lipidTypeRank(l1.getLipidType()), Lipid.lipidTypeRank(l2.getLipidType()));
+        int rt = Double.compare(a.getRtMin(), b.getRtMin());
+        if (rt == 0) {
+            return 0;
+        }
+        if (l1.getLipidType() == l2.getLipidType()) {
+            if (doubleBonds == 0 && carbons != 0) {
+                // R1 and R4: more carbons elute later
+                return carbons == rt ? 1 : -1;
+            }
+            if (carbons == 0 && doubleBonds != 0) {
+                // R2 and R5: more double bonds elute earlier
+                return doubleBonds == -rt ? 1 : -1;
+            }
+        } else if (carbons == 0 && doubleBonds == 0 && rank != 0) {
+            // R3 and R6: elution order of the lipid types
+            return rank == rt ? 1 : -1;
+        }
+        return 0;
+    }
+
+    private static void assertLikeReference(List<Annotation> annotations) {
+        int[] expectedScores = new int[annotations.size()];
+        int[] expectedApplied = new int[annotations.size()];
+        int expectedMatches = 0;
+        for (int i = 0; i < annotations.size(); i++) {
+            for (int j = i + 1; j < annotations.size(); j++) {
+                int score = referenceScore(annotations.get(i), annotations.get(j));
+                if (score != 0) {
+                    expectedScores[i] += score;
+                    expectedScores[j] += score;
+                    expectedApplied[i]++;
+                    expectedApplied[j]++;
+                    expectedMatches++;
+                }
+            }
+        }
+
+        assertEquals(expectedMatches, new RuleUnitScorer().score(annotations));
+        for (int i = 0; i < annotations.size(); i++) {
+            assertEquals("Score of " + annotations.get(i), expectedScores[i], annotations.get(i).getScore());
+            assertEquals("Scores applied to " + annotations.get(i),
+                    expectedApplied[i], annotations.get(i).getTotalScoresApplied());
+        }
+        assertTrue(expectedMatches > 0);
+    }
+
+    @Test
+    public void shouldScoreEveryUnorderedPairOnce() {
+        for (long seed = 1; seed <= 5; seed++) {
+            assertLikeReference(ElutionOrderScorerTest.randomAnnotations(300, seed));
+        }
+    }
+
+    @Test
+    public void shouldScoreTheSameLipidAnnotatedTwice() {
+        Lipid pc = new Lipid(1, "PC 34:1", "C42H82NO8P", LipidType.PC, 34, 1);
+        Lipid pe = new Lipid(2, "PE 34:1", "C39H76NO8P", LipidType.PE, 34, 1);
+        Lipid pc36 = new Lipid(3, "PC 36:1", "C44H86NO8P", LipidType.PC, 36, 1);
+        assertLikeReference(List.of(
+                new Annotation(pc, 760.5851, 1, 10d, IoniationMode.POSITIVE),
+                new Annotation(pc, 782.5670, 1, 10d, IoniationMode.POSITIVE),
+                new Annotation(pe, 718.5381, 1, 9d, IoniationMode.POSITIVE),
+                new Annotation(pc36, 788.6164, 1, 11d, IoniationMode.POSITIVE)));
+    }
+}
@@ -0,0 +1,93 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class LipidScoringServiceTest {
+
+    @Test
+    public void shouldScoreEverySampleLikeAFreshRuleUnit() {
+        try (LipidScoringService service = new LipidScoringService(1, 5)) {
+            for (long seed = 1; seed <= 5; seed++) {
+                List<Annotation> expected = ElutionOrderScorerTest.randomAnnotations(200, seed);
+                List<Annotation> pooled = ElutionOrderScorerTest.randomAnnotations(200, seed);
+
+                int expectedMatches = new RuleUnitScorer().score(expected);
+                // The same instance is reused: nothing of the previous samples must be left in its data store
+                assertEquals(expectedMatches, service.score(pooled));
+                ElutionOrderScorerTest.assertSameScores(expected, pooled);
+            }
+            assertEquals(5, service.getLatency().getCount());
+            assertTrue(service.getLatencyP99Micros() >= service.getLatencyP50Micros());
+        }
+    }
+
+    @Test
+    public void shouldScoreSamplesConcurrently() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try (LipidScoringService service = new LipidScoringService(2, 5)) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int sample = 0; sample < 16; sample++) {
+                long seed = sample % 4 + 1;
+                results.add(executor.submit(() -> service.score(ElutionOrderScorerTest.randomAnnotations(150, seed))));
+            }
+            for (int sample = 0; sample < results.size(); sample++) {
+                int expected = new RuleUnitScorer().score(ElutionOrderScorerTest.randomAnnotations(150, sample % 4 + 1));
+                assertEquals(expected, (int) results.get(sample).get());
+            }
+            assertEquals(16, service.getLatency().getCount());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void shouldFinishTheSamplesInFlightAndRejectTheOthersWhenClosed() throws Exception {
+        int expected = new RuleUnitScorer().score(ElutionOrderScorerTest.randomAnnotations(400, 1));
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            LipidScoringService service = new LipidScoringService(1, 5);
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int sample = 0; sample < 16; sample++) {
+                results.add(executor.submit(() -> service.score(ElutionOrderScorerTest.randomAnnotations(400, 1))));
+            }
+            // One sample scored, the others in flight or waiting for the instance
+            while (service.getLatency().getCount() == 0) {
+                Thread.sleep(1);
+            }
+            service.close();
+
+            int scored = 0;
+            int rejected = 0;
+            for (Future<Integer> result : results) {
+                try {
+                    assertEquals(expected, (int) result.get());
+                    scored++;
+                } catch (ExecutionException e) {
+                    assertTrue(String.valueOf(e.getCause()), e.getCause() instanceof IllegalStateException);
+                    rejected++;
+                }
+            }
+            assertTrue(scored > 0);
+            assertTrue(rejected > 0);
+            try {
+                service.score(ElutionOrderScorerTest.randomAnnotations(10, 1));
+                fail("Expected the closed service to reject the sample");
+            } catch (IllegalStateException e) {
+                assertEquals("The scoring service is closed", e.getMessage());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class ParallelLipidScorerTest {
+
+    private static final LipidType[] TYPES = LipidType.values();
+
+    /**
+     * Random annotations whose lipid classes have their own carbon and double bond ranges, so no key is shared between
+     * classes and every class is an independent component.
+     */
+    private static List<Annotation> disjointAnnotations(int count, long seed) {
+        Random random = new Random(seed);
+        List<Annotation> annotations = new ArrayList<>(count);
+        for (int id = 0; id < count; id++) {
+            int type = random.nextInt(TYPES.length);
+            int carbons = 10 + 10 * type + 2 * random.nextInt(4);
+            int doubleBonds = 4 * type + random.nextInt(4);
+            Lipid lipid = new Lipid(id, TYPES[type] + " " + carbons + ":" + doubleBonds, "C1", TYPES[type], carbons,
+                    doubleBonds);
+            double rt = Math.round(random.nextDouble() * 40) / 2d;
+            annotations.add(new Annotation(lipid, 500 + id, 1000, rt, IoniationMode.POSITIVE));
+        }
+        return annotations;
+    }
+
+    @Test
+    public void shouldPartitionWithoutSharedKeys() {
+        List<Annotation> annotations = disjointAnnotations(500, 3);
+        List<List<Annotation>> partitions = AnnotationPartitioner.partition(annotations, 4);
+
+        assertTrue(partitions.size() > 1);
+
+        int total = 0;
+        Set<String> seenKeys = new HashSet<>();
+        for (List<Annotation> partition : partitions) {
+            Set<String> keys = new HashSet<>();
+            for (Annotation annotation : partition) {
+                Lipid lipid = annotation.getLipid();
+                keys.add("TD" + lipid.getLipidType() + "/" + lipid.getDoubleBondsCount());
+                keys.add("TC" + lipid.getLipidType() + "/" + lipid.getCarbonCount());
+                keys.add("CD" + lipid.getCarbonCount() + "/" + lipid.getDoubleBondsCount());
+            }
+            for (String key : keys) {
+                assertFalse("Key shared between partitions: " + key, seenKeys.contains(key));
+            }
+            seenKeys.addAll(keys);
+            total += partition.size();
+        }
+        assertEquals(annotations.size(), total);
+    }
+
+    @Test
+    public void shouldSplitIndependentLipidClasses() {
+        Annotation tg = new Annotation(new Lipid(1, "TG 54:3", "C57H104O6", LipidType.TG, 54, 3), 885.79, 1, 10d, IoniationMode.POSITIVE);
+        Annotation tg2 = new Annotation(new Lipid(2, "TG 52:3", "C55H100O6", LipidType.TG, 52, 3), 857.76, 1, 9d, IoniationMode.POSITIVE);
+        Annotation pc = new Annotation(new Lipid(3, "PC 34:1", "C42H82NO8P", LipidType.PC, 34, 1), 760.58, 1, 7d, IoniationMode.POSITIVE);
+
+        List<List<Annotation>> partitions = AnnotationPartitioner.partition(List.of(tg, pc, tg2), 8);
+
+        assertEquals(2, partitions.size());
+        assertEquals(List.of(tg, tg2), partitions.get(0));
+        assertEquals(List.of(pc), partitions.get(1));
+    }
+
+    @Test
+    public void shouldScoreLikeASingleRuleUnit() {
+        for (long seed = 1; seed <= 3; seed++) {
+            List<Annotation> serial = disjointAnnotations(400, seed);
+            List<Annotation> parallel = disjointAnnotations(400, seed);
+            // Otherwise the parallel scorer falls back to a single scorer
+            assertTrue(AnnotationPartitioner.partition(parallel, 4).size() > 1);
+
+            int serialMatches = new RuleUnitScorer().score(serial);
+            int parallelMatches = new ParallelLipidScorer(4).score(parallel);
+
+            assertTrue(serialMatches > 0);
+            assertEquals(serialMatches, parallelMatches);
+            ElutionOrderScorerTest.assertSameScores(serial, parallel);
+        }
+    }
+}
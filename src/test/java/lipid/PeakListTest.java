@@ -0,0 +1,68 @@
+package lipid;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class PeakListTest {
+
+    @Test
+    public void shouldSortAndKeepTheFirstPeakOfEachMzLikeATreeSet() {
+        for (int size : new int[]{0, 1, 5, 32, 33, 200}) {
+            Random random = new Random(size);
+            List<Peak> peaks = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                // Few distinct mz values so that duplicates are frequent
+                peaks.add(new Peak(400 + random.nextInt(Math.max(size / 2, 1)), random.nextDouble()));
+            }
+            TreeSet<Peak> expected = new TreeSet<>(peaks);
+            PeakList list = PeakList.of(peaks);
+
+            assertEquals(expected.size(), list.size());
+            int i = 0;
+            for (Peak peak : expected) {
+                assertEquals(peak.getMz(), list.mzAt(i), 0d);
+                assertEquals(peak.getIntensity(), list.intensityAt(i), 0d);
+                i++;
+            }
+            assertEquals(expected, list.asSet());
+        }
+    }
+
+    @Test
+    public void shouldQueryMzWindows() {
+        PeakList peaks = PeakList.of(new double[]{700.5, 350.1, 500.2, 500.3}, new double[]{1, 2, 3, 4});
+
+        assertArrayEquals(new double[]{350.1, 500.2, 500.3, 700.5}, peaks.toMzArray(), 0d);
+        assertArrayEquals(new double[]{2, 3, 4, 1}, peaks.toIntensityArray(), 0d);
+        assertEquals(1, peaks.fromIndex(500.2));
+        assertEquals(3, peaks.toIndex(500.3));
+        assertEquals(2, peaks.countInRange(500, 501));
+        assertEquals(0, peaks.countInRange(600, 601));
+        assertEquals(4, peaks.countInRange(0, 1000));
+        assertEquals(3, peaks.indexOf(700.5));
+        assertEquals(-1, peaks.indexOf(700.4));
+    }
+
+    @Test
+    public void shouldExposeASetViewCompatibleWithPeak() {
+        Set<Peak> peaks = new TreeSet<>(Set.of(new Peak(700.5, 1), new Peak(350.1, 2)));
+        Annotation annotation = new Annotation(new Lipid(1, "PC 34:1", "C42H82NO8P", LipidType.PC, 34, 1),
+                700.5, 1, 10d, peaks, IoniationMode.POSITIVE);
+
+        Set<Peak> view = annotation.getGroupedSignals();
+        assertEquals(peaks, view);
+        assertTrue(view.contains(new Peak(350.1, 0)));
+        assertFalse(view.contains(new Peak(350.2, 0)));
+        assertEquals(PeakList.of(peaks), annotation.getPeaks());
+    }
+}
@@ -0,0 +1,14 @@
+package lipid;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertTrue;
+
+public class RuleUnitScorerTest {
+
+    @Test
+    public void shouldUseTheRuleUnitGeneratedAtBuildTime() {
+        assertTrue("The kie-maven-plugin did not generate the executable model of lipids.drl",
+                RuleUnitScorer.isPrecompiled());
+    }
+}
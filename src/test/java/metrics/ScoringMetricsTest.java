@@ -0,0 +1,146 @@
+package metrics;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import lipid.AdductDetector;
+import lipid.Annotation;
+import lipid.IoniationMode;
+import lipid.Lipid;
+import lipid.LipidType;
+import lipid.Peak;
+import lipid.RuleUnitScorer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class ScoringMetricsTest {
+
+    private static List<Annotation> annotations() {
+        return List.of(
+                new Annotation(new Lipid(1, "TG 54:3", "C57H104O6", LipidType.TG, 54, 3), 885.79056, 10E6, 10d, IoniationMode.POSITIVE),
+                new Annotation(new Lipid(2, "TG 52:3", "C55H100O6", LipidType.TG, 52, 3), 857.7593, 10E7, 9d, IoniationMode.POSITIVE),
+                new Annotation(new Lipid(3, "TG 56:3", "C59H108O6", LipidType.TG, 56, 3), 913.822, 10E5, 8d, IoniationMode.POSITIVE));
+    }
+
+    @Before
+    public void setUp() {
+        ScoringMetrics.reset();
+    }
+
+    @After
+    public void tearDown() {
+        ScoringMetrics.setEnabled(false);
+        ScoringMetrics.reset();
+    }
+
+    @Test
+    public void shouldCountRuleFiringsAndAdductDetections() throws Exception {
+        ScoringMetrics.setEnabled(true);
+
+        int fired = new RuleUnitScorer().score(annotations());
+        AdductDetector.forMode(IoniationMode.POSITIVE).detect(760.5851, Set.of(new Peak(760.5851, 1e6), new Peak(782.5670, 5e5)));
+
+        assertEquals(fired, ScoringMetrics.getRulesFired());
+        assertEquals(Long.valueOf(1), ScoringMetrics.getRuleFireCounts().get("R1: Score +1 if: same TYPE, same DB, higher C1 so: higher RT1"));
+        assertEquals(Long.valueOf(2), ScoringMetrics.getRuleFireCounts().get("R4: Score -1 if: same TYPE, same DB, higher C1 so: lower RT1"));
+        assertEquals(fired, ScoringMetrics.getRuleFireCounts().values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(1, ScoringMetrics.getFireLatency().getCount());
+        assertTrue(ScoringMetrics.getMatchesCreated() >= fired);
+        assertEquals(1, ScoringMetrics.getAdductDetections());
+        assertEquals(1, ScoringMetrics.getAdductsDetected());
+        assertTrue(ScoringMetrics.getPeakComparisons() > 0);
+
+        ScoringMetrics.registerMBean();
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = new ObjectName(ScoringMetrics.OBJECT_NAME);
+        assertEquals((long) fired, server.getAttribute(name, "RulesFired"));
+        assertEquals(1L, server.getAttribute(name, "AdductDetections"));
+    }
+
+    @Test
+    public void shouldNotCountWhileDisabled() {
+        new RuleUnitScorer().score(annotations());
+
+        assertEquals(0, ScoringMetrics.getRulesFired());
+        assertEquals(0, ScoringMetrics.getFireLatency().getCount());
+        assertEquals(0, ScoringMetrics.getMatchesCreated());
+    }
+
+    @Test
+    public void shouldEmitJfrEventsWhileRecording() throws Exception {
+        Path file = Files.createTempFile("scoring", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("lipid.RuleUnitFire");
+            recording.enable("lipid.RuleFired");
+            recording.start();
+            new RuleUnitScorer().score(annotations());
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            assertEquals(1, events.stream().filter(e -> e.getEventType().getName().equals("lipid.RuleUnitFire")).count());
+            assertEquals(3, events.stream().filter(e -> e.getEventType().getName().equals("lipid.RuleFired")).count());
+        } finally {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    public void shouldReportPercentilesOfAUniformDistributionWithinTwoPercent() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 1 to 10000 us
+        for (int i = 1; i <= 10000; i++) {
+            histogram.record(i * 1000L);
+        }
+
+        assertEquals(10000, histogram.getCount());
+        assertEquals(5_000_000d, histogram.getPercentileNanos(0.5), 5_000_000 * 0.02);
+        assertEquals(9_000_000d, histogram.getPercentileNanos(0.9), 9_000_000 * 0.02);
+        assertEquals(9_900_000d, histogram.getPercentileNanos(0.99), 9_900_000 * 0.02);
+        assertEquals(1000d, histogram.getPercentileNanos(0), 1000 * 0.02);
+        assertEquals(5_000_500d, histogram.getMeanNanos(), 0d);
+    }
+
+    @Test
+    public void shouldSeparateTheModesOfABimodalDistribution() {
+        LatencyHistogram histogram = new LatencyHistogram();
+        // 95% of the samples at 120 us, 5% at 150 us: the same power of two
+        for (int i = 0; i < 950; i++) {
+            histogram.record(120_000);
+        }
+        for (int i = 0; i < 50; i++) {
+            histogram.record(150_000);
+        }
+
+        assertEquals(120_000d, histogram.getPercentileNanos(0.5), 120_000 * 0.02);
+        assertEquals(150_000d, histogram.getPercentileNanos(0.99), 150_000 * 0.02);
+    }
+
+    @Test
+    public void shouldKeepEveryValueWithinItsSubBucket() {
+        Random random = new Random(3);
+        for (int i = 0; i < 100_000; i++) {
+            long value = (random.nextLong() >>> 1) >>> random.nextInt(63);
+            long reported = LatencyHistogram.middle(LatencyHistogram.bucket(value));
+            assertTrue(value + " reported as " + reported, Math.abs(reported - value) <= value / 64d);
+        }
+        for (long value = 0; value < 32; value++) {
+            assertEquals(value, LatencyHistogram.middle(LatencyHistogram.bucket(value)));
+        }
+        assertTrue(LatencyHistogram.bucket(Long.MAX_VALUE) == LatencyHistogram.bucket(Long.MAX_VALUE - 1));
+        assertEquals(0, new LatencyHistogram().getPercentileNanos(0.99));
+    }
+}